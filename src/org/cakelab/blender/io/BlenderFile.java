@@ -1,26 +1,51 @@
 package org.cakelab.blender.io;
 
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 import org.cakelab.blender.io.FileHeader.Version;
 import org.cakelab.blender.io.block.Block;
 import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockFilter;
 import org.cakelab.blender.io.block.BlockHeader;
+import org.cakelab.blender.io.block.BlockHeaderTable;
 import org.cakelab.blender.io.block.BlockList;
 import org.cakelab.blender.io.block.BlockTable;
 import org.cakelab.blender.io.block.OverlappingBlocksException;
 import org.cakelab.blender.io.dna.DNAModel;
 import org.cakelab.blender.io.dna.DNAStruct;
 import org.cakelab.blender.io.dna.internal.StructDNA;
+import org.cakelab.blender.io.util.BigEndianInputStreamWrapper;
+import org.cakelab.blender.io.util.BlockStorage;
+import org.cakelab.blender.io.util.CBufferReadWrite;
 import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.CLazyBufferReadWrite;
+import org.cakelab.blender.io.util.ConcurrentInflaterInputStream;
+import org.cakelab.blender.io.util.DirectBlockStorage;
+import org.cakelab.blender.io.util.FileMapping;
+import org.cakelab.blender.io.util.HeapBlockStorage;
 import org.cakelab.blender.io.util.Identifier;
+import org.cakelab.blender.io.zstd.ZstdFrameDecoder;
+import org.cakelab.blender.io.zstd.ZstdReadAccess;
+import org.cakelab.blender.io.zstd.ZstdSeekableFile;
 import org.cakelab.blender.metac.CMetaModel;
 import org.cakelab.blender.metac.CStruct;
+import org.cakelab.blender.nio.UnsignedLong;
 import org.cakelab.blender.versions.OffheapAreas;
 
 
@@ -60,9 +85,98 @@ import org.cakelab.blender.versions.OffheapAreas;
  * for fast adding and removing of blocks. But this list is <b>not</b> automatically updated
  * if blocks are added to or removed from the block table.
  * </p>
+ * <h2>Open Modes</h2>
+ * <p>
+ * The way block data is loaded from the file is controlled by the 
+ * {@link OpenMode} given to the constructor {@link #BlenderFile(File, OpenMode)}.
+ * By default, all block data is copied to Java heap.
+ * </p>
+ * <h2>Block Filter</h2>
+ * <p>
+ * If only a few blocks of a file are of interest, a {@link BlockFilter} 
+ * can be given to the constructor 
+ * {@link #BlenderFile(File, OpenMode, BlockFilter)}. The data of 
+ * all other blocks is skipped. Files opened with a block filter 
+ * cannot be written.
+ * </p>
+ * <h2>Sidecar Index</h2>
+ * <p>
+ * Files opened many times can be indexed in a separate file 
+ * (see {@link SidecarIndex}). The index is used on open to skip 
+ * the scan of block headers and parsing of struct DNA.
+ * </p>
+ * <h2>Compressed Files</h2>
+ * <p>
+ * Files compressed with gzip or Zstandard are detected and decompressed 
+ * transparently (see {@link Compression}). Compressed files can be read only.
+ * </p>
  */
 public class BlenderFile implements Closeable {
 	
+	/**
+	 * Determines how the data of blocks is loaded from the file.
+	 */
+	public static enum OpenMode {
+		/** 
+		 * Data of all blocks is read into byte arrays on Java heap (default).
+		 */
+		READ_FULLY,
+		/**
+		 * The file is memory mapped and the data of each block is a 
+		 * slice of the mapping. Nothing gets copied and open time depends 
+		 * on the number of blocks only. The mapping is private, thus 
+		 * modifications to block data are not reflected in the file 
+		 * unless it is written (see {@link BlenderFile#write()}).
+		 */
+		MEMORY_MAPPED,
+		/**
+		 * Only block headers are read on open. The data of a block is 
+		 * read from file when it is accessed the first time. Data of 
+		 * blocks, which have not been accessed, is not available 
+		 * anymore after the file was closed.
+		 */
+		LAZY
+	}
+	
+	/**
+	 * Compression formats of .blend files, which are 
+	 * detected on open (see {@link BlenderFile#getCompression()}).
+	 */
+	public static enum Compression {
+		/** Plain .blend file. */
+		NONE,
+		/** gzip compressed file (Blender 2.x "Compress" option). */
+		GZIP,
+		/** Zstandard compressed file (Blender 3.0 and later). */
+		ZSTD;
+		
+		private static final int GZIP_MAGIC = 0x8b1f;
+		
+		/**
+		 * Determines the compression format from the first bytes of the file.
+		 */
+		public static Compression detect(File file) throws IOException {
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] magic = new byte[4];
+				int len = 0;
+				int n;
+				while (len < magic.length && (n = in.read(magic, len, magic.length - len)) >= 0) {
+					len += n;
+				}
+				int value = (magic[0] & 0xff) | (magic[1] & 0xff) << 8 | (magic[2] & 0xff) << 16 | (magic[3] & 0xff) << 24;
+				if (len >= 2 && (value & 0xffff) == GZIP_MAGIC) {
+					return GZIP;
+				} else if (len == 4 && value == ZstdFrameDecoder.MAGIC) {
+					return ZSTD;
+				}
+				return NONE;
+			} finally {
+				in.close();
+			}
+		}
+	}
+	
 	protected FileHeader header;
 	
 	
@@ -71,6 +185,9 @@ public class BlenderFile implements Closeable {
 
 	private StructDNA sdna;
 	private DNAModel model;
+	private CMetaModel metaModel;
+	/** shared struct DNA and models (null if sdna was not read from the file) */
+	private DNACache.Entry dna;
 
 
 	private BlockTable blockTable;
@@ -81,15 +198,184 @@ public class BlenderFile implements Closeable {
 
 	private File file;
 
+	private OpenMode mode = OpenMode.READ_FULLY;
+
+	private Compression compression = Compression.NONE;
+
+	/** Decompressed copy of a compressed file, if required by the open mode. */
+	private File tempFile;
+
+	/** Mapping of the file in mode {@link OpenMode#MEMORY_MAPPED}. */
+	private FileMapping mapping;
+
+	/** First block of each block code and its location in the file. */
+	private HashMap<Identifier, BlockLocation> firstBlocks;
+	
+	/** storage for the data of blocks held in memory */
+	private BlockStorage storage = new HeapBlockStorage();
+	
+	/** headers of all blocks while opening the file (for the sidecar index only) */
+	private BlockHeaderTable headerTable;
+	
+	/** filter selecting the blocks to be loaded (null if all) */
+	private BlockFilter filter;
+	
+	/** headers of blocks rejected by the filter (until handed over to the block table) */
+	private List<BlockHeader> excludedBlocks;
+	
+	/** sidecar index of the file, if available and up to date */
+	private SidecarIndex index;
+
+	private static class BlockLocation {
+		final Block block;
+		/** file offset of the block header */
+		final long offset;
+		BlockLocation(Block block, long offset) {
+			this.block = block;
+			this.offset = offset;
+		}
+	}
+
 
+	/**
+	 * Opens the given file and reads all blocks into memory.
+	 * Same as {@link #BlenderFile(File, OpenMode)} with 
+	 * {@link OpenMode#READ_FULLY}.
+	 */
 	public BlenderFile(File file) throws IOException {
-		readFileHeader(CDataReadWriteAccess.create(new RandomAccessFile(file, "r"), Encoding.JAVA_NATIVE));
+		this(file, OpenMode.READ_FULLY);
+	}
+
+	/**
+	 * Opens the given file and provides access to its blocks 
+	 * according to the given open mode.
+	 */
+	public BlenderFile(File file, OpenMode mode) throws IOException {
+		this(file, mode, new HeapBlockStorage());
+	}
+
+	/**
+	 * Opens the given file and provides access to its blocks 
+	 * according to the given open mode. Data of blocks read into 
+	 * memory or allocated later is kept in the given block storage, 
+	 * which is closed with this file.
+	 * 
+	 * @see DirectBlockStorage
+	 */
+	public BlenderFile(File file, OpenMode mode, BlockStorage storage) throws IOException {
+		this(file, mode, storage, null);
+	}
+
+	/**
+	 * Opens the given file and loads only those blocks accepted 
+	 * by the given block filter.
+	 * 
+	 * @see BlockFilter
+	 */
+	public BlenderFile(File file, OpenMode mode, BlockFilter filter) throws IOException {
+		this(file, mode, new HeapBlockStorage(), filter);
+	}
+
+	/**
+	 * Opens the given file with the given open mode and block storage 
+	 * and loads only those blocks accepted by the given block filter.
+	 * 
+	 * @param filter Block filter or null to load all blocks.
+	 */
+	public BlenderFile(File file, OpenMode mode, BlockStorage storage, BlockFilter filter) throws IOException {
 		this.file = file;
-		// proceed from here with an input stream which decodes data according to its endianess
-		io = CDataReadWriteAccess.create(new RandomAccessFile(file, "rw"), getEncoding());
-		readStructDNA();
+		this.mode = mode;
+		this.storage = storage;
+		this.filter = filter;
+		compression = Compression.detect(file);
+		// the key has to match the state of the file before any block was read
+		SidecarIndex.Key indexKey = SidecarIndex.isEnabled() ? SidecarIndex.Key.of(file) : null;
+		index = indexKey != null ? SidecarIndex.load(file, indexKey) : null;
+		switch (compression) {
+		case GZIP:
+			openGZip(file);
+			break;
+		case ZSTD:
+			openZstd(file);
+			break;
+		default:
+			open(file);
+		}
 		String[] offheapAreas = OffheapAreas.get(header.version.getCode());
-		initBlockTable(getEncoding(), readBlocks(), getSdnaIndices(offheapAreas));
+		initBlockTable(getEncoding(), blocks, getSdnaIndices(offheapAreas));
+		if (excludedBlocks != null) {
+			blockTable.exclude(excludedBlocks);
+			excludedBlocks = null;
+		}
+		if (headerTable != null && indexKey != null) {
+			try {
+				// skip the index, if the file was modified while reading it
+				if (indexKey.equals(SidecarIndex.Key.of(file))) {
+					new SidecarIndex(indexKey, firstBlockOffset, headerTable, sdna).save(file);
+				}
+			} catch (IOException e) {
+				System.err.println("warning: can't create sidecar index for '" + file + "': " + e.getMessage());
+			}
+			// the blocks hold their headers already
+			headerTable = null;
+		}
+	}
+
+	/**
+	 * Reads header, blocks and struct DNA of an uncompressed file.
+	 */
+	private void open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			readHeader(CDataReadWriteAccess.create(raf, Encoding.JAVA_NATIVE));
+			// proceed from here with an input stream which decodes data according to its endianess
+			io = CDataReadWriteAccess.create(raf, getEncoding());
+			if (mode == OpenMode.MEMORY_MAPPED) {
+				mapping = new FileMapping(raf.getChannel(), getEncoding().getByteOrder());
+			}
+			// one sequential pass over all blocks, which also locates DNA1
+			readBlocks();
+			if (sdna == null) readStructDNA();
+		} catch (IOException e) {
+			try {raf.close();} catch (Throwable suppress){}
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a gzip compressed file. Decompression runs concurrently 
+	 * to parsing. In mode {@link OpenMode#READ_FULLY} blocks are read 
+	 * straight from the decompressed stream. All other modes and block 
+	 * filters require random access to the file, thus the file gets 
+	 * decompressed into a temporary file first, which is deleted on 
+	 * {@link #close()}.
+	 */
+	private void openGZip(File file) throws IOException {
+		InputStream in = new ConcurrentInflaterInputStream(new FileInputStream(file));
+		try {
+			if (mode == OpenMode.READ_FULLY && filter == null) {
+				readBlocks(in);
+				readStructDNA();
+			} else {
+				createTempFile();
+				OutputStream out = new FileOutputStream(tempFile);
+				try {
+					byte[] buffer = new byte[ConcurrentInflaterInputStream.CHUNK_SIZE];
+					for (int len = in.read(buffer); len >= 0; len = in.read(buffer)) {
+						out.write(buffer, 0, len);
+					}
+				} finally {
+					out.close();
+				}
+				in.close();
+				open(tempFile);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		} finally {
+			in.close();
+		}
 	}
 
 	protected BlenderFile(File file, StructDNA sdna, int blenderVersion, String[] offheapAreas) throws IOException {
@@ -123,6 +409,7 @@ public class BlenderFile implements Closeable {
 		try {
 			
 			blockTable = new BlockTable(encoding, blocks, sdnaIndices);
+			blockTable.setBlockStorage(storage);
 		} catch (OverlappingBlocksException e) {
 			e.addDetailedInfo(model);
 			throw new IOException(e);
@@ -133,6 +420,44 @@ public class BlenderFile implements Closeable {
 
 	
 	
+	/**
+	 * Reads a Zstandard compressed file. Frames are decompressed in 
+	 * parallel. In mode {@link OpenMode#LAZY}, only frames containing
+	 * block headers or accessed block data are decompressed. Mode 
+	 * {@link OpenMode#MEMORY_MAPPED} decompresses the file into a 
+	 * temporary file, which is deleted on {@link #close()}.
+	 */
+	private void openZstd(File file) throws IOException {
+		ZstdSeekableFile zstd = new ZstdSeekableFile(file);
+		try {
+			if (mode == OpenMode.MEMORY_MAPPED) {
+				createTempFile();
+				zstd.decompressTo(tempFile);
+				zstd.close();
+				open(tempFile);
+			} else {
+				if (mode == OpenMode.READ_FULLY) {
+					zstd.decompressAll();
+				}
+				readHeader(new ZstdReadAccess(zstd, Encoding.JAVA_NATIVE));
+				io = new ZstdReadAccess(zstd, getEncoding());
+				readBlocks();
+				if (sdna == null) readStructDNA();
+				// all data has been copied into blocks
+				zstd.setCacheSize(ZstdSeekableFile.DEFAULT_CACHE_SIZE);
+			}
+		} catch (IOException e) {
+			zstd.close();
+			close();
+			throw e;
+		}
+	}
+	
+	private void createTempFile() throws IOException {
+		tempFile = File.createTempFile("javablend", ".blend");
+		tempFile.deleteOnExit();
+	}
+	
 	/**
 	 * Just basic read initialisation. Reading file header.
 	 * (byte order doesn't matter in this case).
@@ -141,18 +466,26 @@ public class BlenderFile implements Closeable {
 	 * @throws IOException
 	 */
 	protected void readFileHeader(CDataReadWriteAccess in) throws IOException {
+		try {
+			readHeader(in);
+		} finally {
+			try {in.close();} catch (Throwable suppress){}
+		}
+	}
+
+	/**
+	 * Reads the file header and leaves the given input open 
+	 * and positioned at the first block.
+	 */
+	private void readHeader(CDataReadWriteAccess in) throws IOException {
 		header = new FileHeader();
 		try {
 			header.read(in);
 			firstBlockOffset = in.offset();
-			in.close();
-			
 		} catch (IOException e) {
 			// it might be a compressed file
-			throw new IOException("file is either corrupted or uses the compressed format (not yet supported).\n"
-					+ "In the latter case, please uncompress it first (i.e. gunzip <file>.");
-		} finally {
-			try {in.close();} catch (Throwable suppress){}
+			throw new IOException("file is either corrupted or uses an unsupported compression format.\n"
+					+ "In the latter case, please uncompress it first.");
 		}
 	}
 	
@@ -187,6 +520,16 @@ public class BlenderFile implements Closeable {
 	 * block and the End (ENDB) block. All other blocks have to be in the order 
 	 * expected by blender. */
 	public void write(List<Block> blocks) throws IOException {
+		if (compression != Compression.NONE) {
+			throw new IOException("writing compressed files is not supported (" + compression + ")");
+		}
+		if (filter != null) {
+			throw new IOException("writing files opened with a block filter is not supported (blocks would be lost)");
+		}
+		if (mode != OpenMode.READ_FULLY) {
+			// blocks still backed by the file would see it change underneath
+			detachBlocks();
+		}
 		io.offset(firstBlockOffset);
 		
 		boolean sdnaWritten = false;
@@ -196,13 +539,14 @@ public class BlenderFile implements Closeable {
 		// flush all blocks to disk
 		for (Block block : blocks) {
 			System.out.println("writing " + block.header.getCode().toString());
-			if (block.header.getCode().equals(BlockCodes.ID_ENDB)) {
+			int code = block.header.getCode().intValue();
+			if (code == BlockCodes.CODE_ENDB) {
 				endBlock = block;
 				continue;
 			}
 			block.flush(io);
 			
-			if (block.header.getCode().equals(BlockCodes.ID_DNA1)) {
+			if (code == BlockCodes.CODE_DNA1) {
 				sdnaWritten = true;
 			}
 		}
@@ -218,6 +562,10 @@ public class BlenderFile implements Closeable {
 			writeEndBlock();
 		}
 		
+		io.flush();
+		
+		// block locations have changed
+		firstBlocks = null;
 	}
 	
 	protected void writeEndBlock() throws IOException {
@@ -259,9 +607,13 @@ public class BlenderFile implements Closeable {
 		io.offset(end);
 	}
 
+	/**
+	 * @return model of the struct DNA of this file, which is shared 
+	 * with all files of the same Blender build (see {@link DNACache}).
+	 */
 	public DNAModel getBlenderModel() throws IOException {
 		if (model == null) {
-			model = new DNAModel(sdna);
+			model = dna != null ? dna.getDNAModel() : new DNAModel(sdna);
 		}
 		return model;
 	}
@@ -270,12 +622,19 @@ public class BlenderFile implements Closeable {
 		CMetaModel meta = getMetaModel();
 		
 		FileVersionInfo versionInfo = null;
-		BlockHeader blockHeader = seekFirstBlock(BlockCodes.ID_GLOB);
+		CDataReadWriteAccess in = null;
+		Block glob = getFirstBlock(BlockCodes.ID_GLOB);
+		if (glob != null) {
+			in = glob.data;
+			in.offset(0);
+		} else if (seekFirstBlock(BlockCodes.ID_GLOB) != null) {
+			in = io;
+		}
 
-		if (blockHeader != null) {
+		if (in != null) {
 			CStruct struct = (CStruct) meta.getType("FileGlobal");
 			versionInfo = new FileVersionInfo();
-			versionInfo.read(struct, io);
+			versionInfo.read(struct, in);
 		} else {
 			throw new IOException("Can't find block GLOB (file global version info)");
 		}
@@ -286,24 +645,87 @@ public class BlenderFile implements Closeable {
 	
 	protected void readStructDNA() throws IOException {
 		sdna = null;
-		BlockHeader blockHeader = seekFirstBlock(BlockCodes.ID_DNA1);
+		CDataReadWriteAccess in = null;
+		int size = 0;
+		Block dna1 = getFirstBlock(BlockCodes.ID_DNA1);
+		if (dna1 != null) {
+			in = dna1.data;
+			in.offset(0);
+			size = dna1.header.getSize();
+		} else {
+			BlockHeader dna1Header = seekFirstBlock(BlockCodes.ID_DNA1);
+			if (dna1Header != null) {
+				in = io;
+				size = dna1Header.getSize();
+			}
+		}
 
-		if (blockHeader != null) {
-			sdna = new StructDNA();
-			sdna.read(io);
+		if (in != null) {
+			readStructDNA(in, size, null);
 		} else {
 			throw new IOException("corrupted file. Can't find block DNA1");
 		}
 	}
 	
+	/**
+	 * Reads the content of the DNA1 block from the given input and 
+	 * retrieves the shared struct DNA for it (see {@link DNACache}).
+	 * 
+	 * @param size size of the DNA1 block.
+	 * @param parsed struct DNA of the block, if already available, or null.
+	 */
+	private void readStructDNA(CDataReadWriteAccess in, int size, StructDNA parsed) throws IOException {
+		byte[] data = new byte[size];
+		in.readFully(data);
+		dna = DNACache.get(data, getEncoding(), parsed);
+		sdna = dna.getStructDNA();
+		model = null;
+		metaModel = null;
+	}
+	
+	/**
+	 * Returns the first block in the file with the given code,
+	 * as found when the file was opened.
+	 * 
+	 * @return first block with given code or null if either there 
+	 * is none or the file was not opened for reading.
+	 */
+	public Block getFirstBlock(Identifier code) {
+		if (firstBlocks == null) return null;
+		BlockLocation location = firstBlocks.get(code);
+		return location != null ? location.block : null;
+	}
+	
+	/**
+	 * Positions the file access at the data of the first block with 
+	 * the given code and returns its header.
+	 * 
+	 * @return header of the block or null if no such block exists.
+	 */
 	public BlockHeader seekFirstBlock(Identifier code) throws IOException {
+		if (io == null) {
+			throw new IOException("no file access available (compressed file)");
+		}
+		if (firstBlocks != null) {
+			BlockLocation location = firstBlocks.get(code);
+			// the block might have been rejected by the block filter, 
+			// thus we have to search for it in that case
+			if (location != null || filter == null) {
+				if (location == null) return null;
+				io.offset(location.offset);
+				BlockHeader blockHeader = new BlockHeader();
+				blockHeader.read(io);
+				return blockHeader;
+			}
+		}
+		
 		BlockHeader result = null;
 
 		io.offset(firstBlockOffset);
 		BlockHeader blockHeader = new BlockHeader();
 		blockHeader.read(io);
-		while (!blockHeader.getCode().equals(BlockCodes.ID_ENDB)) {
-			if (blockHeader.getCode().equals(code)) {
+		while (blockHeader.getCode().intValue() != BlockCodes.CODE_ENDB) {
+			if (blockHeader.getCode().intValue() == code.intValue()) {
 				result = blockHeader;
 				break;
 			}
@@ -319,37 +741,298 @@ public class BlenderFile implements Closeable {
 	}
 	
 	
+	/**
+	 * Reads all blocks in one sequential pass and keeps 
+	 * the location of the first block of each block code.
+	 */
 	private BlockList readBlocks() throws IOException {
+		if (index != null && index.getFirstBlockOffset() != firstBlockOffset) index = null;
+		if (filter != null || index != null) return readBlocks(index);
 		blocks = new BlockList();
-		io.offset(firstBlockOffset);
+		firstBlocks = new HashMap<Identifier, BlockLocation>();
+		Encoding encoding = getEncoding();
+		int headerSize = (int) BlockHeader.getHeaderSize(encoding.getAddressWidth());
+		headerTable = SidecarIndex.isEnabled() ? new BlockHeaderTable(encoding.getAddressWidth()) : null;
+		long offset = firstBlockOffset;
+		io.offset(offset);
 		BlockHeader blockHeader;
 		Block block;
 		// We read all blocks until we hit ENDB.
 		// There is always at least the DNA block in a .blend file.
 		do {
 			blockHeader = new BlockHeader();
-			blockHeader.read(io);
-			CDataReadWriteAccess data = readBlockData(blockHeader);
+			if (mapping != null) {
+				blockHeader.read(CDataReadWriteAccess.create(mapping.slice(offset, headerSize), 0, encoding));
+			} else {
+				blockHeader.read(io);
+			}
+			if (headerTable != null) headerTable.add(blockHeader, offset);
+			CDataReadWriteAccess data = readBlockData(blockHeader, offset + headerSize);
 			
 			block = new Block(blockHeader, data);
 			blocks.add(block);
 			
-		} while (!blockHeader.getCode().equals(BlockCodes.ID_ENDB));
+			if (!firstBlocks.containsKey(blockHeader.getCode())) {
+				firstBlocks.put(blockHeader.getCode(), new BlockLocation(block, offset));
+			}
+			offset += headerSize + blockHeader.getSize();
+		} while (blockHeader.getCode().intValue() != BlockCodes.CODE_ENDB);
 		
 		return blocks;
 	}
 
-	private CDataReadWriteAccess readBlockData(BlockHeader blockHeader) throws IOException {
-		byte[] data = new byte[blockHeader.getSize()];
-		io.readFully(data);
-		return CDataReadWriteAccess.create(data, blockHeader.getAddress(), getEncoding());
+	/**
+	 * Reads block headers and struct DNA first, either from the file 
+	 * or from the given sidecar index. Then it reads all blocks, or 
+	 * if there is a block filter, only those accepted by the filter.
+	 * 
+	 * @param index sidecar index or null.
+	 */
+	private BlockList readBlocks(SidecarIndex index) throws IOException {
+		BlockHeaderTable headers = index != null ? index.getBlockHeaders() : BlockHeaderTable.read(io, firstBlockOffset);
+		if (index == null && SidecarIndex.isEnabled()) headerTable = headers;
+		int n = headers.size();
+		Block[] loaded = new Block[n];
+		
+		int dna1 = headers.indexOf(BlockCodes.ID_DNA1);
+		if (dna1 < 0) {
+			throw new IOException("corrupted file. Can't find block DNA1");
+		}
+		loaded[dna1] = readBlock(headers.getHeader(dna1), headers.getOffset(dna1));
+		CDataReadWriteAccess in = loaded[dna1].data;
+		in.offset(0);
+		readStructDNA(in, headers.getSize(dna1), index != null ? index.getStructDNA() : null);
+		DNAModel model = filter != null ? getBlenderModel() : null;
+		
+		for (int i = 0; i < n; i++) {
+			if (loaded[i] != null) continue;
+			BlockHeader blockHeader = headers.getHeader(i);
+			int code = headers.getCodeValue(i);
+			if (filter == null || code == BlockCodes.CODE_GLOB || code == BlockCodes.CODE_ENDB || filter.accept(blockHeader, model)) {
+				loaded[i] = readBlock(blockHeader, headers.getOffset(i));
+			}
+		}
+		if (filter != null && filter.includesReferencedData()) {
+			readReferencedData(headers, loaded, model);
+		}
+		
+		blocks = new BlockList();
+		firstBlocks = new HashMap<Identifier, BlockLocation>();
+		if (filter != null) excludedBlocks = new ArrayList<BlockHeader>();
+		for (int i = 0; i < n; i++) {
+			Block block = loaded[i];
+			if (block != null) {
+				blocks.add(block);
+				if (!firstBlocks.containsKey(block.header.getCode())) {
+					firstBlocks.put(block.header.getCode(), new BlockLocation(block, headers.getOffset(i)));
+				}
+			} else {
+				excludedBlocks.add(headers.getHeader(i));
+			}
+		}
+		return blocks;
+	}
+	
+	/**
+	 * Reads the block with the given header located at the given offset.
+	 */
+	private Block readBlock(BlockHeader blockHeader, long offset) throws IOException {
+		long dataOffset = offset + BlockHeader.getHeaderSize(getEncoding().getAddressWidth());
+		if (mapping == null) io.offset(dataOffset);
+		return new Block(blockHeader, readBlockData(blockHeader, dataOffset));
+	}
+	
+	/**
+	 * Reads all DATA blocks referenced by pointers in the given 
+	 * loaded blocks, and the blocks referenced by them in turn.
+	 * Blocks of raw data (SDNA index 0) are not searched for pointers.
+	 * 
+	 * @param headers headers of all blocks in file order.
+	 * @param loaded loaded blocks in file order (null if not loaded).
+	 */
+	private void readReferencedData(final BlockHeaderTable headers, Block[] loaded, DNAModel model) throws IOException {
+		// DATA blocks not loaded yet, in ascending order of their addresses
+		ArrayList<Integer> candidates = new ArrayList<Integer>();
+		for (int i = 0; i < loaded.length; i++) {
+			if (loaded[i] == null && headers.getCodeValue(i) == BlockCodes.CODE_DATA) {
+				candidates.add(i);
+			}
+		}
+		candidates.sort(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return UnsignedLong.compare(headers.getAddress(i1), headers.getAddress(i2));
+			}
+		});
+		int m = candidates.size();
+		long[] addresses = new long[m];
+		int[] indices = new int[m];
+		for (int j = 0; j < m; j++) {
+			indices[j] = candidates.get(j);
+			// flipped sign bit turns unsigned order into signed order
+			addresses[j] = headers.getAddress(indices[j]) ^ Long.MIN_VALUE;
+		}
+		candidates = null;
+		
+		PointerOffsets pointerOffsets = new PointerOffsets(model, getEncoding().getAddressWidth());
+		int structs = model.getStructCount();
+		ArrayDeque<Block> queue = new ArrayDeque<Block>();
+		for (Block block : loaded) {
+			if (block != null) queue.add(block);
+		}
+		while (!queue.isEmpty()) {
+			Block block = queue.poll();
+			int sdnaIndex = block.header.getSdnaIndex();
+			if (sdnaIndex <= 0 || sdnaIndex >= structs) continue;
+			int[] offsets = pointerOffsets.get(sdnaIndex);
+			int structSize = model.getStruct(sdnaIndex).getType().getSize();
+			if (offsets.length == 0 || structSize <= 0) continue;
+			int count = Math.min(block.header.getCount(), block.header.getSize() / structSize);
+			long base = block.header.getAddress();
+			for (int c = 0; c < count; c++, base += structSize) {
+				for (int offset : offsets) {
+					long pointer = block.readLong(base + offset);
+					if (pointer == 0) continue;
+					// block with the next lower or equal start address
+					int j = Arrays.binarySearch(addresses, pointer ^ Long.MIN_VALUE);
+					if (j < 0) j = -j - 2;
+					if (j < 0) continue;
+					int i = indices[j];
+					if (loaded[i] != null) continue;
+					long start = headers.getAddress(i);
+					if (UnsignedLong.lt(UnsignedLong.minus(pointer, start), headers.getSize(i))) {
+						loaded[i] = readBlock(headers.getHeader(i), headers.getOffset(i));
+						queue.add(loaded[i]);
+					}
+				}
+			}
+		}
 	}
 
+	/**
+	 * Reads file header and all blocks in one sequential pass from 
+	 * the given stream of uncompressed file content.
+	 */
+	private BlockList readBlocks(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		// file header consists of bytes only, thus byte order doesn't matter here
+		readHeader(new BigEndianInputStreamWrapper(in, Encoding.JAVA_NATIVE.getAddressWidth()));
+		
+		blocks = new BlockList();
+		firstBlocks = new HashMap<Identifier, BlockLocation>();
+		Encoding encoding = getEncoding();
+		headerTable = index == null && SidecarIndex.isEnabled() ? new BlockHeaderTable(encoding.getAddressWidth()) : null;
+		byte[] headerData = new byte[(int) BlockHeader.getHeaderSize(encoding.getAddressWidth())];
+		byte[] chunk = storage.isDirect() ? new byte[ConcurrentInflaterInputStream.CHUNK_SIZE] : null;
+		long offset = firstBlockOffset;
+		BlockHeader blockHeader;
+		Block block;
+		do {
+			blockHeader = new BlockHeader();
+			in.readFully(headerData);
+			blockHeader.read(CDataReadWriteAccess.create(headerData, 0, encoding));
+			if (headerTable != null) headerTable.add(blockHeader, offset);
+			ByteBuffer data = storage.allocate(blockHeader.getSize());
+			if (data.hasArray()) {
+				in.readFully(data.array(), data.arrayOffset(), data.capacity());
+			} else {
+				while (data.hasRemaining()) {
+					int len = Math.min(data.remaining(), chunk.length);
+					in.readFully(chunk, 0, len);
+					data.put(chunk, 0, len);
+				}
+				data.clear();
+			}
+			
+			block = new Block(blockHeader, CDataReadWriteAccess.create(data, blockHeader.getAddress(), encoding));
+			blocks.add(block);
+			
+			if (!firstBlocks.containsKey(blockHeader.getCode())) {
+				firstBlocks.put(blockHeader.getCode(), new BlockLocation(block, offset));
+			}
+			offset += headerData.length + blockHeader.getSize();
+		} while (blockHeader.getCode().intValue() != BlockCodes.CODE_ENDB);
+		
+		return blocks;
+	}
 
+	/**
+	 * Provides access to the data of the block according to the open mode. 
+	 * In case the data is read, the file access has to be positioned at 
+	 * the given dataOffset and will be positioned at the end of the data 
+	 * afterwards.
+	 */
+	private CDataReadWriteAccess readBlockData(BlockHeader blockHeader, long dataOffset) throws IOException {
+		int code = blockHeader.getCode().intValue();
+		if (mode == OpenMode.MEMORY_MAPPED) {
+			return new CBufferReadWrite(mapping.slice(dataOffset, blockHeader.getSize()), blockHeader.getAddress(), getEncoding().getAddressWidth(), true);
+		} else if (mode == OpenMode.LAZY && code != BlockCodes.CODE_DNA1 && code != BlockCodes.CODE_GLOB) {
+			// DNA1 and GLOB are needed anyway, so we read them while we are here.
+			io.offset(dataOffset + blockHeader.getSize());
+			return new CLazyBufferReadWrite(io, dataOffset, blockHeader.getSize(), blockHeader.getAddress(), getEncoding(), storage);
+		} else {
+			ByteBuffer data = storage.allocate(blockHeader.getSize());
+			io.readFully(data);
+			data.clear();
+			return CDataReadWriteAccess.create(data, blockHeader.getAddress(), getEncoding());
+		}
+	}
+
+	/**
+	 * Replaces the data of blocks, which is still backed by the 
+	 * file (mapped or not yet loaded), by a copy in the block storage 
+	 * and releases the mapping.
+	 */
+	private void detachBlocks() throws IOException {
+		for (Block block : this.blocks) {
+			if (block.data instanceof CLazyBufferReadWrite) {
+				block.data = ((CLazyBufferReadWrite) block.data).load();
+			} else if (block.data instanceof CBufferReadWrite) {
+				CBufferReadWrite data = (CBufferReadWrite) block.data;
+				if (data.isMapped()) {
+					block.data = data.copy(storage);
+				}
+			}
+		}
+		if (mapping != null) {
+			mapping.close();
+			mapping = null;
+		}
+	}
+
+
+	/**
+	 * Closes the file and releases all resources. 
+	 * If the block storage keeps data outside of the Java heap 
+	 * (see {@link BlockStorage#isDirect()}), all blocks are closed 
+	 * and cannot be accessed afterwards.
+	 */
 	@Override
 	public void close() throws IOException {
-		io.close();
-		io = null;
+		if (io != null) {
+			io.close();
+			io = null;
+		}
+		if (storage.isDirect()) {
+			// no block must access released memory
+			if (blocks != null) {
+				for (Block block : blocks) {
+					block.close();
+				}
+			}
+			if (blockTable != null) {
+				blockTable.closeBlocks();
+			}
+		}
+		storage.close();
+		if (mapping != null) {
+			mapping.close();
+			mapping = null;
+		}
+		if (tempFile != null) {
+			tempFile.delete();
+			tempFile = null;
+		}
 	}
 
 	public FileHeader getHeader() {
@@ -364,8 +1047,15 @@ public class BlenderFile implements Closeable {
 	}
 
 
+	/**
+	 * @return C meta model of the struct DNA of this file, which is shared 
+	 * with all files of the same Blender build (see {@link DNACache}).
+	 */
 	public CMetaModel getMetaModel() throws IOException {
-		return new CMetaModel(getBlenderModel());
+		if (metaModel == null) {
+			metaModel = dna != null ? dna.getMetaModel() : new CMetaModel(getBlenderModel());
+		}
+		return metaModel;
 	}
 
 
@@ -373,6 +1063,10 @@ public class BlenderFile implements Closeable {
 		return header.version;
 	}
 
+	/**
+	 * @return Struct DNA of the file, which may be shared with other 
+	 * files (see {@link DNACache}) and must not be modified.
+	 */
 	public StructDNA getStructDNA() {
 		return sdna;
 	}
@@ -381,6 +1075,74 @@ public class BlenderFile implements Closeable {
 		return blocks;
 	}
 
+	/**
+	 * Reads the headers of all blocks of the given file into a compact 
+	 * table, without reading block data or creating any block objects. 
+	 * This is meant for scanning large files for certain blocks.
+	 * Compressed files are supported too.
+	 * 
+	 * @see BlockHeaderTable
+	 */
+	public static BlockHeaderTable readBlockHeaders(File file) throws IOException {
+		BlenderFile blend = new BlenderFile();
+		switch (Compression.detect(file)) {
+		case GZIP: {
+			InputStream in = new ConcurrentInflaterInputStream(new FileInputStream(file));
+			try {
+				return blend.readBlockHeaders(in);
+			} finally {
+				in.close();
+			}
+		}
+		case ZSTD: {
+			ZstdSeekableFile zstd = new ZstdSeekableFile(file);
+			try {
+				blend.readHeader(new ZstdReadAccess(zstd, Encoding.JAVA_NATIVE));
+				return BlockHeaderTable.read(new ZstdReadAccess(zstd, blend.getEncoding()), blend.firstBlockOffset);
+			} finally {
+				zstd.close();
+			}
+		}
+		default: {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				blend.readHeader(CDataReadWriteAccess.create(raf, Encoding.JAVA_NATIVE));
+				return BlockHeaderTable.read(CDataReadWriteAccess.create(raf, blend.getEncoding()), blend.firstBlockOffset);
+			} finally {
+				raf.close();
+			}
+		}
+		}
+	}
+
+	/**
+	 * Reads file header and all block headers from the given stream 
+	 * of uncompressed file content and skips block data.
+	 */
+	private BlockHeaderTable readBlockHeaders(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		readHeader(new BigEndianInputStreamWrapper(in, Encoding.JAVA_NATIVE.getAddressWidth()));
+		
+		Encoding encoding = getEncoding();
+		BlockHeaderTable table = new BlockHeaderTable(encoding.getAddressWidth());
+		byte[] headerData = new byte[table.getHeaderSize()];
+		CDataReadWriteAccess headerAccess = CDataReadWriteAccess.create(headerData, 0, encoding);
+		long offset = firstBlockOffset;
+		int i;
+		do {
+			in.readFully(headerData);
+			headerAccess.offset(0);
+			i = table.readHeader(headerAccess, offset);
+			for (int remaining = table.getSize(i); remaining > 0;) {
+				int skipped = in.skipBytes(remaining);
+				if (skipped <= 0) throw new EOFException();
+				remaining -= skipped;
+			}
+			offset = table.getDataOffset(i) + table.getSize(i);
+		} while (table.getCodeValue(i) != BlockCodes.CODE_ENDB);
+		return table;
+	}
+
 	/**
 	 * Adds a block to the end of the file. Please note, that method {@link #write()}
 	 * will rearrange blocks eventually to move ENDB at the end.
@@ -394,4 +1156,32 @@ public class BlenderFile implements Closeable {
 	public File getFile() {
 		return file;
 	}
+
+	/**
+	 * @return Mode used to open the file.
+	 */
+	public OpenMode getOpenMode() {
+		return mode;
+	}
+
+	/**
+	 * @return Compression format of the file.
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * @return Filter used to select the blocks loaded or null if all blocks were loaded.
+	 */
+	public BlockFilter getBlockFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return Storage for the data of blocks held in memory.
+	 */
+	public BlockStorage getBlockStorage() {
+		return storage;
+	}
 }
@@ -0,0 +1,143 @@
+package org.cakelab.blender.io;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cakelab.blender.io.dna.DNAModel;
+import org.cakelab.blender.io.dna.internal.StructDNA;
+import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.metac.CMetaModel;
+
+/**
+ * Process wide cache of struct DNA and the models derived from it.
+ * <p>
+ * Files written by the same build of Blender contain identical
+ * DNA1 blocks. The cache is keyed by the content of the DNA1 block
+ * (and its byte order). Thus, the struct DNA is parsed and the
+ * {@link DNAModel} and {@link CMetaModel} are built only once per
+ * Blender build, and shared by all files opened afterwards.
+ * </p>
+ * <p>
+ * Shared models cannot be modified through their methods, which 
+ * return copies of their arrays and lists. The struct DNA exposes 
+ * its content in public fields and the types of the meta model 
+ * have public size fields, which must not be modified.
+ * The cache keeps the entries of the {@value #CAPACITY} most 
+ * recently used Blender builds.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class DNACache {
+	/** maximum number of cached entries */
+	public static final int CAPACITY = 32;
+
+	private static final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, DNACache.Entry> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	/**
+	 * Shared struct DNA and models derived from it.
+	 * Models are created on first request.
+	 */
+	public static class Entry {
+		private final StructDNA sdna;
+		private DNAModel model;
+		private CMetaModel metaModel;
+
+		Entry(StructDNA sdna) {
+			this.sdna = sdna;
+		}
+
+		public StructDNA getStructDNA() {
+			return sdna;
+		}
+
+		public synchronized DNAModel getDNAModel() {
+			if (model == null) {
+				model = new DNAModel(sdna);
+			}
+			return model;
+		}
+
+		public synchronized CMetaModel getMetaModel() {
+			if (metaModel == null) {
+				metaModel = new CMetaModel(getDNAModel());
+			}
+			return metaModel;
+		}
+	}
+
+	/** Content of a DNA1 block with precomputed hash code. */
+	private static class Key {
+		final byte[] data;
+		final ByteOrder byteOrder;
+		final int hash;
+
+		Key(byte[] data, ByteOrder byteOrder) {
+			this.data = data;
+			this.byteOrder = byteOrder;
+			this.hash = 31 * Arrays.hashCode(data) + byteOrder.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return hash == other.hash && byteOrder == other.byteOrder && Arrays.equals(data, other.data);
+		}
+	}
+
+	/**
+	 * Returns the entry for the given content of a DNA1 block.
+	 * If there is none, the struct DNA is parsed from the given
+	 * data, unless it is already known.
+	 *
+	 * @param data content of a DNA1 block.
+	 * @param encoding encoding of the file.
+	 * @param parsed struct DNA of the given data, if already available, or null.
+	 */
+	public static Entry get(byte[] data, Encoding encoding, StructDNA parsed) throws IOException {
+		Key key = new Key(data, encoding.getByteOrder());
+		synchronized(cache) {
+			Entry entry = cache.get(key);
+			if (entry != null) return entry;
+		}
+		if (parsed == null) {
+			// parsing happens outside of the lock
+			parsed = new StructDNA();
+			parsed.read(CDataReadWriteAccess.create(data, 0, encoding));
+		}
+		synchronized(cache) {
+			Entry entry = cache.get(key);
+			if (entry == null) {
+				entry = new Entry(parsed);
+				cache.put(key, entry);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public static void clear() {
+		synchronized(cache) {
+			cache.clear();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.cakelab.blender.io;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.cakelab.blender.io.dna.DNAField;
+import org.cakelab.blender.io.dna.DNAModel;
+import org.cakelab.blender.io.dna.DNAStruct;
+
+/**
+ * Determines the offsets of all pointers in structs of a
+ * given struct DNA, including pointers in embedded structs
+ * and arrays. Struct DNA has no implicit padding, thus field
+ * offsets are just the sum of the sizes of the preceding fields.
+ *
+ * @author homac
+ *
+ */
+class PointerOffsets {
+	private static final int[] NONE = new int[0];
+
+	private final DNAModel model;
+	private final int pointerSize;
+	private final HashMap<Integer, int[]> cache = new HashMap<Integer, int[]>();
+
+	PointerOffsets(DNAModel model, int pointerSize) {
+		this.model = model;
+		this.pointerSize = pointerSize;
+	}
+
+	/**
+	 * @return offsets of all pointers in a struct with the given sdna index.
+	 */
+	int[] get(int sdnaIndex) {
+		int[] offsets = cache.get(sdnaIndex);
+		if (offsets == null) {
+			offsets = compute(model.getStruct(sdnaIndex));
+			cache.put(sdnaIndex, offsets);
+		}
+		return offsets;
+	}
+
+	private int[] compute(DNAStruct struct) {
+		int[] offsets = new int[8];
+		int length = 0;
+		int offset = 0;
+		for (DNAField field : struct.getFields()) {
+			String signature = field.getSignatureName();
+			int arrayLength = getArrayLength(signature);
+			if (signature.indexOf('*') >= 0) {
+				// pointer, pointer array or function pointer
+				for (int i = 0; i < arrayLength; i++) {
+					if (length == offsets.length) offsets = Arrays.copyOf(offsets, length * 2);
+					offsets[length++] = offset;
+					offset += pointerSize;
+				}
+				continue;
+			}
+			int size = field.getType().getSize();
+			DNAStruct embedded = model.getStruct(field.getType().getName());
+			int[] embeddedOffsets = embedded != null ? get(embedded.getIndex()) : NONE;
+			for (int i = 0; i < arrayLength; i++) {
+				for (int o : embeddedOffsets) {
+					if (length == offsets.length) offsets = Arrays.copyOf(offsets, length * 2);
+					offsets[length++] = offset + o;
+				}
+				offset += size;
+			}
+		}
+		return length > 0 ? Arrays.copyOf(offsets, length) : NONE;
+	}
+
+	/**
+	 * @return product of all array dimensions in the given field signature (e.g. "name[4][4]").
+	 */
+	private static int getArrayLength(String signature) {
+		int length = 1;
+		for (int start = signature.indexOf('['); start >= 0; start = signature.indexOf('[', start + 1)) {
+			int end = signature.indexOf(']', start);
+			length *= Integer.parseInt(signature.substring(start + 1, end).trim());
+		}
+		return length;
+	}
+}
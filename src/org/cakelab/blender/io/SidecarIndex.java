@@ -0,0 +1,302 @@
+package org.cakelab.blender.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import org.cakelab.blender.io.block.BlockHeaderTable;
+import org.cakelab.blender.io.dna.internal.StructDNA;
+import org.cakelab.blender.io.dna.internal.StructDNA.Struct;
+import org.cakelab.blender.io.dna.internal.StructDNA.Struct.Field;
+
+/**
+ * Persistent index of a .blend file stored in a separate file
+ * (sidecar file), which allows to reopen the file without scanning
+ * its block headers or parsing its struct DNA.
+ * <p>
+ * The index contains the table of all block headers
+ * (see {@link BlockHeaderTable}) and a snapshot of the struct DNA.
+ * It is keyed by length, modification time and a hash of samples
+ * of the content of the .blend file. An index, which does not match
+ * the file anymore, is ignored and replaced on the next open.
+ * </p>
+ * <p>
+ * Sidecar indices are disabled by default. They are enabled by the
+ * system property {@value #PROPERTY_DIRECTORY}, which names the
+ * directory to store them in. If the property is empty, an index
+ * is stored next to its .blend file, named like the file with suffix
+ * {@value #SUFFIX} appended. {@link BlenderFile} uses an existing
+ * index on open and creates a missing index after open.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class SidecarIndex {
+	/** System property naming the directory of sidecar indices. */
+	public static final String PROPERTY_DIRECTORY = "org.cakelab.blender.SidecarIndexDir";
+	/** Suffix of sidecar index files. */
+	public static final String SUFFIX = ".jbi";
+
+	/** "JBI" followed by the format version */
+	private static final int MAGIC = 'J' << 24 | 'B' << 16 | 'I' << 8 | 1;
+
+	/** size and number of samples of the content, which enter the hash */
+	private static final int SAMPLE_SIZE = 4096;
+	private static final int SAMPLES = 16;
+
+	/**
+	 * Identifies a particular state of a .blend file by its length,
+	 * modification time and a hash of samples of its content.
+	 */
+	public static class Key {
+		private final long fileLength;
+		private final long lastModified;
+		private final long hash;
+
+		private Key(long fileLength, long lastModified, long hash) {
+			this.fileLength = fileLength;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+
+		/**
+		 * @return key of the current state of the given file.
+		 */
+		public static Key of(File file) throws IOException {
+			long fileLength = file.length();
+			long lastModified = file.lastModified();
+			return new Key(fileLength, lastModified, hash(file));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return fileLength == other.fileLength && lastModified == other.lastModified && hash == other.hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ lastModified ^ fileLength);
+		}
+	}
+
+	private final Key key;
+	private final long firstBlockOffset;
+	private final BlockHeaderTable headers;
+	private final StructDNA sdna;
+
+	/**
+	 * @param key Key of the file at the time, when reading of 
+	 *            the given block headers and struct DNA started.
+	 */
+	public SidecarIndex(Key key, long firstBlockOffset, BlockHeaderTable headers, StructDNA sdna) {
+		this.key = key;
+		this.firstBlockOffset = firstBlockOffset;
+		this.headers = headers;
+		this.sdna = sdna;
+	}
+
+	private SidecarIndex(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) throw new IOException("not a sidecar index or unsupported version");
+		key = new Key(in.readLong(), in.readLong(), in.readLong());
+		firstBlockOffset = in.readLong();
+		headers = BlockHeaderTable.readFrom(in);
+		sdna = readStructDNA(in);
+	}
+
+	/**
+	 * @return true, if sidecar indices are enabled (see {@link #PROPERTY_DIRECTORY}).
+	 */
+	public static boolean isEnabled() {
+		return System.getProperty(PROPERTY_DIRECTORY) != null;
+	}
+
+	/**
+	 * @return location of the sidecar index of the given .blend file or
+	 * null if sidecar indices are disabled.
+	 */
+	public static File getIndexFile(File file) {
+		String directory = System.getProperty(PROPERTY_DIRECTORY);
+		if (directory == null) return null;
+		file = file.getAbsoluteFile();
+		if (directory.isEmpty()) {
+			return new File(file.getPath() + SUFFIX);
+		}
+		// files of the same name in different directories must not share an index
+		String name = file.getName() + "-" + Integer.toHexString(file.getPath().hashCode()) + SUFFIX;
+		return new File(directory, name);
+	}
+
+	/**
+	 * Loads the sidecar index of the given file.
+	 *
+	 * @return index or null, if there is none or it does not match the file.
+	 */
+	public static SidecarIndex load(File file) throws IOException {
+		return load(file, Key.of(file));
+	}
+
+	/**
+	 * Loads the sidecar index of the given file, if it matches the given key.
+	 *
+	 * @return index or null, if there is none or it does not match the key.
+	 */
+	public static SidecarIndex load(File file, Key key) throws IOException {
+		File indexFile = getIndexFile(file);
+		if (indexFile == null || !indexFile.isFile()) return null;
+		SidecarIndex index;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			index = new SidecarIndex(in);
+		} catch (IOException | RuntimeException e) {
+			// corrupted or outdated format: will be replaced
+			return null;
+		} finally {
+			in.close();
+		}
+		if (!index.key.equals(key)) {
+			return null;
+		}
+		return index;
+	}
+
+	/**
+	 * Stores this index as sidecar index of the given file. The index
+	 * is written to a temporary file first, which then replaces the
+	 * index file, so concurrent readers never see a partial index.
+	 */
+	public void save(File file) throws IOException {
+		File indexFile = getIndexFile(file);
+		if (indexFile == null) return;
+		File tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeLong(key.fileLength);
+				out.writeLong(key.lastModified);
+				out.writeLong(key.hash);
+				out.writeLong(firstBlockOffset);
+				headers.writeTo(out);
+				writeStructDNA(out, sdna);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(indexFile)) {
+				// some platforms don't replace existing files on rename
+				indexFile.delete();
+				if (!tmp.renameTo(indexFile)) throw new IOException("can't create sidecar index " + indexFile);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Hash of samples evenly distributed over the content of the file,
+	 * including its beginning and end.
+	 */
+	static long hash(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			CRC32 crc = new CRC32();
+			byte[] sample = new byte[SAMPLE_SIZE];
+			if (length <= (long)SAMPLE_SIZE * SAMPLES) {
+				for (int len = raf.read(sample); len > 0; len = raf.read(sample)) {
+					crc.update(sample, 0, len);
+				}
+			} else {
+				long step = (length - SAMPLE_SIZE) / (SAMPLES - 1);
+				for (int i = 0; i < SAMPLES; i++) {
+					raf.seek(i * step);
+					raf.readFully(sample);
+					crc.update(sample);
+				}
+			}
+			return crc.getValue();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void writeStructDNA(DataOutputStream out, StructDNA sdna) throws IOException {
+		out.writeInt(sdna.names_len);
+		for (int i = 0; i < sdna.names_len; i++) out.writeUTF(sdna.names[i]);
+		out.writeInt(sdna.types_len);
+		for (int i = 0; i < sdna.types_len; i++) {
+			out.writeUTF(sdna.types[i]);
+			out.writeShort(sdna.type_lengths[i]);
+		}
+		out.writeInt(sdna.structs_len);
+		for (int i = 0; i < sdna.structs_len; i++) {
+			Struct struct = sdna.structs[i];
+			out.writeShort(struct.type);
+			out.writeShort(struct.fields_len);
+			for (int f = 0; f < struct.fields_len; f++) {
+				out.writeShort(struct.fields[f].type);
+				out.writeShort(struct.fields[f].name);
+			}
+		}
+	}
+
+	private static StructDNA readStructDNA(DataInputStream in) throws IOException {
+		StructDNA sdna = new StructDNA();
+		sdna.names_len = in.readInt();
+		sdna.names = new String[sdna.names_len];
+		for (int i = 0; i < sdna.names_len; i++) sdna.names[i] = in.readUTF();
+		sdna.types_len = in.readInt();
+		sdna.types = new String[sdna.types_len];
+		sdna.type_lengths = new short[sdna.types_len];
+		for (int i = 0; i < sdna.types_len; i++) {
+			sdna.types[i] = in.readUTF();
+			sdna.type_lengths[i] = in.readShort();
+		}
+		sdna.structs_len = in.readInt();
+		sdna.structs = new Struct[sdna.structs_len];
+		for (int i = 0; i < sdna.structs_len; i++) {
+			Struct struct = sdna.new Struct();
+			struct.type = in.readShort();
+			struct.fields_len = in.readShort();
+			struct.fields = new Field[struct.fields_len];
+			for (int f = 0; f < struct.fields_len; f++) {
+				Field field = struct.new Field();
+				field.type = in.readShort();
+				field.name = in.readShort();
+				struct.fields[f] = field;
+			}
+			sdna.structs[i] = struct;
+		}
+		return sdna;
+	}
+
+	/**
+	 * @return offset of the first block header in the file.
+	 */
+	public long getFirstBlockOffset() {
+		return firstBlockOffset;
+	}
+
+	/**
+	 * @return headers of all blocks of the file.
+	 */
+	public BlockHeaderTable getBlockHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return struct DNA of the file.
+	 */
+	public StructDNA getStructDNA() {
+		return sdna;
+	}
+}
@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.nio.ByteOrder;
 
 import org.cakelab.blender.io.util.CBufferReadWrite;
+import org.cakelab.blender.io.util.CClosedReadWrite;
 import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.CLazyBufferReadWrite;
 import org.cakelab.blender.nio.UnsignedLong;
 
 import org.cakelab.blender.io.BlenderFile;
@@ -47,8 +49,18 @@ public class Block implements Comparable<Long> {
 	}
 
 
+	/**
+	 * Releases the data of this block. Any further access to 
+	 * the data fails with an IOException.
+	 */
 	public void close() throws IOException {
-		data.close();
+		if (data == null || data instanceof CClosedReadWrite) return;
+		CDataReadWriteAccess closed = new CClosedReadWrite(data.getPointerSize(), data.getByteOrder());
+		try {
+			data.close();
+		} finally {
+			data = closed;
+		}
 	}
 
 	public boolean readBoolean(long address) throws IOException {
@@ -220,10 +232,14 @@ public class Block implements Comparable<Long> {
 	}
 
 	public void flush(CDataReadWriteAccess io) throws IOException {
-		if (data instanceof CBufferReadWrite) {
+		if (data instanceof CLazyBufferReadWrite) {
+			// data has to be loaded first
+			header.write(io);
+			((CLazyBufferReadWrite)data).load().writeTo(io);
+		} else if (data instanceof CBufferReadWrite) {
 			// in-memory buffer
 			header.write(io);
-			io.writeFully(((CBufferReadWrite)data).getBytes());
+			((CBufferReadWrite)data).writeTo(io);
 		} else if (io == data) {
 			// data io is direct file access (data on disk is up-to-date)
 			// Update the header only (just in case)
@@ -15,6 +15,66 @@ import org.cakelab.blender.io.util.Identifier;
 public interface BlockCodes {
 
 
+	/*
+	 * Block codes packed into int values (see Identifier#intValue()).
+	 * They are compile time constants to be used in switch statements.
+	 */
+	int CODE_SCE = 'S' << 24 | 'C' << 16;
+	int CODE_LI = 'L' << 24 | 'I' << 16;
+	int CODE_OB = 'O' << 24 | 'B' << 16;
+	int CODE_ME = 'M' << 24 | 'E' << 16;
+	int CODE_CU = 'C' << 24 | 'U' << 16;
+	int CODE_MB = 'M' << 24 | 'B' << 16;
+	int CODE_MA = 'M' << 24 | 'A' << 16;
+	int CODE_TE = 'T' << 24 | 'E' << 16;
+	int CODE_IM = 'I' << 24 | 'M' << 16;
+	int CODE_LT = 'L' << 24 | 'T' << 16;
+	int CODE_LA = 'L' << 24 | 'A' << 16;
+	int CODE_CA = 'C' << 24 | 'A' << 16;
+	int CODE_IP = 'I' << 24 | 'P' << 16;
+	int CODE_KE = 'K' << 24 | 'E' << 16;
+	int CODE_WO = 'W' << 24 | 'O' << 16;
+	int CODE_SCR = 'S' << 24 | 'R' << 16;
+	int CODE_VF = 'V' << 24 | 'F' << 16;
+	int CODE_TXT = 'T' << 24 | 'X' << 16;
+	int CODE_SPK = 'S' << 24 | 'K' << 16;
+	int CODE_SO = 'S' << 24 | 'O' << 16;
+	int CODE_GR = 'G' << 24 | 'R' << 16;
+	int CODE_AR = 'A' << 24 | 'R' << 16;
+	int CODE_AC = 'A' << 24 | 'C' << 16;
+	int CODE_NT = 'N' << 24 | 'T' << 16;
+	int CODE_BR = 'B' << 24 | 'R' << 16;
+	int CODE_PA = 'P' << 24 | 'A' << 16;
+	int CODE_GD = 'G' << 24 | 'D' << 16;
+	int CODE_WM = 'W' << 24 | 'M' << 16;
+	int CODE_MC = 'M' << 24 | 'C' << 16;
+	int CODE_MSK = 'M' << 24 | 'S' << 16;
+	int CODE_LS = 'L' << 24 | 'S' << 16;
+	int CODE_PAL = 'P' << 24 | 'L' << 16;
+	int CODE_PC = 'P' << 24 | 'C' << 16;
+	int CODE_CF = 'C' << 24 | 'F' << 16;
+	int CODE_WS = 'W' << 24 | 'S' << 16;
+	int CODE_LP = 'L' << 24 | 'P' << 16;
+	int CODE_HA = 'H' << 24 | 'A' << 16;
+	int CODE_CV = 'C' << 24 | 'V' << 16;
+	int CODE_PT = 'P' << 24 | 'T' << 16;
+	int CODE_VO = 'V' << 24 | 'O' << 16;
+	int CODE_SIM = 'S' << 24 | 'I' << 16;
+	int CODE_ID = 'I' << 24 | 'D' << 16;
+	int CODE_SCRN = 'S' << 24 | 'N' << 16;
+	int CODE_SEQ = 'S' << 24 | 'Q' << 16;
+	int CODE_CO = 'C' << 24 | 'O' << 16;
+	int CODE_PO = 'A' << 24 | 'C' << 16;
+	int CODE_NLA = 'N' << 24 | 'L' << 16;
+	int CODE_FLUIDSIM = 'F' << 24 | 'S' << 16;
+	int CODE_ENDB = 'E' << 24 | 'N' << 16 | 'D' << 8 | 'B';
+	int CODE_DNA1 = 'D' << 24 | 'N' << 16 | 'A' << 8 | '1';
+	int CODE_REND = 'R' << 24 | 'E' << 16 | 'N' << 8 | 'D';
+	int CODE_TEST = 'T' << 24 | 'E' << 16 | 'S' << 8 | 'T';
+	int CODE_GLOB = 'G' << 24 | 'L' << 16 | 'O' << 8 | 'B';
+	int CODE_DATA = 'D' << 24 | 'A' << 16 | 'T' << 8 | 'A';
+	
+	
 	/* all known block codes as of Blender v2.83 
 	 * see 'source/blender/makesdna/DNA_ID.h' */
 	
@@ -137,23 +197,23 @@ public interface BlockCodes {
 	
 	
 	/** block code of the last block. */
-	Identifier ID_ENDB = new Identifier("ENDB");
+	Identifier ID_ENDB = Identifier.valueOf(CODE_ENDB);
 	/** block code of the block containing the {@link StructDNA} struct. */
-	Identifier ID_DNA1 = new Identifier("DNA1");
+	Identifier ID_DNA1 = Identifier.valueOf(CODE_DNA1);
 	/** Block code of a block containing struct Link. */
-	Identifier ID_REND = new Identifier("REND");
+	Identifier ID_REND = Identifier.valueOf(CODE_REND);
 	/** Block code of a block containing struct Link. */
-	Identifier ID_TEST = new Identifier("TEST");
+	Identifier ID_TEST = Identifier.valueOf(CODE_TEST);
 	/** Block code of a block containing struct FileGlobal. */
-	Identifier ID_GLOB = new Identifier("GLOB");
+	Identifier ID_GLOB = Identifier.valueOf(CODE_GLOB);
 	/** Block code of a block containing data related to other blocks. */
-	Identifier ID_DATA = new Identifier("DATA");
+	Identifier ID_DATA = Identifier.valueOf(CODE_DATA);
 	
 	
 	
 	
 	static Identifier MAKE_ID2(char c, char d) {
-		return new Identifier(new byte[]{(byte) c, (byte) d, 0, 0});
+		return Identifier.valueOf(c << 24 | d << 16);
 	}
 
 }
@@ -0,0 +1,129 @@
+package org.cakelab.blender.io.block;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.cakelab.blender.io.BlenderFile;
+import org.cakelab.blender.io.dna.DNAModel;
+import org.cakelab.blender.io.util.Identifier;
+
+/**
+ * A block filter selects the blocks to be loaded when opening a
+ * {@link BlenderFile} (see {@link BlenderFile#BlenderFile(java.io.File, BlenderFile.OpenMode, BlockFilter)}).
+ * <p>
+ * The data of blocks rejected by the filter is skipped. Those blocks
+ * are neither in the block list nor in the block table of the file.
+ * Lookups of addresses inside rejected blocks throw a
+ * {@link FilteredBlockException}. Blocks required to read the file
+ * (DNA1, GLOB and ENDB) are always loaded.
+ * </p>
+ * <p>
+ * Filters can be created by block code ({@link #byCode(Identifier...)}),
+ * by struct name ({@link #byStructName(String...)}) or by implementing
+ * {@link #accept(BlockHeader, DNAModel)}. A filter
+ * {@link #withReferencedData()} additionally loads all DATA blocks
+ * referenced by pointers in accepted blocks (transitively).
+ * </p>
+ * Example:
+ * <pre>
+ * BlockFilter filter = BlockFilter.byCode(BlockCodes.ID_MA, BlockCodes.ID_NT).withReferencedData();
+ * BlenderFile blend = new BlenderFile(file, OpenMode.READ_FULLY, filter);
+ * </pre>
+ *
+ * @author homac
+ *
+ */
+public abstract class BlockFilter {
+
+	/**
+	 * @param header Header of the block.
+	 * @param model Struct DNA of the file, to resolve {@link BlockHeader#getSdnaIndex()}.
+	 * @return true, if the block shall be loaded.
+	 */
+	public abstract boolean accept(BlockHeader header, DNAModel model);
+
+	/**
+	 * @return true, if DATA blocks referenced by accepted blocks shall be loaded too.
+	 */
+	public boolean includesReferencedData() {
+		return false;
+	}
+
+	/**
+	 * @return Filter which accepts the same blocks as this filter plus all
+	 * DATA blocks referenced by them.
+	 */
+	public BlockFilter withReferencedData() {
+		final BlockFilter filter = this;
+		return new BlockFilter() {
+			@Override
+			public boolean accept(BlockHeader header, DNAModel model) {
+				return filter.accept(header, model);
+			}
+
+			@Override
+			public boolean includesReferencedData() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return Filter which accepts blocks with one of the given block codes.
+	 */
+	public static BlockFilter byCode(Identifier ... codes) {
+		final int[] values = new int[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			values[i] = codes[i].intValue();
+		}
+		Arrays.sort(values);
+		return new BlockFilter() {
+			@Override
+			public boolean accept(BlockHeader header, DNAModel model) {
+				return Arrays.binarySearch(values, header.code.intValue()) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * Struct names unknown to the file are ignored.
+	 *
+	 * @return Filter which accepts blocks containing structs of one of the given types.
+	 */
+	public static BlockFilter byStructName(String ... structNames) {
+		final HashSet<String> names = new HashSet<String>(Arrays.asList(structNames));
+		return new BlockFilter() {
+			@Override
+			public boolean accept(BlockHeader header, DNAModel model) {
+				int sdnaIndex = header.sdnaIndex;
+				return sdnaIndex >= 0 && sdnaIndex < model.getStructCount() 
+						&& names.contains(model.getStruct(sdnaIndex).getType().getName());
+			}
+		};
+	}
+
+	/**
+	 * @return Filter which accepts all blocks accepted by at least one of the given filters.
+	 */
+	public static BlockFilter or(final BlockFilter ... filters) {
+		boolean referencedData = false;
+		for (BlockFilter filter : filters) {
+			referencedData |= filter.includesReferencedData();
+		}
+		final boolean includesReferencedData = referencedData;
+		return new BlockFilter() {
+			@Override
+			public boolean accept(BlockHeader header, DNAModel model) {
+				for (BlockFilter filter : filters) {
+					if (filter.accept(header, model)) return true;
+				}
+				return false;
+			}
+
+			@Override
+			public boolean includesReferencedData() {
+				return includesReferencedData;
+			}
+		};
+	}
+}
@@ -41,7 +41,7 @@ public class BlockHeader {
 	 * allow fast lookup of data like Library, Scenes, Object or 
 	 * Materials as they have a specific code. 
 	 * The last file-block in the file has code 'ENDB'.*/
-	Identifier code = new Identifier();
+	Identifier code = Identifier.valueOf(0);
 	/** Total (int32) length of the data after the file-block-header.
 	 * The size contains the total length of data after the 
 	 * file-block-header. After the data a new file-block 
@@ -66,6 +66,11 @@ public class BlockHeader {
 	/*           END of BLOCK HEADER DATA               */
 	/* ************************************************ */
 	
+	/** Block table, which lists the block of this header, if any.
+	 * It gets notified about changes of the sdna index to keep its 
+	 * index by sdna index up to date. */
+	BlockTable table;
+	
 
 	public BlockHeader() {
 	}
@@ -87,7 +92,7 @@ public class BlockHeader {
 	}
 
 	public void read(CDataReadWriteAccess in) throws IOException {
-		code.read(in);
+		code = Identifier.readFrom(in);
 		size = in.readInt();
 		address = in.readLong();
 		sdnaIndex = in.readInt();
@@ -121,7 +126,11 @@ public class BlockHeader {
 	}
 
 	public void setSdnaIndex(int sdnaIndex) {
-		this.sdnaIndex = sdnaIndex;
+		if (table != null && sdnaIndex != this.sdnaIndex) {
+			table.changeSdnaIndex(this, sdnaIndex);
+		} else {
+			this.sdnaIndex = sdnaIndex;
+		}
 	}
 
 	public int getCount() {
@@ -0,0 +1,249 @@
+package org.cakelab.blender.io.block;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.Identifier;
+
+/**
+ * Compact table of block headers in the order of their
+ * appearance in the file.
+ * <p>
+ * The fields of all headers are stored in primitive arrays
+ * (struct of arrays) instead of one {@link BlockHeader} per block.
+ * A table of a million blocks thus consists of a handful of arrays
+ * only. Codes are stored as packed int values (see
+ * {@link Identifier#intValue()}). Instances of {@link BlockHeader}
+ * are created on demand only (see {@link #getHeader(int)}).
+ * </p>
+ * <p>
+ * The table is meant for scanning the headers of a file without
+ * loading it (see BlenderFile.readBlockHeaders(File)) and for the
+ * sidecar index. It does not replace the headers of the blocks of
+ * an opened file, which still has one {@link Block} and
+ * {@link BlockHeader} per block.
+ * </p>
+ * <p>
+ * In addition to the header fields, the table stores the offset
+ * of each header in the (uncompressed) file, which allows to
+ * access the data of a block later.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class BlockHeaderTable {
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private final int headerSize;
+
+	private int[] codes;
+	private int[] sizes;
+	private long[] addresses;
+	private int[] sdnaIndices;
+	private int[] counts;
+	private long[] offsets;
+	private int length;
+
+	/**
+	 * @param pointerSize pointer size of the file, which determines the size of headers.
+	 */
+	public BlockHeaderTable(int pointerSize) {
+		this((int) BlockHeader.getHeaderSize(pointerSize), DEFAULT_CAPACITY);
+	}
+
+	private BlockHeaderTable(int headerSize, int capacity) {
+		this.headerSize = headerSize;
+		capacity = Math.max(capacity, 1);
+		codes = new int[capacity];
+		sizes = new int[capacity];
+		addresses = new long[capacity];
+		sdnaIndices = new int[capacity];
+		counts = new int[capacity];
+		offsets = new long[capacity];
+	}
+
+	/**
+	 * Reads all block headers starting at the given offset up to
+	 * and including the ENDB block. Block data is skipped.
+	 *
+	 * @param in input positioned anywhere.
+	 * @param firstBlockOffset offset of the first block header.
+	 */
+	public static BlockHeaderTable read(CDataReadWriteAccess in, long firstBlockOffset) throws IOException {
+		BlockHeaderTable table = new BlockHeaderTable(in.getPointerSize());
+		long offset = firstBlockOffset;
+		int i;
+		do {
+			in.offset(offset);
+			i = table.readHeader(in, offset);
+			offset = table.getDataOffset(i) + table.sizes[i];
+		} while (table.codes[i] != BlockCodes.CODE_ENDB);
+		return table;
+	}
+
+	/**
+	 * Reads a table previously written with {@link #writeTo(DataOutput)}.
+	 */
+	public static BlockHeaderTable readFrom(DataInput in) throws IOException {
+		int headerSize = in.readInt();
+		int length = in.readInt();
+		if (length < 0) throw new IOException("invalid length of block header table: " + length);
+		BlockHeaderTable table = new BlockHeaderTable(headerSize, length);
+		for (int i = 0; i < length; i++) table.codes[i] = in.readInt();
+		for (int i = 0; i < length; i++) table.sizes[i] = in.readInt();
+		for (int i = 0; i < length; i++) table.addresses[i] = in.readLong();
+		for (int i = 0; i < length; i++) table.sdnaIndices[i] = in.readInt();
+		for (int i = 0; i < length; i++) table.counts[i] = in.readInt();
+		for (int i = 0; i < length; i++) table.offsets[i] = in.readLong();
+		table.length = length;
+		return table;
+	}
+
+	/**
+	 * Writes the table column by column to the given output.
+	 *
+	 * @see #readFrom(DataInput)
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(headerSize);
+		out.writeInt(length);
+		for (int i = 0; i < length; i++) out.writeInt(codes[i]);
+		for (int i = 0; i < length; i++) out.writeInt(sizes[i]);
+		for (int i = 0; i < length; i++) out.writeLong(addresses[i]);
+		for (int i = 0; i < length; i++) out.writeInt(sdnaIndices[i]);
+		for (int i = 0; i < length; i++) out.writeInt(counts[i]);
+		for (int i = 0; i < length; i++) out.writeLong(offsets[i]);
+	}
+
+	/**
+	 * Reads one block header from the current position of the given
+	 * input and appends it to the table.
+	 *
+	 * @param in input positioned at a block header.
+	 * @param offset offset of the block header in the file.
+	 * @return index of the new entry.
+	 */
+	public int readHeader(CDataReadWriteAccess in, long offset) throws IOException {
+		int code = Identifier.readFrom(in).intValue();
+		int size = in.readInt();
+		long address = in.readLong();
+		int sdnaIndex = in.readInt();
+		int count = in.readInt();
+		return add(code, size, address, sdnaIndex, count, offset);
+	}
+
+	/**
+	 * Appends the given header.
+	 *
+	 * @param header block header.
+	 * @param offset offset of the block header in the file.
+	 * @return index of the new entry.
+	 */
+	public int add(BlockHeader header, long offset) {
+		return add(header.code.intValue(), header.size, header.address, header.sdnaIndex, header.count, offset);
+	}
+
+	private int add(int code, int size, long address, int sdnaIndex, int count, long offset) {
+		if (length == codes.length) {
+			int capacity = length + (length >> 1) + 1;
+			codes = Arrays.copyOf(codes, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			addresses = Arrays.copyOf(addresses, capacity);
+			sdnaIndices = Arrays.copyOf(sdnaIndices, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+		int i = length++;
+		codes[i] = code;
+		sizes[i] = size;
+		addresses[i] = address;
+		sdnaIndices[i] = sdnaIndex;
+		counts[i] = count;
+		offsets[i] = offset;
+		return i;
+	}
+
+	/**
+	 * @return number of headers in the table.
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * @return size of a block header in the file.
+	 */
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	public Identifier getCode(int i) {
+		return Identifier.valueOf(codes[i]);
+	}
+
+	/**
+	 * @return code of block i as packed int value (see {@link BlockCodes}).
+	 */
+	public int getCodeValue(int i) {
+		return codes[i];
+	}
+
+	public int getSize(int i) {
+		return sizes[i];
+	}
+
+	public long getAddress(int i) {
+		return addresses[i];
+	}
+
+	public int getSdnaIndex(int i) {
+		return sdnaIndices[i];
+	}
+
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * @return offset of the header of block i in the file.
+	 */
+	public long getOffset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * @return offset of the data of block i in the file.
+	 */
+	public long getDataOffset(int i) {
+		return offsets[i] + headerSize;
+	}
+
+	/**
+	 * Creates a new block header for the given entry.
+	 */
+	public BlockHeader getHeader(int i) {
+		return new BlockHeader(getCode(i), sizes[i], addresses[i], sdnaIndices[i], counts[i]);
+	}
+
+	/**
+	 * @return index of the first block with the given code or -1.
+	 */
+	public int indexOf(Identifier code) {
+		return indexOf(code, 0);
+	}
+
+	/**
+	 * @return index of the next block with the given code starting at fromIndex or -1.
+	 */
+	public int indexOf(Identifier code, int fromIndex) {
+		int value = code.intValue();
+		for (int i = fromIndex; i < length; i++) {
+			if (codes[i] == value) return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,231 @@
+package org.cakelab.blender.io.block;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Index of blocks sorted by their start address.
+ * <p>
+ * Start addresses and sizes are kept in primitive arrays parallel to
+ * the array of blocks. Addresses are unsigned. They are stored with
+ * flipped sign bit, which turns unsigned order into signed order.
+ * Thus, lookups require neither boxing nor calls to compare methods.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class BlockIndex {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** start addresses with flipped sign bit */
+	private long[] keys;
+	private int[] sizes;
+	private Block[] blocks;
+	private int length;
+
+	private final List<Block> view = new BlockListView();
+
+	BlockIndex() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	BlockIndex(int capacity) {
+		capacity = Math.max(capacity, DEFAULT_CAPACITY);
+		keys = new long[capacity];
+		sizes = new int[capacity];
+		blocks = new Block[capacity];
+	}
+
+	/**
+	 * Replaces the content of the index by the given blocks.
+	 */
+	void set(Collection<Block> content) {
+		Block[] sorted = content.toArray(new Block[content.size()]);
+		Arrays.sort(sorted, BlockTable.BLOCKS_ASCENDING_ADDRESS);
+		ensureCapacity(sorted.length);
+		Arrays.fill(blocks, null);
+		length = sorted.length;
+		for (int i = 0; i < length; i++) {
+			set(i, sorted[i]);
+		}
+	}
+
+	private void set(int i, Block block) {
+		keys[i] = key(block.header.address);
+		sizes[i] = block.header.size;
+		blocks[i] = block;
+	}
+
+	private static long key(long address) {
+		return address ^ Long.MIN_VALUE;
+	}
+
+	int size() {
+		return length;
+	}
+
+	boolean isEmpty() {
+		return length == 0;
+	}
+
+	Block get(int i) {
+		return blocks[i];
+	}
+
+	/**
+	 * Binary search for a block with the given start address.
+	 *
+	 * @return index of the block, if found, otherwise (-(insertion point) - 1).
+	 */
+	int search(long address) {
+		long key = key(address);
+		int low = 0;
+		int high = length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long k = keys[mid];
+			if (k < key) low = mid + 1;
+			else if (k > key) high = mid - 1;
+			else return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @return Index of the block which contains the given address or -1.
+	 */
+	int indexOf(long address) {
+		int i = search(address);
+		if (i >= 0) return i;
+		// block with the next lower start address
+		i = -i - 2;
+		if (i >= 0 && contains(i, address)) return i;
+		return -1;
+	}
+
+	/**
+	 * @return true, if the block at index i contains the given address.
+	 */
+	boolean contains(int i, long address) {
+		long offset = key(address) - keys[i];
+		return offset >= 0 && offset < sizes[i];
+	}
+
+	/**
+	 * Inserts the block at its position according to its address.
+	 *
+	 * @return false if a block with the same address exists already.
+	 */
+	boolean insert(Block block) {
+		int i = search(block.header.address);
+		if (i >= 0) return false;
+		i = -i - 1;
+		ensureCapacity(length + 1);
+		System.arraycopy(keys, i, keys, i + 1, length - i);
+		System.arraycopy(sizes, i, sizes, i + 1, length - i);
+		System.arraycopy(blocks, i, blocks, i + 1, length - i);
+		set(i, block);
+		length++;
+		return true;
+	}
+
+	void remove(int i) {
+		int n = length - i - 1;
+		System.arraycopy(keys, i + 1, keys, i, n);
+		System.arraycopy(sizes, i + 1, sizes, i, n);
+		System.arraycopy(blocks, i + 1, blocks, i, n);
+		length--;
+		blocks[length] = null;
+	}
+
+	/**
+	 * Inserts all given blocks by merging them into the index
+	 * in a single pass. Blocks must not have the same address as
+	 * any other block in the index.
+	 */
+	void insertAll(Collection<Block> content) {
+		if (content.isEmpty()) return;
+		Block[] added = content.toArray(new Block[content.size()]);
+		Arrays.sort(added, BlockTable.BLOCKS_ASCENDING_ADDRESS);
+		ensureCapacity(length + added.length);
+		// merge from the end, to move each existing block only once
+		int i = length - 1;
+		int j = added.length - 1;
+		for (int d = length + added.length - 1; j >= 0; d--) {
+			long key = key(added[j].header.address);
+			assert(i < 0 || keys[i] != key);
+			if (i >= 0 && keys[i] > key) {
+				keys[d] = keys[i];
+				sizes[d] = sizes[i];
+				blocks[d] = blocks[i];
+				i--;
+			} else {
+				set(d, added[j]);
+				j--;
+			}
+		}
+		length += added.length;
+	}
+
+	/**
+	 * Removes all given blocks in a single pass. Blocks are 
+	 * identified by instance, not by address.
+	 *
+	 * @return number of removed blocks.
+	 */
+	int removeAll(Collection<Block> content) {
+		if (content.isEmpty()) return 0;
+		Set<Block> removed = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>(content.size()));
+		removed.addAll(content);
+		int w = 0;
+		for (int r = 0; r < length; r++) {
+			if (removed.contains(blocks[r])) continue;
+			if (w != r) {
+				keys[w] = keys[r];
+				sizes[w] = sizes[r];
+				blocks[w] = blocks[r];
+			}
+			w++;
+		}
+		Arrays.fill(blocks, w, length, null);
+		int count = length - w;
+		length = w;
+		return count;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= blocks.length) return;
+		// amortised growth by factor 1.5
+		capacity = Math.max(capacity, blocks.length + (blocks.length >> 1));
+		keys = Arrays.copyOf(keys, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		blocks = Arrays.copyOf(blocks, capacity);
+	}
+
+	/**
+	 * @return read only list view on the blocks in ascending order of their addresses.
+	 */
+	List<Block> asList() {
+		return view;
+	}
+
+	private class BlockListView extends AbstractList<Block> implements RandomAccess {
+		@Override
+		public Block get(int index) {
+			if (index < 0 || index >= length) throw new IndexOutOfBoundsException(Integer.toString(index));
+			return blocks[index];
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+	}
+}
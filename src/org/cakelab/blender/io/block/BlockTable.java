@@ -1,17 +1,23 @@
 package org.cakelab.blender.io.block;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.cakelab.blender.io.Encoding;
 import org.cakelab.blender.io.BlenderFile;
 import org.cakelab.blender.io.block.alloc.Allocator;
+import org.cakelab.blender.io.util.BlockStorage;
 import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.HeapBlockStorage;
 import org.cakelab.blender.io.util.Identifier;
 import org.cakelab.blender.nio.CArrayFacade;
 import org.cakelab.blender.nio.CFacade;
@@ -76,8 +82,8 @@ public class BlockTable {
 	};
 	
 	
-	/** list of blocks sorted by block.header.address */
-	private List<Block> sorted = new ArrayList<Block>();
+	/** blocks sorted by block.header.address */
+	private BlockIndex sorted = new BlockIndex();
 
 	/** encoding used by all blocks of this block table. */
 	private Encoding encoding;
@@ -97,15 +103,75 @@ public class BlockTable {
 	 * structs contained in affected, potentially overlapping blocks.
 	 */
 	private HashMap<Integer, BlockTable> offheapAreas;
+	/** offheap areas indexed by sdna index (entries of on heap structs are null) */
+	private BlockTable[] offheapAreasBySdnaIndex;
+	
+	/** 
+	 * Locality cache of lookups by address of the calling thread 
+	 * (null for offheap areas, which don't support lookups by 
+	 * contained address).
+	 */
+	private final ThreadLocal<LookupCache> lookupCache;
+	/** Incremented on each modification of the sorted blocks, to invalidate lookup caches. */
+	private int modifications;
+	
+	/**
+	 * Index of the block found by the last lookup of one thread 
+	 * and its lookup statistics. Consecutive lookups tend to hit 
+	 * the same or the next block.
+	 */
+	private static class LookupCache {
+		int lastHit = -1;
+		/** value of {@link BlockTable#modifications} when lastHit was found */
+		int modifications;
+		long hits;
+		long misses;
+	}
+	
+	/** blocks added during a bulk edit, which are not yet in the index (null if no bulk edit in progress) */
+	private Set<Block> pendingAdds;
+	/** blocks freed during a bulk edit, which are still in the index */
+	private List<Block> pendingFrees;
+	
+	/** 
+	 * Secondary indices of blocks by block code and by sdna index. 
+	 * Both are created on first request and maintained from then on.
+	 */
+	private HashMap<Identifier, BlockIndex> byCode;
+	private HashMap<Integer, BlockIndex> bySdnaIndex;
+	
+	/** storage for the data of allocated blocks */
+	private BlockStorage storage = new HeapBlockStorage();
+	/** 
+	 * Freed blocks, whose data is still in a direct storage 
+	 * (see {@link #closeBlocks()}, null if there are none).
+	 */
+	private List<Block> released;
+	
+	/** 
+	 * Blocks of the file, which were not loaded due to a {@link BlockFilter} 
+	 * (headers only, null if there are none).
+	 */
+	private BlockIndex excluded;
 	
 	
 	/**
 	 * Instantiates a new block table with the given encoding.
 	 */
 	public BlockTable(Encoding encoding) {
+		this(encoding, true);
+	}
+	
+	private BlockTable(Encoding encoding, boolean heap) {
 		allocator = new Allocator(HEAPBASE, HEAPSIZE);
 		allocatorInitialised = false;
 		this.encoding = encoding;
+		this.lookupCache = heap ? new ThreadLocal<LookupCache>() {
+			@Override
+			protected LookupCache initialValue() {
+				return new LookupCache();
+			}
+		} : null;
 	}
 	
 	/**
@@ -118,10 +184,7 @@ public class BlockTable {
 	public BlockTable(Encoding encoding, List<Block> blocks, int[] offheapStructs) {
 		this(encoding);
 		
-		this.sorted.addAll(blocks);
-		Collections.sort(this.sorted, BLOCKS_ASCENDING_ADDRESS);
-		
-		initOffheapAreas(offheapStructs);
+		initOffheapAreas(blocks, offheapStructs);
 
 		// SANITY CHECK HERE
 		// Check if the first (actual) address is reasonable
@@ -131,7 +194,7 @@ public class BlockTable {
 		// TODO: consider offheap areas beyond HEAPBASE
 		if (!sorted.isEmpty()) {
 			Block first = sorted.get(0);
-			if (first.header.code.equals(BlockCodes.ID_ENDB)) {
+			if (first.header.code.intValue() == BlockCodes.CODE_ENDB) {
 				if (sorted.size()>1) first = sorted.get(1);
 				else first = null;
 			}
@@ -141,27 +204,47 @@ public class BlockTable {
 
 
 	/**
-	 * Creates offheap areas and moves all blocks of structs which are declared 
+	 * Creates offheap areas and distributes all blocks of structs which are declared 
 	 * to be not in the heap address space to their respective offheap areas.
+	 * All other blocks are added to the heap area.
+	 * @param blocks All blocks.
 	 * @param offheap List of offheap areas.
 	 */
-	private void initOffheapAreas(int[] offheap) {
-		if (offheap == null) return;
+	private void initOffheapAreas(List<Block> blocks, int[] offheap) {
+		if (offheap == null) {
+			sorted.set(blocks);
+			own(blocks);
+			return;
+		}
 		
 		offheapAreas = new HashMap<Integer, BlockTable>(offheap.length);
+		HashMap<Integer, List<Block>> offheapBlocks = new HashMap<Integer, List<Block>>(offheap.length);
 		for (int sdna : offheap) {
-			offheapAreas.put(sdna, new BlockTable(encoding));
-		}
-		for (Iterator<Block> it = sorted.iterator(); it.hasNext();) {
-			Block b = it.next();
-			for (int sdna : offheap) {
-				if (b.header.sdnaIndex == sdna) {
-					offheapAreas.get(sdna).add(b);
-					it.remove();
-					break;
-				}
+			offheapAreas.put(sdna, new BlockTable(encoding, false));
+			offheapBlocks.put(sdna, new ArrayList<Block>());
+		}
+		List<Block> heap = new ArrayList<Block>(blocks.size());
+		for (Block b : blocks) {
+			List<Block> area = offheapBlocks.get(b.header.sdnaIndex);
+			if (area != null) {
+				area.add(b);
+			} else {
+				heap.add(b);
 			}
 		}
+		sorted.set(heap);
+		own(heap);
+		int maxSdnaIndex = -1;
+		for (int sdna : offheap) {
+			BlockTable offheapArea = offheapAreas.get(sdna);
+			offheapArea.sorted.set(offheapBlocks.get(sdna));
+			offheapArea.own(offheapBlocks.get(sdna));
+			maxSdnaIndex = Math.max(maxSdnaIndex, sdna);
+		}
+		offheapAreasBySdnaIndex = new BlockTable[maxSdnaIndex + 1];
+		for (int sdna : offheap) {
+			offheapAreasBySdnaIndex[sdna] = offheapAreas.get(sdna);
+		}
 		
 		if (null == System.getProperty("org.cakelab.blender.NoChecks")) {
 			checkBlockOverlaps();
@@ -180,7 +263,7 @@ public class BlockTable {
 			Block cur = sorted.get(i);
 			for (int j=i+1; j < sorted.size(); j++) {
 				Block b = sorted.get(j);
-				if (cur.contains(b.header.address)) {
+				if (sorted.contains(i, b.header.address)) {
 					overlapping.add(cur, b);
 					valid = false;
 				} else {
@@ -208,18 +291,34 @@ public class BlockTable {
 	/** returns the block which contains the data of the given address and type (struct or scalar).
 	 */
 	public Block getBlock(long address, Class<?> type) {
-		int sdnaIndex = -1;
-		Class<?> superClass = type.getSuperclass();
-		if (superClass != null && superClass.equals(CFacade.class)) {
-			try {
-				Field f = type.getDeclaredField("__DNA__SDNA_INDEX");
-				sdnaIndex = f.getInt(null);
-			} catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
-				throw new RuntimeException("internal error", e);
+		return getBlock(address, getSdnaIndex(type));
+	}
+	
+	/**
+	 * Returns the sdna index of the given struct type or -1 for any other type.
+	 * The sdna index is retrieved once per class via reflection.
+	 */
+	public static int getSdnaIndex(Class<?> type) {
+		return SDNA_INDEX.get(type);
+	}
+	
+	/** Cache of sdna indices of struct classes. */
+	private static final ClassValue<Integer> SDNA_INDEX = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			int sdnaIndex = -1;
+			Class<?> superClass = type.getSuperclass();
+			if (superClass != null && superClass.equals(CFacade.class)) {
+				try {
+					Field f = type.getDeclaredField("__DNA__SDNA_INDEX");
+					sdnaIndex = f.getInt(null);
+				} catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
+					throw new RuntimeException("internal error", e);
+				}
 			}
+			return sdnaIndex;
 		}
-		return getBlock(address, sdnaIndex);
-	}
+	};
 	
 	/**
 	 * Returns the block which contains the given address.
@@ -227,16 +326,29 @@ public class BlockTable {
 	 * The method identifies whether the struct is in an 
 	 * offheap area or not. If the data is know to be on heap, 
 	 * sdnaIndex can be -1 too.
+	 * <p>
+	 * Blocks in offheap areas may overlap each other. Thus, they 
+	 * are identified by an exact match of their start address 
+	 * (see {@link #findBlock(long)}).
+	 * </p>
 	 */
 	public Block getBlock(long address, int sdnaIndex) {
-		BlockTable table = this;
-		if (offheapAreas != null && sdnaIndex >= 0) {
-			BlockTable t = offheapAreas.get(sdnaIndex);
-			if (t != null) {
-				return t.findBlock(sdnaIndex);
-			}
+		BlockTable offheapArea = getOffheapArea(sdnaIndex);
+		if (offheapArea != null) {
+			return offheapArea.findBlock(address);
 		}
-		return table.getBlock(address);
+		return getBlock(address);
+	}
+	
+	/**
+	 * @return offheap area of the given struct type or null if it is on heap.
+	 */
+	private BlockTable getOffheapArea(int sdnaIndex) {
+		BlockTable[] areas = offheapAreasBySdnaIndex;
+		if (areas != null && sdnaIndex >= 0 && sdnaIndex < areas.length) {
+			return areas[sdnaIndex];
+		}
+		return null;
 	}
 	
 	
@@ -244,28 +356,69 @@ public class BlockTable {
 	 */
 	protected Block getBlock(long address) {
 		if (address == 0) return null;
+		applyPendingChanges();
 		
-		Block block = null;
-		
-		int i = Collections.binarySearch(sorted, address);
-		if (i >= 0) {
-			block = sorted.get(i);
-		} else {
-			// if the address lies between two block start addresses, then 
-			// -i-1 is the pos of the block with start address larger
-			// than address. But we need the block with a start address
-			// lower than address. Thus, -i-2
-			i = -i-2;
-			if (i >= 0) {
-				Block b = sorted.get(i);
-				if (address < (b.header.getAddress() + b.header.getSize())) {
-					// block found
-					block = b;
+		int i;
+		LookupCache cache = lookupCache != null ? lookupCache.get() : null;
+		if (cache != null) {
+			// check last hit and its successor first
+			i = cache.lastHit;
+			if (i >= 0 && cache.modifications == modifications) {
+				if (i < sorted.size() && sorted.contains(i, address)) {
+					cache.hits++;
+					return sorted.get(i);
+				}
+				i++;
+				if (i < sorted.size() && sorted.contains(i, address)) {
+					cache.hits++;
+					cache.lastHit = i;
+					return sorted.get(i);
 				}
 			}
+			cache.misses++;
 		}
 		
-		return block;
+		i = sorted.indexOf(address);
+		if (i >= 0) {
+			if (cache != null) {
+				cache.lastHit = i;
+				cache.modifications = modifications;
+			}
+			return sorted.get(i);
+		}
+		if (excluded != null) {
+			i = excluded.indexOf(address);
+			if (i >= 0) throw new FilteredBlockException(address, excluded.get(i).header);
+		}
+		return null;
+	}
+	
+	/**
+	 * Number of lookups by address of the calling thread, which 
+	 * were resolved by the locality cache (last hit block or its 
+	 * successor). Lookups in offheap areas are not cached.
+	 */
+	public long getCacheHits() {
+		return lookupCache != null ? lookupCache.get().hits : 0;
+	}
+	
+	/**
+	 * Number of lookups by address of the calling thread, which 
+	 * required a binary search.
+	 * @see #getCacheHits()
+	 */
+	public long getCacheMisses() {
+		return lookupCache != null ? lookupCache.get().misses : 0;
+	}
+	
+	/**
+	 * Resets hit and miss counters of the locality cache of the calling thread.
+	 */
+	public void resetCacheStatistics() {
+		if (lookupCache != null) {
+			LookupCache cache = lookupCache.get();
+			cache.hits = cache.misses = 0;
+		}
 	}
 
 	/** 
@@ -273,41 +426,157 @@ public class BlockTable {
 	 * Thus, it will only return a block which has an exact match with the given address.
 	 * @param startAddress Start address of the block to search for.
 	 * @return The block associated with the given address or null if none was found.
+	 * @throws FilteredBlockException if the block exists but was excluded by a block filter.
 	 */
 	public Block findBlock(long startAddress) {
-		int i = Collections.binarySearch(sorted, startAddress);
-		Block block = null;
-		if (i >= 0) {
-			block = sorted.get(i);
+		applyPendingChanges();
+		int i = sorted.search(startAddress);
+		if (i >= 0) return sorted.get(i);
+		if (excluded != null) {
+			i = excluded.search(startAddress);
+			if (i >= 0) throw new FilteredBlockException(startAddress, excluded.get(i).header);
 		}
-		return block;
+		return null;
+	}
+	
+	/**
+	 * Declares blocks of the file, which exist but were not loaded 
+	 * (see {@link BlockFilter}). Lookups of addresses in those blocks 
+	 * throw a {@link FilteredBlockException} instead of returning null, 
+	 * and the allocator will not issue their addresses. Thus, blocks 
+	 * have to be excluded before the first allocation.
+	 * 
+	 * @param headers Headers of the excluded blocks.
+	 */
+	public void exclude(Collection<BlockHeader> headers) {
+		if (allocatorInitialised) throw new IllegalStateException("blocks have to be excluded before any allocation");
+		for (BlockHeader header : headers) {
+			BlockTable table = getOffheapArea(header.sdnaIndex);
+			if (table == null) table = this;
+			if (table.excluded == null) table.excluded = new BlockIndex();
+			table.excluded.insert(new Block(header, null));
+		}
+	}
+	
+	/**
+	 * @return true, if any blocks were excluded (see {@link #exclude(Collection)}).
+	 */
+	public boolean hasExcludedBlocks() {
+		if (excluded != null) return true;
+		if (offheapAreas != null) {
+			for (BlockTable offheapArea : offheapAreas.values()) {
+				if (offheapArea.excluded != null) return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
 	 * This method allocates memory and assigns it to a block with the given code.
 	 */
 	public Block allocate(Identifier blockCode, int size) {
+		Block block = newBlock(blockCode, size);
+		add(block);
+		return block;
+	}
+	
+	/**
+	 * Allocates memory for a new block, which is not yet added to the table.
+	 */
+	private Block newBlock(Identifier blockCode, int size) {
 		checkAllocator();
 		long address = allocator.alloc(size);
 
 		
-		CDataReadWriteAccess rwAccess = CDataReadWriteAccess.create(new byte[size], address, encoding);
-		Block block = new Block(new BlockHeader(blockCode, size, address), rwAccess);
-		
-		add(block);
-		
-		return block;
+		CDataReadWriteAccess rwAccess = CDataReadWriteAccess.create(storage.allocate(size), address, encoding);
+		return new Block(new BlockHeader(blockCode, size, address), rwAccess);
 	}
 
 	/**
 	 * Method to add a block to the ascending sorted list.
 	 */
 	protected void add(Block block) {
+		block.header.table = this;
+		if (pendingAdds != null) {
+			pendingAdds.add(block);
+			return;
+		}
 		// insert block in list
-		int i = Collections.binarySearch(sorted, block.header.address);
-		assert(i < 0);
-		i = -i -1;
-		sorted.add(i, block);
+		boolean inserted = sorted.insert(block);
+		assert(inserted);
+		if (byCode != null) {
+			insert(byCode, block.header.code, block);
+			insert(bySdnaIndex, block.header.sdnaIndex, block);
+		}
+		modifications++;
+	}
+	
+	/**
+	 * Starts a bulk edit of this block table and its offheap areas.
+	 * <p>
+	 * During a bulk edit, blocks added through the allocate methods and 
+	 * blocks removed through {@link #free(Block)} are collected and 
+	 * merged into the sorted block list at once when the bulk edit ends. 
+	 * This reduces the cost of k insertions or removals from O(k*n) 
+	 * to O(n + k log k).
+	 * </p>
+	 * <p>
+	 * Lookups during a bulk edit apply all changes collected so far.
+	 * Thus, they should be avoided until {@link #endBulkEdit()}.
+	 * </p>
+	 */
+	public void beginBulkEdit() {
+		if (pendingAdds == null) {
+			pendingAdds = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+			pendingFrees = new ArrayList<Block>();
+		}
+		if (offheapAreas != null) {
+			for (BlockTable offheapArea : offheapAreas.values()) {
+				offheapArea.beginBulkEdit();
+			}
+		}
+	}
+	
+	/**
+	 * Ends a bulk edit and applies all collected changes.
+	 * @see #beginBulkEdit()
+	 */
+	public void endBulkEdit() {
+		applyPendingChanges();
+		pendingAdds = null;
+		pendingFrees = null;
+		if (offheapAreas != null) {
+			for (BlockTable offheapArea : offheapAreas.values()) {
+				offheapArea.endBulkEdit();
+			}
+		}
+	}
+	
+	/**
+	 * Merges blocks added or freed during a bulk edit into the sorted list.
+	 */
+	private void applyPendingChanges() {
+		if (pendingAdds == null) return;
+		if (!pendingFrees.isEmpty()) {
+			int removed = sorted.removeAll(pendingFrees);
+			assert(removed == pendingFrees.size());
+			if (byCode != null) {
+				removeAll(byCode, groupByCode(pendingFrees));
+				removeAll(bySdnaIndex, groupBySdnaIndex(pendingFrees));
+			}
+			disown(pendingFrees);
+			pendingFrees.clear();
+			modifications++;
+		}
+		if (!pendingAdds.isEmpty()) {
+			sorted.insertAll(pendingAdds);
+			if (byCode != null) {
+				insertAll(byCode, groupByCode(pendingAdds));
+				insertAll(bySdnaIndex, groupBySdnaIndex(pendingAdds));
+			}
+			pendingAdds.clear();
+			modifications++;
+		}
 	}
 	
 	
@@ -317,9 +586,11 @@ public class BlockTable {
 	 */
 	public Block allocate(Identifier blockCode, long size,
 			int sdnaIndex, int count) {
-		Block block = allocate(blockCode, size*count);
+		// header has to be complete before the block gets indexed
+		Block block = newBlock(blockCode, (int)(size*count));
 		block.header.sdnaIndex = sdnaIndex;
 		block.header.count = count;
+		add(block);
 		return block;
 	}
 
@@ -345,35 +616,159 @@ public class BlockTable {
 	 * its allocated memory region (to be available for allocation again).
 	 */
 	public void free(Block block) {
-		BlockTable offheapArea = offheapAreas.get(block.header.sdnaIndex);
-		if (offheapArea != null) {
+		BlockTable offheapArea = getOffheapArea(block.header.sdnaIndex);
+		if (offheapArea != null && block.header.table == offheapArea) {
 			offheapArea.free(block);
 		} else {
+			if (storage.isDirect()) {
+				// memory gets released when the storage is closed
+				if (released == null) released = new ArrayList<Block>();
+				released.add(block);
+			}
 			// When the allocator gets initialised, it will receive all blocks
 			// that still exist. Thus, we don't need to do anything
 			// if it is not initialised.
-			if (allocatorInitialised) {
+			// Empty blocks, which share their address with another block, 
+			// were not declared to the allocator (see checkAllocator()).
+			if (allocatorInitialised && !(block.header.size == 0 && sharesAddress(block))) {
 				allocator.free(block.header.address, block.header.size);
 			}
 			
+			if (pendingAdds != null) {
+				// either drop it from the pending blocks or remove it later
+				if (pendingAdds.remove(block)) {
+					block.header.table = null;
+				} else {
+					pendingFrees.add(block);
+				}
+				return;
+			}
+			
 			// remove block from table
-			int i = Collections.binarySearch(sorted, block.header.address);
-			assert(i >= 0);
+			int i = sorted.search(block.header.address);
+			assert(i >= 0 && sorted.get(i) == block);
 			sorted.remove(i);
+			if (byCode != null) {
+				remove(byCode, block.header.code, block);
+				remove(bySdnaIndex, block.header.sdnaIndex, block);
+			}
+			block.header.table = null;
+			modifications++;
+		}
+	}
+	
+	/**
+	 * Changes the sdna index of a block listed in this table
+	 * and moves the block accordingly in the index by sdna index.
+	 * Called by {@link BlockHeader#setSdnaIndex(int)}.
+	 */
+	void changeSdnaIndex(BlockHeader header, int sdnaIndex) {
+		if (bySdnaIndex == null) {
+			// pending blocks get indexed with their sdna index at that time
+			header.sdnaIndex = sdnaIndex;
+			return;
+		}
+		// pending changes have to be indexed with the previous sdna index
+		applyPendingChanges();
+		if (header.table != this) {
+			// block was freed
+			header.sdnaIndex = sdnaIndex;
+			return;
+		}
+		int i = sorted.search(header.address);
+		assert(i >= 0 && sorted.get(i).header == header);
+		Block block = sorted.get(i);
+		remove(bySdnaIndex, header.sdnaIndex, block);
+		header.sdnaIndex = sdnaIndex;
+		insert(bySdnaIndex, sdnaIndex, block);
+	}
+	
+	private void own(Collection<Block> blocks) {
+		for (Block block : blocks) {
+			block.header.table = this;
+		}
+	}
+	
+	private static void disown(Collection<Block> blocks) {
+		for (Block block : blocks) {
+			block.header.table = null;
+		}
+	}
+	
+	/**
+	 * Removes all given blocks in one pass and releases their memory regions.
+	 * @see #free(Block)
+	 * @see #beginBulkEdit()
+	 */
+	public void freeAll(Collection<Block> blocks) {
+		boolean nested = pendingAdds != null;
+		if (!nested) beginBulkEdit();
+		try {
+			for (Block block : blocks) {
+				free(block);
+			}
+		} finally {
+			if (!nested) endBulkEdit();
 		}
 	}
 	
+	/**
+	 * @return true, if another block on heap (loaded or excluded)
+	 * starts at the address of the given block.
+	 */
+	private boolean sharesAddress(Block block) {
+		return sharesAddress(sorted, block) || (excluded != null && sharesAddress(excluded, block));
+	}
+
+	private static boolean sharesAddress(BlockIndex index, Block block) {
+		long address = block.header.address;
+		int i = index.search(address);
+		if (i < 0) return false;
+		// blocks of the same address are neighbours in the index
+		for (int j = i; j >= 0 && index.get(j).header.address == address; j--) {
+			if (index.get(j) != block) return true;
+		}
+		for (int j = i + 1; j < index.size() && index.get(j).header.address == address; j++) {
+			if (index.get(j) != block) return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Lazy initialisation of the allocator.
 	 * This method checks whether the allocator has been initialised.
 	 * If not it initialised it by declaring the memory areas of all blocks
-	 * as allocated.
+	 * as allocated in a single pass over the sorted blocks. 
+	 * Offheap areas initialise their allocators on their own.
 	 */
 	private void checkAllocator() {
 		if (!allocatorInitialised) {
-			for (Block block : sorted) {
-				allocator.declareAllocated(block.header.address, block.header.size);
+			// blocks freed before have to be excluded
+			applyPendingChanges();
+			// collect memory regions of all blocks in ascending order
+			List<Block> regions = sorted.asList();
+			if (excluded != null) {
+				// addresses of excluded blocks are occupied as well
+				regions = new ArrayList<Block>(regions);
+				regions.addAll(excluded.asList());
+				Collections.sort(regions, BLOCKS_ASCENDING_ADDRESS);
+			}
+			int n = regions.size();
+			long[] addresses = new long[n];
+			long[] sizes = new long[n];
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				Block block = regions.get(i);
+				long address = block.header.address;
+				// skip blocks outside of the heap such as ENDB
+				if (UnsignedLong.lt(address, HEAPBASE)) continue;
+				// skip empty blocks which share their address with the next block
+				if (block.header.size == 0 && i+1 < n && regions.get(i+1).header.address == address) continue;
+				addresses[count] = address;
+				sizes[count] = block.header.size;
+				count++;
 			}
+			allocator.declareAllocated(addresses, sizes, count);
 			allocatorInitialised = true;
 		}
 	}
@@ -384,28 +779,74 @@ public class BlockTable {
 	 * <p>
 	 * <em>Use {@link #exists(long, int)} to check offheap areas too.</em>
 	 * </p>
+	 * <p>
+	 * Blocks excluded by a block filter exist too (see {@link #exclude(Collection)}).
+	 * </p>
 	 * @see #exists(long, int)
 	 */
 	public boolean exists(long address) {
-		return getBlock(address) != null;
+		try {
+			return getBlock(address) != null;
+		} catch (FilteredBlockException e) {
+			return true;
+		}
 	}
 
 	/**
 	 * Determines if a block with this startAddress exists either on or off heap.
+	 * Blocks excluded by a block filter exist too (see {@link #exclude(Collection)}).
 	 */
 	public boolean exists(long startAddress, int sdnaIndex) {
+		BlockTable table = getOffheapArea(sdnaIndex);
+		if (table == null) table = this;
+		try {
+			return table.findBlock(startAddress) != null;
+		} catch (FilteredBlockException e) {
+			return true;
+		}
+	}
 
-		BlockTable offheapArea = null;
+	/**
+	 * Sets the storage for the data of blocks allocated from now on 
+	 * in this table and its offheap areas.
+	 */
+	public void setBlockStorage(BlockStorage storage) {
+		this.storage = storage;
 		if (offheapAreas != null) {
-			offheapArea = offheapAreas.get(sdnaIndex);
+			for (BlockTable offheapArea : offheapAreas.values()) {
+				offheapArea.setBlockStorage(storage);
+			}
 		}
-		
-		if (offheapArea != null) {
-			return offheapArea.findBlock(startAddress) != null;
-		} else {
-			return findBlock(startAddress) != null;
+	}
+	
+	/**
+	 * @return storage for the data of allocated blocks.
+	 */
+	public BlockStorage getBlockStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Closes the data access of all blocks on and off heap, 
+	 * including blocks freed before. Blocks cannot be accessed 
+	 * afterwards (see {@link Block#close()}).
+	 */
+	public void closeBlocks() throws IOException {
+		applyPendingChanges();
+		for (int i = 0; i < sorted.size(); i++) {
+			sorted.get(i).close();
+		}
+		if (released != null) {
+			for (Block block : released) {
+				block.close();
+			}
+			released = null;
+		}
+		if (offheapAreas != null) {
+			for (BlockTable offheapArea : offheapAreas.values()) {
+				offheapArea.closeBlocks();
+			}
 		}
-
 	}
 
 	/** 
@@ -434,9 +875,115 @@ public class BlockTable {
 	 * <em>This does not include offheap areas!</em>
 	 */
 	public void getBlocks(Identifier blockCode, List<Block> list) {
-		for (Block block : sorted) {
-			if (block.header.code.equals(blockCode)) {
-				list.add(block);
+		applyPendingChanges();
+		initSecondaryIndices();
+		BlockIndex index = byCode.get(blockCode);
+		if (index != null) {
+			list.addAll(index.asList());
+		}
+	}
+	
+	/**
+	 * Returns a list of blocks which contain structs of the given type 
+	 * (sdnaIndex) either on or off heap.
+	 */
+	public List<Block> getBlocksBySdnaIndex(int sdnaIndex) {
+		List<Block> result = new ArrayList<Block>();
+		BlockTable offheapArea = getOffheapArea(sdnaIndex);
+		if (offheapArea != null) {
+			offheapArea.getBlocksBySdnaIndex(sdnaIndex, result);
+		}
+		// blocks allocated later are on heap
+		getBlocksBySdnaIndex(sdnaIndex, result);
+		return result;
+	}
+	
+	/**
+	 * Retrieve all blocks with the given sdnaIndex which are on heap.
+	 * <em>This does not include offheap areas!</em>
+	 */
+	public void getBlocksBySdnaIndex(int sdnaIndex, List<Block> list) {
+		applyPendingChanges();
+		initSecondaryIndices();
+		BlockIndex index = bySdnaIndex.get(sdnaIndex);
+		if (index != null) {
+			list.addAll(index.asList());
+		}
+	}
+	
+	/**
+	 * Creates the indices by block code and sdna index on first request.
+	 */
+	private void initSecondaryIndices() {
+		if (byCode != null) return;
+		List<Block> blocks = sorted.asList();
+		HashMap<Identifier, BlockIndex> codes = new HashMap<Identifier, BlockIndex>();
+		insertAll(codes, groupByCode(blocks));
+		HashMap<Integer, BlockIndex> sdnaIndices = new HashMap<Integer, BlockIndex>();
+		insertAll(sdnaIndices, groupBySdnaIndex(blocks));
+		byCode = codes;
+		bySdnaIndex = sdnaIndices;
+	}
+	
+	private static HashMap<Identifier, List<Block>> groupByCode(Collection<Block> blocks) {
+		HashMap<Identifier, List<Block>> groups = new HashMap<Identifier, List<Block>>();
+		for (Block block : blocks) {
+			List<Block> group = groups.get(block.header.code);
+			if (group == null) {
+				group = new ArrayList<Block>();
+				groups.put(block.header.code, group);
+			}
+			group.add(block);
+		}
+		return groups;
+	}
+	
+	private static HashMap<Integer, List<Block>> groupBySdnaIndex(Collection<Block> blocks) {
+		HashMap<Integer, List<Block>> groups = new HashMap<Integer, List<Block>>();
+		for (Block block : blocks) {
+			List<Block> group = groups.get(block.header.sdnaIndex);
+			if (group == null) {
+				group = new ArrayList<Block>();
+				groups.put(block.header.sdnaIndex, group);
+			}
+			group.add(block);
+		}
+		return groups;
+	}
+	
+	private static <K> void insert(HashMap<K, BlockIndex> indices, K key, Block block) {
+		BlockIndex index = indices.get(key);
+		if (index == null) {
+			index = new BlockIndex();
+			indices.put(key, index);
+		}
+		index.insert(block);
+	}
+	
+	private static <K> void remove(HashMap<K, BlockIndex> indices, K key, Block block) {
+		BlockIndex index = indices.get(key);
+		if (index != null) {
+			int i = index.search(block.header.address);
+			if (i >= 0 && index.get(i) == block) index.remove(i);
+		}
+	}
+	
+	private static <K> void insertAll(HashMap<K, BlockIndex> indices, HashMap<K, List<Block>> groups) {
+		for (Map.Entry<K, List<Block>> group : groups.entrySet()) {
+			BlockIndex index = indices.get(group.getKey());
+			if (index == null) {
+				index = new BlockIndex(group.getValue().size());
+				indices.put(group.getKey(), index);
+			}
+			index.insertAll(group.getValue());
+		}
+	}
+	
+	private static <K> void removeAll(HashMap<K, BlockIndex> indices, HashMap<K, List<Block>> groups) {
+		for (Map.Entry<K, List<Block>> group : groups.entrySet()) {
+			BlockIndex index = indices.get(group.getKey());
+			if (index != null) {
+				index.removeAll(group.getValue());
 			}
 		}
 	}
@@ -462,9 +1009,15 @@ public class BlockTable {
 	 * in their original sequence in the file than refer
 	 * to {@link BlenderFile#getBlocks()}
 	 * </p>
+	 * <p>
+	 * The returned list is a read only view, which reflects later 
+	 * changes to the block table, except for pending changes of a 
+	 * bulk edit (see {@link #beginBulkEdit()}).
+	 * </p>
 	 */
 	public List<Block> getBlocksSorted() {
-		return sorted;
+		applyPendingChanges();
+		return sorted.asList();
 	}
 
 	
@@ -0,0 +1,38 @@
+package org.cakelab.blender.io.block;
+
+/**
+ * Thrown on lookup of an address which lies in a block that
+ * exists in the file but was not loaded, because it was
+ * rejected by the {@link BlockFilter} used to open the file.
+ *
+ * @author homac
+ *
+ */
+public class FilteredBlockException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final long address;
+	private final BlockHeader header;
+
+	public FilteredBlockException(long address, BlockHeader header) {
+		super("address 0x" + Long.toHexString(address) + " lies in block " + header.getCode()
+			+ " (sdna index " + header.getSdnaIndex() + ", address 0x" + Long.toHexString(header.getAddress())
+			+ ", size " + header.getSize() + ") which was excluded by the block filter");
+		this.address = address;
+		this.header = header;
+	}
+
+	/**
+	 * @return The address looked up.
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return Header of the excluded block containing the address.
+	 */
+	public BlockHeader getHeader() {
+		return header;
+	}
+}
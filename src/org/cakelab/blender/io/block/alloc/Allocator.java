@@ -12,11 +12,17 @@ import org.cakelab.blender.nio.UnsignedLong;
  * address for a new block. The allocator will not allocate memory.
  * </p>
  * <p>
- * The allocator implemented here uses a simple algorithm with a single 
- * linked list of allocated and free chunks. To find free chunks of 
- * appropriate size it uses the next fit algorithm. Neighbouring chunks
+ * The allocator implemented here keeps a list of allocated and free 
+ * chunks in address order, which is indexed by address and by size 
+ * of free chunks (see {@link ChunkList}). To find free chunks of 
+ * appropriate size it uses the best fit algorithm. Neighbouring chunks
  * of the same type (either allocated or free) get merged to reduce the
- * amount of chunks in the list.
+ * amount of chunks in the list. Declaring, allocating and freeing 
+ * memory thus takes O(log n) with n being the number of chunks.
+ * </p>
+ * <p>
+ * Allocations of size 0 reserve one byte, so each allocation
+ * receives a unique address.
  * </p>
  * 
  * @author homac
@@ -25,11 +31,9 @@ import org.cakelab.blender.nio.UnsignedLong;
 public class Allocator {
 
 	ChunkList chunks;
-	ChunkIterator cursor;
 	
 	public Allocator(long heapBase, long heapSize) {
 		chunks = new ChunkList(new Chunk(heapBase, heapSize, FREE));
-		cursor = (ChunkIterator) chunks.iterator();
 	}
 	
 	/**
@@ -42,16 +46,51 @@ public class Allocator {
 	 * 
 	 * @param address
 	 * @param size
+	 * @throws IllegalArgumentException if the partition is not entirely free.
 	 */
 	public void declareAllocated(long address, long size) {
 		assert(address != 0);
+		size = minSize(size);
 		Chunk chunk = chunks.find(address);
 		
-		// some debugging: if this fails, then there are overlapping allocations/frees
-		assert(chunk.contains(UnsignedLong.plus(address, size-1)));
-		assert(chunk.state == FREE);
+		if (chunk == null || chunk.state != FREE || !chunk.contains(UnsignedLong.plus(address, size-1))) {
+			throw new IllegalArgumentException(region(address, size) + " overlaps with an allocated region or is outside of the heap");
+		}
 		chunk = chunks.split(chunk, address, size);
-		chunk.state = ALLOCATED;
+		chunks.setState(chunk, ALLOCATED);
+		tryMerge(chunk);
+	}
+
+	/**
+	 * Bulk variant of {@link #declareAllocated(long, long)} to be used
+	 * during initialisation of a new allocator.
+	 * <p>
+	 * Regions have to be given in ascending order of their addresses
+	 * and must not overlap. Each region is cut off the free chunk at the
+	 * end of the list, thus no search is required.
+	 * </p>
+	 * 
+	 * @param addresses start addresses of the regions
+	 * @param sizes sizes of the regions
+	 * @param count number of regions
+	 * @throws IllegalArgumentException if regions overlap, are not in 
+	 * ascending order or are outside of the free memory.
+	 */
+	public void declareAllocated(long[] addresses, long[] sizes, int count) {
+		for (int i = 0; i < count; i++) {
+			long address = addresses[i];
+			long size = minSize(sizes[i]);
+			Chunk chunk = chunks.tail;
+			
+			if (chunk.state != FREE || !chunk.contains(address) || !chunk.contains(UnsignedLong.plus(address, size-1))) {
+				throw new IllegalArgumentException(region(address, size) + " overlaps with a previous region, is not in ascending order or is outside of the heap");
+			}
+			chunk = chunks.split(chunk, address, size);
+			chunks.setState(chunk, ALLOCATED);
+			if (chunk.prev != null && chunk.prev.state == ALLOCATED) {
+				chunks.merge(chunk.prev, chunk);
+			}
+		}
 	}
 
 	/** 
@@ -60,37 +99,42 @@ public class Allocator {
 	 * @return address of allocated area
 	 */
 	public long alloc(long size) {
-		long address = 0;
+		size = minSize(size);
 		// Note: we don't need to care about issuing out of memory 
 		// exceptions, because the system will run out of memory 
 		// earlier, since we consider a memory space which is much 
 		// larger than system memory can actually be.
-		
-		do {
-			if (!cursor.hasNext()) {
-				cursor = (ChunkIterator) chunks.iterator();
-			}
-			Chunk chunk = cursor.next();
-			if (chunk.state == FREE && UnsignedLong.ge(chunk.size, size)) {
-				address = chunk.address;
-				chunk = chunks.split(chunk, chunk.address, size);
-				chunk.state = ALLOCATED;
-				tryMerge(chunk);
-			}
-		} while (address == 0);
+		Chunk chunk = chunks.findFree(size);
+		long address = chunk.address;
+		chunk = chunks.split(chunk, address, size);
+		chunks.setState(chunk, ALLOCATED);
+		tryMerge(chunk);
 		return address;
 	}
 	
-	/** free the given size of memory at the given address */
+	/** 
+	 * free the given size of memory at the given address 
+	 * @throws IllegalArgumentException if the region is not entirely allocated.
+	 */
 	public void free(long address, long size) {
 		assert(address != 0);
+		size = minSize(size);
 
 		Chunk chunk = chunks.find(address);
-		// some debugging: if this fails, then there are overlapping allocations/frees
-		assert(chunk.contains(UnsignedLong.plus(address, size-1)));
-		assert(chunk.state == ALLOCATED);
+		if (chunk == null || chunk.state != ALLOCATED || !chunk.contains(UnsignedLong.plus(address, size-1))) {
+			throw new IllegalArgumentException(region(address, size) + " is not allocated");
+		}
 		chunk = chunks.split(chunk, address, size);
-		chunk.state = FREE;
+		chunks.setState(chunk, FREE);
+		tryMerge(chunk);
+	}
+	
+	private static long minSize(long size) {
+		return size == 0 ? 1 : size;
+	}
+	
+	private static String region(long address, long size) {
+		return "region [0x" + Long.toHexString(address) + ", 0x" + Long.toHexString(UnsignedLong.plus(address, size)) + ")";
 	}
 	
 	/**
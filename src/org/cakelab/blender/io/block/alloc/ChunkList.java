@@ -1,42 +1,121 @@
 package org.cakelab.blender.io.block.alloc;
 
+import static org.cakelab.blender.io.block.alloc.Chunk.State.FREE;
+
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+import org.cakelab.blender.io.block.alloc.Chunk.State;
 import org.cakelab.blender.nio.UnsignedLong;
 
 
+/**
+ * List of chunks in ascending order of their addresses.
+ * <p>
+ * Chunks are linked to their neighbours, which makes merging
+ * of neighbouring chunks cheap. In addition, all chunks are
+ * indexed by their address and free chunks are indexed by their
+ * size in balanced trees. Thus, finding the chunk containing a
+ * given address and finding the best fitting free chunk for a
+ * given size both take O(log n).
+ * </p>
+ * <p>
+ * Therefore, any modification of a chunk (address, size or state)
+ * has to be performed through the methods of this class.
+ * </p>
+ *
+ * @author homac
+ *
+ */
 public class ChunkList implements Iterable<Chunk>{
 
-	// TODO: ZZZ use red black tree instead of a list
+	/** Orders chunks by size first and address second (both unsigned). */
+	private static final Comparator<Chunk> ASCENDING_SIZE = new Comparator<Chunk>() {
+		@Override
+		public int compare(Chunk c1, Chunk c2) {
+			int result = UnsignedLong.compare(c1.size, c2.size);
+			return result != 0 ? result : UnsignedLong.compare(c1.address, c2.address);
+		}
+	};
+
 	Chunk head;
 	Chunk tail;
 	
+	/** all chunks by address (with flipped sign bit to get unsigned order) */
+	private final TreeMap<Long, Chunk> byAddress = new TreeMap<Long, Chunk>();
+	/** free chunks by size */
+	private final TreeSet<Chunk> freeBySize = new TreeSet<Chunk>(ASCENDING_SIZE);
+
 	public ChunkList(Chunk head) {
 		this.head = this.tail = head;
+		index(head);
 	}
 	
 	
+	private static Long key(long address) {
+		return address ^ Long.MIN_VALUE;
+	}
+
+	private void index(Chunk chunk) {
+		byAddress.put(key(chunk.address), chunk);
+		if (chunk.state == FREE) freeBySize.add(chunk);
+	}
+
+	private void unindex(Chunk chunk) {
+		byAddress.remove(key(chunk.address));
+		if (chunk.state == FREE) freeBySize.remove(chunk);
+	}
+
+	/**
+	 * @return chunk which contains the given address or null.
+	 */
 	public Chunk find(long address) {
-		for (Chunk partition : this) {
-			if (partition.contains(address)) {
-				return partition;
-			}
+		Map.Entry<Long, Chunk> entry = byAddress.floorEntry(key(address));
+		if (entry != null && entry.getValue().contains(address)) {
+			return entry.getValue();
 		}
 		return null;
 	}
 
+	/**
+	 * Best fit search for a free chunk.
+	 *
+	 * @return smallest free chunk with at least the given size or null.
+	 */
+	public Chunk findFree(long size) {
+		return freeBySize.ceiling(new Chunk(UnsignedLong.MIN_VALUE, size, FREE));
+	}
+
+	/**
+	 * @return number of chunks in the list.
+	 */
+	public int size() {
+		return byAddress.size();
+	}
+
 	@Override
 	public Iterator<Chunk> iterator() {
 		return new ChunkIterator(this);
 	}
 
 
+	public void setState(Chunk chunk, State state) {
+		if (chunk.state == state) return;
+		unindex(chunk);
+		chunk.state = state;
+		index(chunk);
+	}
+
+
 	public Chunk split(Chunk chunk, long address, long size) {
-		if (chunk.address < address) {
+		if (UnsignedLong.lt(chunk.address, address)) {
 			long addrDiff = UnsignedLong.minus(address, chunk.address);
 			Chunk newChunk = new Chunk(address, UnsignedLong.minus(chunk.size, addrDiff), chunk.state);
+			resize(chunk, addrDiff);
 			insertAfter(chunk, newChunk);
-			chunk.size = addrDiff;
 			chunk = newChunk;
 		}
 		
@@ -47,19 +126,27 @@ public class ChunkList implements Iterable<Chunk>{
 		if (UnsignedLong.lt(size, chunk.size)) {
 			long sizeDiff = UnsignedLong.minus(chunk.size, size);
 			Chunk newChunk = new Chunk(UnsignedLong.plus(address, size), sizeDiff, chunk.state);
+			resize(chunk, size);
 			insertAfter(chunk, newChunk);
-			chunk.size = size;
 		}
 		
 		return chunk;
 	}
 
 
+	private void resize(Chunk chunk, long size) {
+		if (chunk.state == FREE) freeBySize.remove(chunk);
+		chunk.size = size;
+		if (chunk.state == FREE) freeBySize.add(chunk);
+	}
+
+
 	private void insertAfter(Chunk prev, Chunk next) {
 		if (prev == tail) tail = next;
 		next.next = prev.next;
 		if (next.next != null) next.next.prev = next;
 		link(prev, next);
+		index(next);
 	}
 
 
@@ -75,6 +162,8 @@ public class ChunkList implements Iterable<Chunk>{
 		// We always merge with the follower in case an 
 		// iterator points on one of the chunks. Just 
 		// improves performance.
+		unindex(prev);
+		unindex(next);
 		if (prev == head) head = next;
 		next.size = UnsignedLong.plus(prev.size, next.size);
 		next.address = prev.address;
@@ -82,6 +171,7 @@ public class ChunkList implements Iterable<Chunk>{
 		if (next.prev != null) {
 			next.prev.next = next;
 		}
+		index(next);
 		return next;
 	}
 
@@ -89,6 +179,7 @@ public class ChunkList implements Iterable<Chunk>{
 	public void remove(Chunk current) {
 		// list is supposed to be never empty
 		assert(head != tail);
+		unindex(current);
 		if (current.prev == null) {
 			head = current.next;
 			head.prev = null;
@@ -11,6 +11,11 @@ import org.cakelab.blender.io.dna.internal.StructDNA.Struct.Field;
  * DNAModel is a more convinient interface to meta data provided in
  * {@link StructDNA}. Information is the same, just access to it is
  * easier.
+ * <p>
+ * Models are shared between files (see DNACache). Thus, a model 
+ * cannot be modified after construction. Arrays returned by its 
+ * methods and by its structs are copies.
+ * </p>
  * 
  * @author homac
  *
@@ -69,8 +74,18 @@ public class DNAModel {
 		return null;
 	}
 
+	/**
+	 * @return copy of the array of all structs, indexed by their sdna index.
+	 */
 	public DNAStruct[] getStructs() {
-		return structs;
+		return structs.clone();
+	}
+
+	/**
+	 * @return number of structs.
+	 */
+	public int getStructCount() {
+		return structs.length;
 	}
 
 
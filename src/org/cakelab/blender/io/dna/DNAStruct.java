@@ -23,7 +23,7 @@ public class DNAStruct {
 		fields = new DNAField[fields_len];
 	}
 
-	public void set(int i, DNAField f) {
+	void set(int i, DNAField f) {
 		fields[i] = f;
 	}
 
@@ -31,8 +31,11 @@ public class DNAStruct {
 		return type;
 	}
 
+	/**
+	 * @return copy of the array of fields.
+	 */
 	public DNAField[] getFields() {
-		return fields;
+		return fields.clone();
 	}
 
 	public int getIndex() {
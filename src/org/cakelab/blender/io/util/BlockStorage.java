@@ -0,0 +1,41 @@
+package org.cakelab.blender.io.util;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage backend for the data of blocks held in memory.
+ * <p>
+ * A storage provides the buffers for blocks read fully into
+ * memory or newly allocated. It is owned by the blender file
+ * and closed with it.
+ * </p>
+ * 
+ * @see HeapBlockStorage
+ * @see DirectBlockStorage
+ * @author homac
+ *
+ */
+public interface BlockStorage extends Closeable {
+	
+	/**
+	 * Allocates a buffer of the given size for the data of a block.
+	 * The content of the buffer is zero, its position is 0 and 
+	 * its capacity equals the given size.
+	 */
+	ByteBuffer allocate(int size);
+	
+	/**
+	 * Tells whether buffers are kept outside of the Java heap.
+	 * Those buffers are released on {@link #close()} and must not 
+	 * be accessed afterwards.
+	 */
+	boolean isDirect();
+	
+	/**
+	 * Releases all buffers allocated by this storage. 
+	 * No buffers can be allocated afterwards.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,352 @@
+package org.cakelab.blender.io.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered file access for either byte order.
+ * <p>
+ * Data is transferred between file and a page buffer through the
+ * files {@link FileChannel}. The buffer uses the byte order of the
+ * file, thus scalars are read and written directly from/to the buffer
+ * without any byte swapping. Changing the offset does not cause any
+ * I/O, thus seeks inside the buffered window are free.
+ * </p>
+ * <p>
+ * Modified data is written back to the file when the buffer is
+ * moved to another region of the file, on {@link #flush()} and
+ * on {@link #close()}. The buffered window always consists of data
+ * read from the file and data written to it, thus data written only
+ * does not require to read the corresponding region first.
+ * After {@link #close()}, reads and writes fail with an IOException.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class BufferedCFileRW extends CDataReadWriteAccess {
+	/** Default size of the page buffer (64 KB). */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	/** file offset of the first byte in the buffer */
+	private long bufferStart;
+	/** number of valid bytes in the buffer */
+	private int bufferLength;
+	/** modified region of the buffer [dirtyStart, dirtyEnd) */
+	private int dirtyStart;
+	private int dirtyEnd;
+
+	private long position;
+
+	public BufferedCFileRW(RandomAccessFile file, ByteOrder byteOrder, int pointerSize) throws IOException {
+		this(file, byteOrder, pointerSize, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedCFileRW(RandomAccessFile file, ByteOrder byteOrder, int pointerSize, int bufferSize) throws IOException {
+		super(pointerSize);
+		this.file = file;
+		this.channel = file.getChannel();
+		this.buffer = ByteBuffer.allocate(bufferSize).order(byteOrder);
+		this.position = file.getFilePointer();
+		this.bufferStart = position;
+	}
+
+	/**
+	 * Makes the next 'size' bytes available in the buffer for reading.
+	 *
+	 * @return index of the current position in the buffer.
+	 */
+	private int readable(int size) throws IOException {
+		long index = position - bufferStart;
+		if (index < 0 || index + size > bufferLength) {
+			fill(size);
+			index = 0;
+		}
+		position += size;
+		return (int) index;
+	}
+
+	/**
+	 * Makes room for the next 'size' bytes in the buffer for writing.
+	 *
+	 * @return index of the current position in the buffer.
+	 */
+	private int writable(int size) throws IOException {
+		if (!channel.isOpen()) throw new ClosedChannelException();
+		long index = position - bufferStart;
+		if (index < 0 || index > bufferLength || index + size > buffer.capacity()) {
+			// start a new window without reading it
+			flush();
+			bufferStart = position;
+			bufferLength = 0;
+			index = 0;
+		}
+		int i = (int) index;
+		if (dirtyStart == dirtyEnd) {
+			dirtyStart = i;
+			dirtyEnd = i + size;
+		} else {
+			dirtyStart = Math.min(dirtyStart, i);
+			dirtyEnd = Math.max(dirtyEnd, i + size);
+		}
+		bufferLength = Math.max(bufferLength, i + size);
+		position += size;
+		return i;
+	}
+
+	/**
+	 * Loads the buffer with file content starting at the current position.
+	 */
+	private void fill(int minSize) throws IOException {
+		flush();
+		bufferStart = position;
+		bufferLength = 0;
+		buffer.clear();
+		while (bufferLength < minSize) {
+			int n = channel.read(buffer, bufferStart + bufferLength);
+			if (n < 0) break;
+			bufferLength += n;
+		}
+		if (bufferLength < minSize) throw new EOFException();
+	}
+
+	/**
+	 * Writes modified data in the buffer back to the file.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (dirtyStart < dirtyEnd) {
+			ByteBuffer dirty = buffer.duplicate();
+			dirty.limit(dirtyEnd);
+			dirty.position(dirtyStart);
+			long offset = bufferStart + dirtyStart;
+			while (dirty.hasRemaining()) {
+				offset += channel.write(dirty, offset);
+			}
+		}
+		dirtyStart = dirtyEnd = 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return buffer.get(readable(1));
+	}
+
+	@Override
+	public void writeByte(int value) throws IOException {
+		buffer.put(writable(1), (byte) value);
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return buffer.getShort(readable(2));
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		buffer.putShort(writable(2), value);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return buffer.getInt(readable(4));
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		buffer.putInt(writable(4), value);
+	}
+
+	@Override
+	public long readInt64() throws IOException {
+		return buffer.getLong(readable(8));
+	}
+
+	@Override
+	public void writeInt64(long value) throws IOException {
+		buffer.putLong(writable(8), value);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return buffer.getFloat(readable(4));
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		buffer.putFloat(writable(4), value);
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return buffer.getDouble(readable(8));
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		buffer.putDouble(writable(8), value);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			long index = position - bufferStart;
+			if (index >= 0 && index < bufferLength) {
+				// serve what is available from the buffer
+				int n = (int) Math.min(len, bufferLength - index);
+				System.arraycopy(buffer.array(), (int) index, b, off, n);
+				position += n;
+				off += n;
+				len -= n;
+			} else if (len >= buffer.capacity()) {
+				// large reads bypass the buffer
+				flush();
+				ByteBuffer target = ByteBuffer.wrap(b, off, len);
+				while (target.hasRemaining()) {
+					int n = channel.read(target, position);
+					if (n < 0) throw new EOFException();
+					position += n;
+				}
+				len = 0;
+			} else {
+				fill(1);
+			}
+		}
+	}
+
+	@Override
+	public void readFully(ByteBuffer dst) throws IOException {
+		if (dst.hasArray() || dst.remaining() < buffer.capacity()) {
+			super.readFully(dst);
+			return;
+		}
+		// large reads into direct buffers bypass the buffer
+		long index = position - bufferStart;
+		if (index >= 0 && index < bufferLength) {
+			// serve what is available from the buffer
+			int n = (int) Math.min(dst.remaining(), bufferLength - index);
+			ByteBuffer src = buffer.duplicate();
+			src.limit((int) index + n);
+			src.position((int) index);
+			dst.put(src);
+			position += n;
+		}
+		flush();
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, position);
+			if (n < 0) throw new EOFException();
+			position += n;
+		}
+	}
+
+	@Override
+	public void writeFully(byte[] b, int off, int len) throws IOException {
+		if (len < buffer.capacity()) {
+			while (len > 0) {
+				long index = position - bufferStart;
+				int room = (index >= 0 && index <= bufferLength) ? buffer.capacity() - (int) index : 0;
+				int n = Math.min(len, room > 0 ? room : buffer.capacity());
+				int i = writable(n);
+				System.arraycopy(b, off, buffer.array(), i, n);
+				off += n;
+				len -= n;
+			}
+		} else {
+			// large writes bypass the buffer
+			flush();
+			if (position < bufferStart + bufferLength && position + len > bufferStart) {
+				// buffer content is outdated
+				bufferLength = 0;
+			}
+			ByteBuffer source = ByteBuffer.wrap(b, off, len);
+			while (source.hasRemaining()) {
+				position += channel.write(source, position);
+			}
+		}
+	}
+
+	/**
+	 * @return length of the file including data not yet written back.
+	 */
+	private long length() throws IOException {
+		return Math.max(channel.size(), bufferStart + bufferLength);
+	}
+
+	@Override
+	public void padding(int alignment) throws IOException {
+		padding(alignment, false);
+	}
+
+	@Override
+	public void padding(int alignment, boolean extend) throws IOException {
+		long pos = offset();
+		long misalignment = pos%alignment;
+		if (misalignment > 0) {
+			long correction = alignment-misalignment;
+			if (pos + correction <= length()) {
+				skip(correction);
+			} else if (extend) {
+				offset(pos + (correction-1));
+				writeByte(0);
+			} else {
+				throw new IOException("padding beyond file boundary without permission.");
+			}
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) return 0;
+		if (position + n > length()) throw new IOException("Skipping beyond file boundary.");
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) (length() - position);
+	}
+
+	@Override
+	public void offset(long offset) throws IOException {
+		position = offset;
+	}
+
+	@Override
+	public long offset() throws IOException {
+		return position;
+	}
+
+	@Override
+	public ByteOrder getByteOrder() {
+		return buffer.order();
+	}
+
+	/**
+	 * @return channel of the underlying file.
+	 */
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			// no reads from the buffered window after close
+			bufferLength = 0;
+			dirtyStart = dirtyEnd = 0;
+			file.close();
+		}
+	}
+}
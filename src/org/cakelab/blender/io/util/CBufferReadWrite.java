@@ -1,18 +1,34 @@
 package org.cakelab.blender.io.util;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 
 public class CBufferReadWrite extends CDataReadWriteAccess {
 
+	/** Size of the intermediate buffer used to copy data from non-heap buffers. */
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
 	private ByteBuffer rawData;
 	private long address;
+	/** whether rawData is a section of a memory mapped file */
+	private final boolean mapped;
 
 	public CBufferReadWrite(ByteBuffer rawData, long address, int pointerSize) {
+		this(rawData, address, pointerSize, false);
+	}
+
+	/**
+	 * @param mapped whether the buffer is a section of a memory mapped file (see {@link FileMapping}).
+	 */
+	public CBufferReadWrite(ByteBuffer rawData, long address, int pointerSize, boolean mapped) {
 		super(pointerSize);
 		this.rawData = rawData;
 		this.address = address;
+		this.mapped = mapped;
 	}
 
 	@Override
@@ -93,6 +109,110 @@ public class CBufferReadWrite extends CDataReadWriteAccess {
 		rawData.get(b, off, len);
 	}
 
+	@Override
+	public void writeFully(byte[] b, int off, int len) throws IOException {
+		rawData.put(b, off, len);
+	}
+
+	/*
+	 * Bulk transfers of primitive arrays use view buffers on the 
+	 * current position, which have the byte order of the data.
+	 * The position of the data buffer is advanced afterwards.
+	 */
+
+	@Override
+	public void readFully(short[] b, int off, int len) throws IOException {
+		rawData.asShortBuffer().get(b, off, len);
+		advance(len, 2);
+	}
+
+	@Override
+	public void writeFully(short[] b, int off, int len) throws IOException {
+		rawData.asShortBuffer().put(b, off, len);
+		advance(len, 2);
+	}
+
+	@Override
+	public void readFully(int[] b, int off, int len) throws IOException {
+		rawData.asIntBuffer().get(b, off, len);
+		advance(len, 4);
+	}
+
+	@Override
+	public void writeFully(int[] b, int off, int len) throws IOException {
+		rawData.asIntBuffer().put(b, off, len);
+		advance(len, 4);
+	}
+
+	@Override
+	public void readFullyInt64(long[] b, int off, int len) throws IOException {
+		rawData.asLongBuffer().get(b, off, len);
+		advance(len, 8);
+	}
+
+	@Override
+	public void writeFullyInt64(long[] b, int off, int len) throws IOException {
+		rawData.asLongBuffer().put(b, off, len);
+		advance(len, 8);
+	}
+
+	@Override
+	public void readFully(long[] b, int off, int len) throws IOException {
+		// pointer size is checked once per array instead of once per element
+		if (getPointerSize() == 8) {
+			readFullyInt64(b, off, len);
+		} else {
+			IntBuffer ints = rawData.asIntBuffer();
+			if (ints.remaining() < len) throw new BufferUnderflowException();
+			for (int i = 0; i < len; i++) {
+				b[off + i] = ints.get(i);
+			}
+			advance(len, 4);
+		}
+	}
+
+	@Override
+	public void writeFully(long[] b, int off, int len) throws IOException {
+		if (getPointerSize() == 8) {
+			writeFullyInt64(b, off, len);
+		} else {
+			IntBuffer ints = rawData.asIntBuffer();
+			if (ints.remaining() < len) throw new BufferOverflowException();
+			for (int i = 0; i < len; i++) {
+				ints.put(i, (int) b[off + i]);
+			}
+			advance(len, 4);
+		}
+	}
+
+	@Override
+	public void readFully(float[] b, int off, int len) throws IOException {
+		rawData.asFloatBuffer().get(b, off, len);
+		advance(len, 4);
+	}
+
+	@Override
+	public void writeFully(float[] b, int off, int len) throws IOException {
+		rawData.asFloatBuffer().put(b, off, len);
+		advance(len, 4);
+	}
+
+	@Override
+	public void readFully(double[] b, int off, int len) throws IOException {
+		rawData.asDoubleBuffer().get(b, off, len);
+		advance(len, 8);
+	}
+
+	@Override
+	public void writeFully(double[] b, int off, int len) throws IOException {
+		rawData.asDoubleBuffer().put(b, off, len);
+		advance(len, 8);
+	}
+
+	private void advance(int len, int elementSize) {
+		rawData.position(rawData.position() + len * elementSize);
+	}
+
 	@Override
 	public void writeByte(int value) throws IOException {
 		rawData.put((byte) value);
@@ -133,10 +253,81 @@ public class CBufferReadWrite extends CDataReadWriteAccess {
 	 * 
 	 * This is supposed to be used by internal methods only, which 
 	 * know how to handle the data.
-	 * 
+	 * <p>
+	 * If the data is not stored in a byte array of its own (e.g. 
+	 * memory mapped), this method returns a copy.
+	 * </p>
 	 */
 	public byte[] getBytes() {
-		return rawData.array();
+		if (rawData.hasArray() && rawData.arrayOffset() == 0 && rawData.array().length == rawData.capacity()) {
+			return rawData.array();
+		} else {
+			return copyBytes();
+		}
+	}
+
+	private byte[] copyBytes() {
+		byte[] bytes = new byte[rawData.capacity()];
+		ByteBuffer view = rawData.duplicate();
+		view.clear();
+		view.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Tells whether the data is stored on Java heap or 
+	 * elsewhere (e.g. in a memory mapped file).
+	 */
+	public boolean isHeapBuffer() {
+		return rawData.hasArray();
+	}
+
+	/**
+	 * Tells whether the data is a section of a memory mapped file.
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Creates a copy of this buffer on Java heap.
+	 */
+	public CBufferReadWrite heapCopy() {
+		ByteBuffer copy = ByteBuffer.wrap(copyBytes());
+		copy.order(rawData.order());
+		return new CBufferReadWrite(copy, address, getPointerSize());
+	}
+
+	/**
+	 * Creates a copy of this buffer in the given storage.
+	 */
+	public CBufferReadWrite copy(BlockStorage storage) {
+		ByteBuffer copy = storage.allocate(rawData.capacity());
+		ByteBuffer view = rawData.duplicate();
+		view.clear();
+		copy.put(view);
+		copy.clear();
+		copy.order(rawData.order());
+		return new CBufferReadWrite(copy, address, getPointerSize());
+	}
+
+	/**
+	 * Writes the entire content of the buffer to the given output
+	 * without moving the position of this buffer.
+	 */
+	public void writeTo(CDataReadWriteAccess out) throws IOException {
+		if (rawData.hasArray()) {
+			out.writeFully(rawData.array(), rawData.arrayOffset(), rawData.capacity());
+		} else {
+			ByteBuffer view = rawData.duplicate();
+			view.clear();
+			byte[] buf = new byte[Math.min(view.remaining(), COPY_BUFFER_SIZE)];
+			while (view.hasRemaining()) {
+				int len = Math.min(view.remaining(), buf.length);
+				view.get(buf, 0, len);
+				out.writeFully(buf, 0, len);
+			}
+		}
 	}
 
 	
@@ -0,0 +1,129 @@
+package org.cakelab.blender.io.util;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Replaces the data access of a block, whose data has been released
+ * (see {@link org.cakelab.blender.io.block.Block#close()}).
+ * <p>
+ * All reads and writes fail with an IOException instead of accessing
+ * memory, which may already be freed.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class CClosedReadWrite extends CDataReadWriteAccess {
+
+	private final ByteOrder byteOrder;
+
+	public CClosedReadWrite(int pointerSize, ByteOrder byteOrder) {
+		super(pointerSize);
+		this.byteOrder = byteOrder;
+	}
+
+	private static IOException closed() {
+		return new IOException("data of block is not available anymore (closed)");
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeByte(int value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public long readInt64() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeInt64(long value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void padding(int alignment, boolean extend) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void padding(int alignment) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public int available() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public void offset(long offset) throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public long offset() throws IOException {
+		throw closed();
+	}
+
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+}
@@ -2,6 +2,7 @@ package org.cakelab.blender.io.util;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 public abstract class CDataFileRWAccess extends CDataReadWriteAccess {
 
@@ -102,6 +103,13 @@ public abstract class CDataFileRWAccess extends CDataReadWriteAccess {
 		}
 	}
 
+	/**
+	 * @return channel of the underlying file.
+	 */
+	public FileChannel getChannel() {
+		return io.getChannel();
+	}
+
 	public void close() throws IOException {
 		io.close();
 	}
@@ -21,14 +21,8 @@ public abstract class CDataReadWriteAccess implements Closeable {
 	}
 
 
-	public static CDataReadWriteAccess create(RandomAccessFile in, Encoding encoding) {
-		CDataReadWriteAccess stream = null;
-		if (encoding.getByteOrder() == ByteOrder.BIG_ENDIAN) {
-			stream = new BigEndianCFileRW(in, encoding.getAddressWidth());
-		} else {
-			stream = new LittleEndianFileRW(in, encoding.getAddressWidth());
-		}
-		return stream;
+	public static CDataReadWriteAccess create(RandomAccessFile in, Encoding encoding) throws IOException {
+		return new BufferedCFileRW(in, encoding.getByteOrder(), encoding.getAddressWidth());
 	}
 
 	public static CDataReadWriteAccess create(byte[] data, long baseAddress, Encoding encoding) {
@@ -37,6 +31,11 @@ public abstract class CDataReadWriteAccess implements Closeable {
 		return new CBufferReadWrite(buffer, baseAddress, encoding.getAddressWidth());
 	}
 
+	public static CDataReadWriteAccess create(ByteBuffer data, long baseAddress, Encoding encoding) {
+		data.order(encoding.getByteOrder());
+		return new CBufferReadWrite(data, baseAddress, encoding.getAddressWidth());
+	}
+
 	
 	public final int getPointerSize() {
 		return pointerSize;
@@ -105,6 +104,24 @@ public abstract class CDataReadWriteAccess implements Closeable {
 		writeFully(b, 0, b.length);
 	}
 
+	/**
+	 * Reads bytes into the remaining space of the given buffer 
+	 * and advances its position to its limit.
+	 */
+	public void readFully(ByteBuffer dst) throws IOException {
+		if (dst.hasArray()) {
+			readFully(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+			dst.position(dst.limit());
+		} else {
+			byte[] buf = new byte[Math.min(dst.remaining(), 64 * 1024)];
+			while (dst.hasRemaining()) {
+				int len = Math.min(dst.remaining(), buf.length);
+				readFully(buf, 0, len);
+				dst.put(buf, 0, len);
+			}
+		}
+	}
+
 	public void readFully(byte[] b, int off, int len) throws IOException {
 		len += off;
 		for (int i = off; i < len; i++) {
@@ -236,6 +253,14 @@ public abstract class CDataReadWriteAccess implements Closeable {
 
 	public abstract ByteOrder getByteOrder();
 
+	/**
+	 * Writes buffered data to the underlying storage, if any.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+	}
+
 	
 
 }
@@ -0,0 +1,291 @@
+package org.cakelab.blender.io.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.cakelab.blender.io.Encoding;
+
+/**
+ * Provides access to data of a block, which is read from the
+ * file on first access.
+ * <p>
+ * Until then, only the location of the data in the file is known.
+ * Once loaded, all operations are delegated to a {@link CBufferReadWrite}
+ * holding a copy of the data in a {@link BlockStorage} (see {@link #load()}).
+ * </p>
+ * <p>
+ * The file access is shared with other instances and its
+ * position is restored after loading.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class CLazyBufferReadWrite extends CDataReadWriteAccess {
+
+	private CDataReadWriteAccess file;
+	private final long fileOffset;
+	private final int size;
+	private final long address;
+	private final Encoding encoding;
+	private final BlockStorage storage;
+
+	private volatile CBufferReadWrite buffer;
+
+	/**
+	 * @param file File access to read the data from.
+	 * @param fileOffset Offset of the data in the file.
+	 * @param size Size of the data in bytes.
+	 * @param address Base address of the data.
+	 * @param encoding Encoding of the data.
+	 */
+	public CLazyBufferReadWrite(CDataReadWriteAccess file, long fileOffset, int size, long address, Encoding encoding) {
+		this(file, fileOffset, size, address, encoding, new HeapBlockStorage());
+	}
+
+	/**
+	 * @param file File access to read the data from.
+	 * @param fileOffset Offset of the data in the file.
+	 * @param size Size of the data in bytes.
+	 * @param address Base address of the data.
+	 * @param encoding Encoding of the data.
+	 * @param storage Storage to receive the data on load.
+	 */
+	public CLazyBufferReadWrite(CDataReadWriteAccess file, long fileOffset, int size, long address, Encoding encoding, BlockStorage storage) {
+		super(encoding.getAddressWidth());
+		this.storage = storage;
+		this.file = file;
+		this.fileOffset = fileOffset;
+		this.size = size;
+		this.address = address;
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Reads the data from file, if not done yet.
+	 * @return Buffer with the data.
+	 * @throws IOException
+	 */
+	public CBufferReadWrite load() throws IOException {
+		CBufferReadWrite result = buffer;
+		if (result == null) {
+			synchronized (this) {
+				result = buffer;
+				if (result == null) {
+					if (file == null) throw new IOException("data of block is not available anymore (closed)");
+					ByteBuffer data = storage.allocate(size);
+					synchronized (file) {
+						long position = file.offset();
+						file.offset(fileOffset);
+						file.readFully(data);
+						file.offset(position);
+					}
+					data.clear();
+					result = buffer = (CBufferReadWrite) CDataReadWriteAccess.create(data, address, encoding);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true, if the data has been read from file already.
+	 */
+	public boolean isLoaded() {
+		return buffer != null;
+	}
+
+	/**
+	 * @return Offset of the data in the file.
+	 */
+	public long getFileOffset() {
+		return fileOffset;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return load().readBoolean();
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		load().writeBoolean(value);
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return load().readByte();
+	}
+
+	@Override
+	public void writeByte(int value) throws IOException {
+		load().writeByte(value);
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return load().readShort();
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		load().writeShort(value);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return load().readInt();
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		load().writeInt(value);
+	}
+
+	@Override
+	public long readInt64() throws IOException {
+		return load().readInt64();
+	}
+
+	@Override
+	public void writeInt64(long value) throws IOException {
+		load().writeInt64(value);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return load().readFloat();
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		load().writeFloat(value);
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return load().readDouble();
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		load().writeDouble(value);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(byte[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void readFully(short[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(short[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void readFully(int[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(int[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void readFully(long[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(long[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void readFullyInt64(long[] b, int off, int len) throws IOException {
+		load().readFullyInt64(b, off, len);
+	}
+
+	@Override
+	public void writeFullyInt64(long[] b, int off, int len) throws IOException {
+		load().writeFullyInt64(b, off, len);
+	}
+
+	@Override
+	public void readFully(float[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(float[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void readFully(double[] b, int off, int len) throws IOException {
+		load().readFully(b, off, len);
+	}
+
+	@Override
+	public void writeFully(double[] b, int off, int len) throws IOException {
+		load().writeFully(b, off, len);
+	}
+
+	@Override
+	public void padding(int alignment, boolean extend) throws IOException {
+		load().padding(alignment, extend);
+	}
+
+	@Override
+	public void padding(int alignment) throws IOException {
+		load().padding(alignment);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		return load().skip(n);
+	}
+
+	@Override
+	public int available() throws IOException {
+		return load().available();
+	}
+
+	@Override
+	public void offset(long offset) throws IOException {
+		load().offset(offset);
+	}
+
+	@Override
+	public long offset() throws IOException {
+		return load().offset();
+	}
+
+	@Override
+	public ByteOrder getByteOrder() {
+		return encoding.getByteOrder();
+	}
+
+	/**
+	 * Releases the data. The shared file access is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		CBufferReadWrite result = buffer;
+		if (result != null) result.close();
+		file = null;
+	}
+
+}
@@ -0,0 +1,184 @@
+package org.cakelab.blender.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Input stream which decompresses gzip data in a background thread.
+ * <p>
+ * Decompressed data is handed over in large chunks through a bounded
+ * queue. This way, the consumer can already process data (e.g. parse
+ * block headers), while decompression of the remaining data is still
+ * running. The queue limits the amount of data decompressed ahead
+ * to {@link #QUEUE_CAPACITY} chunks.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class ConcurrentInflaterInputStream extends InputStream {
+	/** Size of the chunks handed over to the consumer (1 MB). */
+	public static final int CHUNK_SIZE = 1 << 20;
+	/** Size of the buffer for compressed input (256 KB). */
+	public static final int INPUT_BUFFER_SIZE = 256 * 1024;
+	/** Maximum number of chunks decompressed ahead. */
+	public static final int QUEUE_CAPACITY = 8;
+
+	/** marks the end of the stream in the queue */
+	private static final byte[] EOF = new byte[0];
+
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+	private final Thread worker;
+	/** failure of the decompressing thread, reported to the reader */
+	private volatile Throwable error;
+	private volatile boolean closed;
+
+	private byte[] chunk;
+	private int position;
+
+	/**
+	 * Starts decompression of the given input.
+	 *
+	 * @param compressed gzip compressed data. The stream will be
+	 * closed when decompression has finished.
+	 */
+	public ConcurrentInflaterInputStream(final InputStream compressed) {
+		worker = new Thread("gzip inflater") {
+			@Override
+			public void run() {
+				inflate(compressed);
+			}
+		};
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void inflate(InputStream compressed) {
+		boolean interrupted = false;
+		try {
+			InputStream in = compressed;
+			try {
+				in = new GZIPInputStream(compressed, INPUT_BUFFER_SIZE);
+				int len;
+				do {
+					byte[] data = new byte[CHUNK_SIZE];
+					len = fill(in, data);
+					if (len < data.length) data = Arrays.copyOf(data, len);
+					if (len > 0) queue.put(data);
+				} while (len == CHUNK_SIZE && !closed);
+			} finally {
+				in.close();
+			}
+		} catch (InterruptedException e) {
+			// closed by consumer
+			interrupted = true;
+		} catch (Throwable e) {
+			// includes runtime exceptions and errors such as OutOfMemoryError
+			error = e;
+		} finally {
+			// the consumer waits for EOF, whatever happened
+			if (!interrupted) {
+				try {
+					queue.put(EOF);
+				} catch (InterruptedException e) {
+					// closed by consumer
+				}
+			}
+		}
+	}
+
+	private static int fill(InputStream in, byte[] data) throws IOException {
+		int len = 0;
+		while (len < data.length) {
+			int n = in.read(data, len, data.length - len);
+			if (n < 0) break;
+			len += n;
+		}
+		return len;
+	}
+
+	/**
+	 * @return false, if there is no more data available.
+	 */
+	private boolean nextChunk() throws IOException {
+		if (chunk == EOF) return false;
+		if (closed) throw new IOException("stream closed");
+		try {
+			chunk = queue.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		position = 0;
+		if (chunk == EOF) {
+			if (error != null) throwError();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Rethrows the failure of the decompressing thread.
+	 */
+	private void throwError() throws IOException {
+		Throwable e = error;
+		if (e instanceof RuntimeException) throw (RuntimeException) e;
+		if (e instanceof Error) throw (Error) e;
+		throw new IOException("decompression failed", e);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (chunk == null || position == chunk.length) {
+			if (!nextChunk()) return -1;
+		}
+		return chunk[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (chunk == null || position == chunk.length) {
+			if (!nextChunk()) return -1;
+		}
+		len = Math.min(len, chunk.length - position);
+		System.arraycopy(chunk, position, b, off, len);
+		position += len;
+		return len;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n) {
+			if (chunk == null || position == chunk.length) {
+				if (!nextChunk()) break;
+			}
+			int len = (int) Math.min(n - skipped, chunk.length - position);
+			position += len;
+			skipped += len;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return chunk == null ? 0 : chunk.length - position;
+	}
+
+	/**
+	 * Stops decompression and releases all buffered data.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		worker.interrupt();
+		queue.clear();
+		chunk = EOF;
+	}
+}
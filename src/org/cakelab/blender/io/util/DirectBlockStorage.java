@@ -0,0 +1,130 @@
+package org.cakelab.blender.io.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Block storage, which keeps data in direct buffers outside of the Java heap.
+ * <p>
+ * Buffers are sliced from larger chunks of direct memory (arena).
+ * Blocks larger than a quarter of a chunk receive a direct buffer
+ * of their own. Thus, block data neither inflates the heap nor
+ * needs to be traversed by the garbage collector.
+ * </p>
+ * <p>
+ * Memory is never reused, even if the block using it was freed.
+ * All memory is released at once on {@link #close()}, without
+ * waiting for the garbage collector. Buffers allocated by this storage
+ * must not be accessed after it was closed. A {@link org.cakelab.blender.io.BlenderFile}
+ * closes all its blocks before, thus they fail on access instead
+ * (see {@link org.cakelab.blender.io.block.Block#close()}).
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class DirectBlockStorage implements BlockStorage {
+	/** Default size of the chunks (16 MB). */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	/** alignment of slices in a chunk */
+	private static final int ALIGNMENT = 8;
+
+	private final int chunkSize;
+	private ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private ByteBuffer current;
+
+	public DirectBlockStorage() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public DirectBlockStorage(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public synchronized ByteBuffer allocate(int size) {
+		if (chunks == null) throw new IllegalStateException("storage closed");
+		if (size > chunkSize/4) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+			chunks.add(buffer);
+			return buffer;
+		}
+		int position = 0;
+		if (current != null) {
+			position = (current.position() + ALIGNMENT - 1) & -ALIGNMENT;
+		}
+		if (current == null || position + size > current.capacity()) {
+			current = ByteBuffer.allocateDirect(chunkSize);
+			chunks.add(current);
+			position = 0;
+		}
+		current.limit(position + size);
+		current.position(position);
+		ByteBuffer slice = current.slice();
+		current.limit(current.capacity());
+		current.position(position + size);
+		return slice;
+	}
+
+	@Override
+	public boolean isDirect() {
+		return true;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (chunks == null) return;
+		for (ByteBuffer chunk : chunks) {
+			Cleaner.release(chunk);
+		}
+		chunks = null;
+		current = null;
+	}
+
+	/**
+	 * Releases direct buffers explicitly, if the runtime permits it.
+	 * Otherwise, buffers are left to the garbage collector.
+	 */
+	private static class Cleaner {
+		/** Unsafe.invokeCleaner(ByteBuffer) (Java 9 and later) */
+		private static Method invokeCleaner;
+		private static Object unsafe;
+		/** DirectBuffer.cleaner() and Cleaner.clean() (Java 8) */
+		private static Method cleaner;
+		private static Method clean;
+
+		static {
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+			} catch (Exception e) {
+				invokeCleaner = null;
+				try {
+					cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+					clean = cleaner.getReturnType().getMethod("clean");
+				} catch (Exception e2) {
+					cleaner = null;
+				}
+			}
+		}
+
+		static void release(ByteBuffer buffer) {
+			try {
+				if (invokeCleaner != null) {
+					invokeCleaner.invoke(unsafe, buffer);
+				} else if (cleaner != null) {
+					Object c = cleaner.invoke(buffer);
+					if (c != null) clean.invoke(c);
+				}
+			} catch (Exception e) {
+				// left to the garbage collector
+			}
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.cakelab.blender.io.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Provides memory mapped access to the content of a file.
+ * <p>
+ * A single {@link MappedByteBuffer} cannot address more than 2 GB.
+ * Thus, the file is mapped in regions of limited size and a new
+ * region gets mapped whenever a requested slice does not fit in
+ * the current region. Slices stay valid, even if their region is
+ * not the current region anymore.
+ * </p>
+ * <p>
+ * Regions are mapped <em>private</em> (copy-on-write). That means,
+ * modifications to slices are not written back to the file.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class FileMapping implements Closeable {
+	/** Default size of a mapped region (1 GB). */
+	public static final long DEFAULT_REGION_SIZE = 1L << 30;
+
+	private FileChannel channel;
+	private final long fileSize;
+	private final long regionSize;
+	private final ByteOrder byteOrder;
+
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long regionEnd;
+
+	/**
+	 * @param channel Channel of the file to be mapped. It has to be
+	 *        opened for reading and writing (required for private mappings).
+	 * @param byteOrder Byte order to be assigned to slices.
+	 */
+	public FileMapping(FileChannel channel, ByteOrder byteOrder) throws IOException {
+		this(channel, byteOrder, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * @param channel Channel of the file to be mapped. It has to be
+	 *        opened for reading and writing (required for private mappings).
+	 * @param byteOrder Byte order to be assigned to slices.
+	 * @param regionSize Size of the regions to be mapped at once.
+	 */
+	public FileMapping(FileChannel channel, ByteOrder byteOrder, long regionSize) throws IOException {
+		this.channel = channel;
+		this.fileSize = channel.size();
+		this.byteOrder = byteOrder;
+		this.regionSize = Math.min(regionSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a buffer on the given section of the file.
+	 * The position of the returned buffer is 0 and its
+	 * capacity equals the given size.
+	 *
+	 * @param offset Offset in the file.
+	 * @param size Size of the section in bytes.
+	 */
+	public ByteBuffer slice(long offset, int size) throws IOException {
+		if (region == null || offset < regionStart || offset + size > regionEnd) {
+			map(offset, size);
+		}
+		ByteBuffer view = region.duplicate();
+		int position = (int) (offset - regionStart);
+		view.limit(position + size);
+		view.position(position);
+		return view.slice().order(byteOrder);
+	}
+
+	private void map(long offset, int minSize) throws IOException {
+		if (channel == null) throw new IOException("file mapping closed");
+		long size = Math.min(Math.max(regionSize, minSize), fileSize - offset);
+		if (size < minSize) {
+			throw new EOFException("attempt to map beyond end of file");
+		}
+		region = channel.map(MapMode.PRIVATE, offset, size);
+		regionStart = offset;
+		regionEnd = offset + size;
+	}
+
+	/**
+	 * @return size of the mapped file.
+	 */
+	public long size() {
+		return fileSize;
+	}
+
+	/**
+	 * Releases the current region. The channel is not closed.
+	 * Slices received earlier stay valid until they are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		region = null;
+		channel = null;
+	}
+}
@@ -0,0 +1,29 @@
+package org.cakelab.blender.io.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Default block storage, which keeps data in byte arrays on 
+ * the Java heap. Memory is reclaimed by the garbage collector.
+ * 
+ * @author homac
+ *
+ */
+public class HeapBlockStorage implements BlockStorage {
+
+	@Override
+	public ByteBuffer allocate(int size) {
+		return ByteBuffer.wrap(new byte[size]);
+	}
+
+	@Override
+	public boolean isDirect() {
+		return false;
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+
+}
@@ -1,7 +1,9 @@
 package org.cakelab.blender.io.util;
 
 import java.io.IOException;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class implements an abstraction layer to 4 byte
@@ -22,14 +24,43 @@ import java.util.Arrays;
  * compare codes based on the bytes given, we don't have to
  * consider byte order here.
  * 
+ * <h3>Packed Int Value</h3>
+ * The four bytes of a code are also kept packed in an int value
+ * (first byte in the most significant position, see {@link #intValue()}).
+ * Identifiers are compared by this value. Identifiers obtained 
+ * through {@link #valueOf(int)} or {@link #readFrom(CDataReadWriteAccess)} 
+ * are interned, which means there is exactly one immutable instance 
+ * per code. Thus, reading codes from a file does not allocate 
+ * anything. At most {@link #MAX_INTERNED} codes get interned. 
+ * Beyond that (e.g. codes read from a corrupted file), a new immutable 
+ * instance is returned on each request.
  * 
  * @author homac
  *
  */
 public class Identifier {
+	/** Maximum number of interned identifiers. */
+	public static final int MAX_INTERNED = 1024;
+	
+	/** interned identifiers (open addressing, replaced when it grows) */
+	private static volatile AtomicReferenceArray<Identifier> interned = new AtomicReferenceArray<Identifier>(128);
+	private static int internedCount;
+	
 	byte[] code = new byte[4];
+	/** the code packed into an int */
+	private int value;
+	/** interned identifiers are immutable */
+	private final boolean immutable;
+	
+	public Identifier() {
+		immutable = false;
+	}
 	
-	public Identifier() {}
+	private Identifier(int value, boolean immutable) {
+		this.value = value;
+		this.code = unpack(value);
+		this.immutable = immutable;
+	}
 	
 	/**
 	 * This constructor creates an identifier using the 
@@ -38,11 +69,103 @@ public class Identifier {
 	 * @param strCode
 	 */
 	public Identifier(String strCode) {
-		code = CStringUtils.valueOf(strCode);
+		this(CStringUtils.valueOf(strCode));
 	}
 
 	public Identifier(byte[] code) {
 		this.code = code;
+		this.value = pack(code);
+		this.immutable = false;
+	}
+	
+	/**
+	 * Returns the interned identifier for the given packed code.
+	 * @see #intValue()
+	 */
+	public static Identifier valueOf(int value) {
+		Identifier ident = lookup(interned, value);
+		return ident != null ? ident : intern(value);
+	}
+	
+	private static Identifier lookup(AtomicReferenceArray<Identifier> table, int value) {
+		int mask = table.length() - 1;
+		Identifier ident;
+		for (int i = hash(value) & mask; (ident = table.get(i)) != null; i = (i+1) & mask) {
+			if (ident.value == value) return ident;
+		}
+		return null;
+	}
+	
+	private static synchronized Identifier intern(int value) {
+		AtomicReferenceArray<Identifier> table = interned;
+		Identifier ident = lookup(table, value);
+		if (ident != null) return ident;
+		ident = new Identifier(value, true);
+		if (internedCount == MAX_INTERNED) {
+			// not a known code anyway
+			return ident;
+		}
+		// keep the table at most half full
+		if (2*(internedCount+1) > table.length()) {
+			AtomicReferenceArray<Identifier> grown = new AtomicReferenceArray<Identifier>(2 * table.length());
+			for (int i = 0; i < table.length(); i++) {
+				if (table.get(i) != null) put(grown, table.get(i));
+			}
+			put(grown, ident);
+			interned = grown;
+		} else {
+			// readers see the entry once it is set
+			put(table, ident);
+		}
+		internedCount++;
+		return ident;
+	}
+	
+	private static void put(AtomicReferenceArray<Identifier> table, Identifier ident) {
+		int mask = table.length() - 1;
+		int i = hash(ident.value) & mask;
+		while (table.get(i) != null) i = (i+1) & mask;
+		table.set(i, ident);
+	}
+	
+	private static int hash(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Reads a code from the given input and returns the 
+	 * interned identifier.
+	 */
+	public static Identifier readFrom(CDataReadWriteAccess in) throws IOException {
+		int value = in.readInt();
+		if (in.getByteOrder() == ByteOrder.LITTLE_ENDIAN) {
+			value = Integer.reverseBytes(value);
+		}
+		return valueOf(value);
+	}
+	
+	private static int pack(byte[] code) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value <<= 8;
+			if (i < code.length) value |= code[i] & 0xff;
+		}
+		return value;
+	}
+	
+	private static byte[] unpack(int value) {
+		return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+	}
+	
+	/**
+	 * Returns the code packed into an int with the first byte 
+	 * in the most significant position. Block codes are 
+	 * available as int constants in BlockCodes too, to be used 
+	 * in switch statements.
+	 */
+	public int intValue() {
+		return value;
 	}
 
 	/**
@@ -52,7 +175,9 @@ public class Identifier {
 	 * @throws IOException
 	 */
 	public void read(CDataReadWriteAccess in) throws IOException {
+		if (immutable) throw new UnsupportedOperationException("interned identifiers are immutable");
 		in.readFully(code);
+		value = pack(code);
 	}
 
 	public void write(CDataReadWriteAccess io) throws IOException {
@@ -61,10 +186,7 @@ public class Identifier {
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + Arrays.hashCode(code);
-		return result;
+		return value;
 	}
 
 	@Override
@@ -76,9 +198,7 @@ public class Identifier {
 		if (getClass() != obj.getClass())
 			return false;
 		Identifier other = (Identifier) obj;
-		if (!Arrays.equals(code, other.code))
-			return false;
-		return true;
+		return value == other.value;
 	}
 
 	public String toString() {
@@ -95,9 +215,8 @@ public class Identifier {
 	 * @throws IOException
 	 */
 	public void consume(CDataReadWriteAccess in, Identifier expected) throws IOException {
-		Identifier ident = new Identifier();
-		ident.read(in);
-		if (!ident.equals(expected)) throw new IOException("input did not match expected identifier '" + expected + "'");
+		Identifier ident = readFrom(in);
+		if (ident.value != expected.value) throw new IOException("input did not match expected identifier '" + expected + "'");
 	}
 
 	public String getDataString() {
@@ -108,7 +227,7 @@ public class Identifier {
 	 * Returns the sequence of bytes which represents the actual code.
 	 */
 	public byte[] getData() {
-		return code;
+		return immutable ? code.clone() : code;
 	}
 
 }
@@ -0,0 +1,99 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.IOException;
+
+/**
+ * Reads a Zstandard bitstream, which is read backwards from its
+ * end to its start. The highest set bit of the last byte marks
+ * the beginning of the stream. Bits are returned as unsigned
+ * integer, where bits at higher positions are more significant.
+ * <p>
+ * Reading past the start of the stream delivers zeros and is
+ * reported by {@link #overflowed()}.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class BackwardBitReader {
+	private final byte[] data;
+	private final int start;
+	private final int end;
+	/** number of unread bits */
+	private long position;
+
+	BackwardBitReader(byte[] data, int start, int end) throws IOException {
+		if (end <= start || end > data.length) {
+			throw new IOException("corrupted zstd data: invalid bitstream size");
+		}
+		int last = data[end - 1] & 0xff;
+		if (last == 0) {
+			throw new IOException("corrupted zstd data: missing bitstream end mark");
+		}
+		this.data = data;
+		this.start = start;
+		this.end = end;
+		this.position = (long)(end - start - 1) * 8 + (31 - Integer.numberOfLeadingZeros(last));
+	}
+
+	/**
+	 * Reads the next n bits (n &lt;= 56).
+	 */
+	long read(int n) {
+		if (n == 0) return 0;
+		position -= n;
+		return bits(position, n);
+	}
+
+	/**
+	 * Returns the next n bits (n &lt;= 56) without consuming them.
+	 */
+	int peek(int n) {
+		return (int) bits(position - n, n);
+	}
+
+	void skip(int n) {
+		position -= n;
+	}
+
+	/**
+	 * @return true, if more bits have been read than the stream contains.
+	 */
+	boolean overflowed() {
+		return position < 0;
+	}
+
+	/**
+	 * @return true, if all bits have been consumed exactly.
+	 */
+	boolean finished() {
+		return position == 0;
+	}
+
+	private long bits(long pos, int n) {
+		if (pos < 0) {
+			// bits in front of the stream read as zero
+			if (pos + n <= 0) return 0;
+			return bits(0, (int)(pos + n)) << -pos;
+		}
+		int index = start + (int)(pos >>> 3);
+		int shift = (int)(pos & 7);
+		long v;
+		if (index + 8 <= end) {
+			v = (data[index] & 0xffL)
+					| (data[index + 1] & 0xffL) << 8
+					| (data[index + 2] & 0xffL) << 16
+					| (data[index + 3] & 0xffL) << 24
+					| (data[index + 4] & 0xffL) << 32
+					| (data[index + 5] & 0xffL) << 40
+					| (data[index + 6] & 0xffL) << 48
+					| (data[index + 7] & 0xffL) << 56;
+		} else {
+			v = 0;
+			for (int i = end - 1; i >= index; i--) {
+				v = (v << 8) | (data[i] & 0xff);
+			}
+		}
+		return (v >>> shift) & ((1L << n) - 1);
+	}
+}
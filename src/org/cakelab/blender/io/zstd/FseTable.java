@@ -0,0 +1,165 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.IOException;
+
+/**
+ * Decoding table for finite state entropy (FSE) coded symbols.
+ * <p>
+ * Each state of the table provides a symbol, the number of bits
+ * to be read for the next state and the baseline to which these
+ * bits are added.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class FseTable {
+	int accuracyLog;
+	final int[] symbol;
+	final int[] nbBits;
+	final int[] baseline;
+
+	private final short[] normalized = new short[256];
+
+	/**
+	 * @param maxAccuracyLog Maximum accuracy log supported by this table.
+	 */
+	FseTable(int maxAccuracyLog) {
+		int size = 1 << maxAccuracyLog;
+		symbol = new int[size];
+		nbBits = new int[size];
+		baseline = new int[size];
+	}
+
+	/**
+	 * Creates a table from a predefined distribution.
+	 */
+	static FseTable predefined(short[] distribution, int accuracyLog) {
+		FseTable table = new FseTable(accuracyLog);
+		try {
+			table.init(distribution, distribution.length - 1, accuracyLog);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return table;
+	}
+
+	/**
+	 * Initialises a table with a single state, which always
+	 * delivers the given symbol.
+	 */
+	void initRle(int s) {
+		accuracyLog = 0;
+		symbol[0] = s;
+		nbBits[0] = 0;
+		baseline[0] = 0;
+	}
+
+	/**
+	 * Reads a table description (normalised distribution) and
+	 * initialises the table accordingly.
+	 *
+	 * @return number of bytes consumed
+	 */
+	int read(byte[] src, int off, int end, int maxSymbol, int maxAccuracyLog) throws IOException {
+		if (off >= end) throw new IOException("corrupted zstd data: missing FSE table description");
+		long bitPos = 0;
+		int log = (int) forwardBits(src, off, end, bitPos, 4) + 5;
+		bitPos += 4;
+		if (log > maxAccuracyLog) {
+			throw new IOException("corrupted zstd data: FSE accuracy log too large");
+		}
+		int remaining = (1 << log) + 1;
+		int threshold = 1 << log;
+		int bits = log + 1;
+		int s = 0;
+		boolean previous0 = false;
+		while (remaining > 1 && s <= maxSymbol) {
+			if (previous0) {
+				int n0 = s;
+				int repeat;
+				do {
+					repeat = (int) forwardBits(src, off, end, bitPos, 2);
+					bitPos += 2;
+					n0 += repeat;
+				} while (repeat == 3);
+				if (n0 > maxSymbol + 1) {
+					throw new IOException("corrupted zstd data: FSE symbol out of range");
+				}
+				while (s < n0) normalized[s++] = 0;
+				if (s > maxSymbol) break;
+			}
+			int max = (2 * threshold - 1) - remaining;
+			int value = (int) forwardBits(src, off, end, bitPos, bits);
+			int count;
+			if ((value & (threshold - 1)) < max) {
+				count = value & (threshold - 1);
+				bitPos += bits - 1;
+			} else {
+				count = value & (2 * threshold - 1);
+				if (count >= threshold) count -= max;
+				bitPos += bits;
+			}
+			count--;
+			remaining -= count < 0 ? -count : count;
+			normalized[s++] = (short) count;
+			previous0 = count == 0;
+			while (remaining < threshold) {
+				bits--;
+				threshold >>= 1;
+			}
+		}
+		int consumed = (int) ((bitPos + 7) >>> 3);
+		if (remaining != 1 || off + consumed > end) {
+			throw new IOException("corrupted zstd data: invalid FSE table description");
+		}
+		init(normalized, s - 1, log);
+		return consumed;
+	}
+
+	private void init(short[] norm, int maxSymbol, int log) throws IOException {
+		int size = 1 << log;
+		int high = size - 1;
+		int[] next = new int[maxSymbol + 1];
+		for (int s = 0; s <= maxSymbol; s++) {
+			if (norm[s] == -1) {
+				symbol[high--] = s;
+				next[s] = 1;
+			} else {
+				next[s] = norm[s];
+			}
+		}
+		int mask = size - 1;
+		int step = (size >>> 1) + (size >>> 3) + 3;
+		int position = 0;
+		for (int s = 0; s <= maxSymbol; s++) {
+			for (int i = 0; i < norm[s]; i++) {
+				symbol[position] = s;
+				do {
+					position = (position + step) & mask;
+				} while (position > high);
+			}
+		}
+		if (position != 0) {
+			throw new IOException("corrupted zstd data: invalid FSE distribution");
+		}
+		for (int u = 0; u < size; u++) {
+			int state = next[symbol[u]]++;
+			int n = log - (31 - Integer.numberOfLeadingZeros(state));
+			nbBits[u] = n;
+			baseline[u] = (state << n) - size;
+		}
+		accuracyLog = log;
+	}
+
+	/** reads bits in forward (little endian) order; bits beyond end are zero */
+	private static long forwardBits(byte[] src, int off, int end, long bitPos, int n) {
+		int index = off + (int) (bitPos >>> 3);
+		int shift = (int) (bitPos & 7);
+		long v = 0;
+		for (int i = Math.min(index + 4, end) - 1; i >= index; i--) {
+			v = (v << 8) | (src[i] & 0xff);
+		}
+		return (v >>> shift) & ((1L << n) - 1);
+	}
+}
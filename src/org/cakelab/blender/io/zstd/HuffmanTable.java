@@ -0,0 +1,136 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.IOException;
+
+/**
+ * Decoding table for Huffman coded literals.
+ * <p>
+ * The table is indexed by the next {@link #tableLog} bits of the
+ * stream and provides the symbol and the actual length of its code.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class HuffmanTable {
+	private static final int MAX_TABLE_LOG = 11;
+	private static final int MAX_WEIGHT_LOG = 6;
+
+	private int tableLog;
+	private final byte[] symbols = new byte[1 << MAX_TABLE_LOG];
+	private final byte[] nbBits = new byte[1 << MAX_TABLE_LOG];
+
+	private final int[] weights = new int[256];
+	private final FseTable weightTable = new FseTable(MAX_WEIGHT_LOG);
+
+	/**
+	 * Reads a Huffman tree description and initialises the table.
+	 *
+	 * @return number of bytes consumed
+	 */
+	int read(byte[] src, int off, int end) throws IOException {
+		if (off >= end) throw new IOException("corrupted zstd data: missing Huffman tree description");
+		int header = src[off] & 0xff;
+		int count;
+		int consumed;
+		if (header < 128) {
+			// weights are FSE compressed
+			consumed = 1 + header;
+			int compressedEnd = off + consumed;
+			if (compressedEnd > end) throw new IOException("corrupted zstd data: Huffman tree description exceeds block");
+			int pos = off + 1;
+			pos += weightTable.read(src, pos, compressedEnd, 255, MAX_WEIGHT_LOG);
+			count = readWeights(new BackwardBitReader(src, pos, compressedEnd));
+		} else {
+			// weights are stored directly, 4 bits each
+			count = header - 127;
+			consumed = 1 + (count + 1) / 2;
+			if (off + consumed > end) throw new IOException("corrupted zstd data: Huffman tree description exceeds block");
+			for (int i = 0; i < count; i++) {
+				int b = src[off + 1 + i / 2] & 0xff;
+				weights[i] = (i & 1) == 0 ? b >>> 4 : b & 0xf;
+			}
+		}
+		build(count);
+		return consumed;
+	}
+
+	private int readWeights(BackwardBitReader in) throws IOException {
+		FseTable t = weightTable;
+		int state1 = (int) in.read(t.accuracyLog);
+		int state2 = (int) in.read(t.accuracyLog);
+		int n = 0;
+		while (true) {
+			if (n > 253) throw new IOException("corrupted zstd data: too many Huffman weights");
+			weights[n++] = t.symbol[state1];
+			state1 = t.baseline[state1] + (int) in.read(t.nbBits[state1]);
+			if (in.overflowed()) {
+				weights[n++] = t.symbol[state2];
+				break;
+			}
+			weights[n++] = t.symbol[state2];
+			state2 = t.baseline[state2] + (int) in.read(t.nbBits[state2]);
+			if (in.overflowed()) {
+				weights[n++] = t.symbol[state1];
+				break;
+			}
+		}
+		return n;
+	}
+
+	private void build(int count) throws IOException {
+		int sum = 0;
+		for (int i = 0; i < count; i++) {
+			int w = weights[i];
+			if (w > MAX_TABLE_LOG) throw new IOException("corrupted zstd data: invalid Huffman weight");
+			if (w > 0) sum += 1 << (w - 1);
+		}
+		if (sum == 0) throw new IOException("corrupted zstd data: empty Huffman tree");
+		int maxBits = 32 - Integer.numberOfLeadingZeros(sum);
+		if (maxBits > MAX_TABLE_LOG) throw new IOException("corrupted zstd data: Huffman table log too large");
+		// the weight of the last symbol is implied by the remaining power of two
+		int rest = (1 << maxBits) - sum;
+		if (Integer.bitCount(rest) != 1) throw new IOException("corrupted zstd data: invalid Huffman weights");
+		weights[count++] = 32 - Integer.numberOfLeadingZeros(rest);
+
+		int[] rankStart = new int[maxBits + 2];
+		for (int i = 0; i < count; i++) {
+			rankStart[weights[i]]++;
+		}
+		int next = 0;
+		for (int w = 1; w <= maxBits; w++) {
+			int n = rankStart[w];
+			rankStart[w] = next;
+			next += n << (w - 1);
+		}
+		for (int s = 0; s < count; s++) {
+			int w = weights[s];
+			if (w == 0) continue;
+			int length = 1 << (w - 1);
+			int start = rankStart[w];
+			byte bits = (byte) (maxBits + 1 - w);
+			for (int u = start; u < start + length; u++) {
+				symbols[u] = (byte) s;
+				nbBits[u] = bits;
+			}
+			rankStart[w] += length;
+		}
+		tableLog = maxBits;
+	}
+
+	/**
+	 * Decodes a single Huffman coded stream.
+	 */
+	void decodeStream(byte[] src, int start, int end, byte[] dst, int dstOff, int count) throws IOException {
+		BackwardBitReader in = new BackwardBitReader(src, start, end);
+		int log = tableLog;
+		for (int i = dstOff, last = dstOff + count; i < last; i++) {
+			int index = in.peek(log);
+			dst[i] = symbols[index];
+			in.skip(nbBits[index]);
+		}
+		if (!in.finished()) {
+			throw new IOException("corrupted zstd data: Huffman stream size mismatch");
+		}
+	}
+}
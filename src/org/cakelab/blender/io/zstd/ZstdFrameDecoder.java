@@ -0,0 +1,497 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder for a single Zstandard frame (RFC 8878).
+ * <p>
+ * The decoder supports all block types and entropy coding modes
+ * of the format. It does not support dictionaries and it does not
+ * verify content checksums. The entire content of the frame is
+ * decoded into one array, thus the window size is irrelevant.
+ * </p>
+ * <p>
+ * Instances are not thread safe but can be reused for multiple frames.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public final class ZstdFrameDecoder {
+	/** Magic number of a Zstandard frame. */
+	public static final int MAGIC = 0xFD2FB528;
+	/** Skippable frames have magic numbers 0x184D2A50 to 0x184D2A5F. */
+	public static final int SKIPPABLE_MAGIC = 0x184D2A50;
+	public static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+	private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+	/* kinds of sequence symbols */
+	private static final int LL = 0;
+	private static final int OF = 1;
+	private static final int ML = 2;
+	private static final int[] MAX_SYMBOL = {35, 31, 52};
+	private static final int[] MAX_LOG = {9, 8, 9};
+
+	private static final int[] LL_BASELINE = {
+			0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+			16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+			8192, 16384, 32768, 65536 };
+	private static final int[] LL_BITS = {
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+			13, 14, 15, 16 };
+	private static final int[] ML_BASELINE = {
+			3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+			19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+			35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+			4099, 8195, 16387, 32771, 65539 };
+	private static final int[] ML_BITS = {
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+			12, 13, 14, 15, 16 };
+
+	private static final FseTable[] PREDEFINED = {FseTable.predefined(new short[] {
+			4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+			2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+			-1, -1, -1, -1 }, 6),
+		FseTable.predefined(new short[] {
+			1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+			1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1 }, 5),
+		FseTable.predefined(new short[] {
+			1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+			1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+			1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+			-1, -1, -1, -1, -1 }, 6)};
+
+	/**
+	 * Information from the header of a frame.
+	 */
+	public static final class FrameHeader {
+		/** size of the header including magic number */
+		public int headerSize;
+		/** size of the decompressed content or -1 if unknown */
+		public long contentSize;
+		public boolean hasChecksum;
+	}
+
+	private final FseTable[] own = {new FseTable(MAX_LOG[LL]), new FseTable(MAX_LOG[OF]), new FseTable(MAX_LOG[ML])};
+	private final HuffmanTable huffman = new HuffmanTable();
+	private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+
+	/* state valid for one frame */
+	/** current tables for LL, OF and ML */
+	private final FseTable[] tables = new FseTable[3];
+	private boolean huffmanValid;
+	private int rep1, rep2, rep3;
+	private int literalsLength;
+
+	private byte[] out;
+	private int outStart;
+	private int outPos;
+	private int outEnd;
+	private boolean growable;
+
+	/**
+	 * Decompresses one frame.
+	 *
+	 * @param src Buffer containing the frame.
+	 * @param off Start of the frame in src.
+	 * @param end End of the data in src.
+	 * @param contentSize Size of the decompressed content
+	 *        or -1 if unknown.
+	 * @return decompressed content.
+	 */
+	public byte[] decompress(byte[] src, int off, int end, int contentSize) throws IOException {
+		byte[] dst;
+		if (contentSize >= 0) {
+			dst = new byte[contentSize];
+			decompress(src, off, end, dst, 0, contentSize);
+		} else {
+			out = new byte[Math.max(MAX_BLOCK_SIZE, (end - off) * 4)];
+			outStart = outPos = 0;
+			outEnd = out.length;
+			growable = true;
+			decodeFrame(src, off, end);
+			dst = Arrays.copyOf(out, outPos);
+		}
+		out = null;
+		return dst;
+	}
+
+	/**
+	 * Decompresses one frame into the given buffer.
+	 *
+	 * @return number of bytes written to dst.
+	 */
+	public int decompress(byte[] src, int off, int end, byte[] dst, int dstOff, int dstLen) throws IOException {
+		out = dst;
+		outStart = outPos = dstOff;
+		outEnd = dstOff + dstLen;
+		growable = false;
+		decodeFrame(src, off, end);
+		out = null;
+		return outPos - outStart;
+	}
+
+	/**
+	 * Parses the header of a frame.
+	 *
+	 * @return header information or null if there is no frame (magic number mismatch).
+	 */
+	public static FrameHeader readFrameHeader(byte[] src, int off, int end) throws IOException {
+		if (end - off < 5 || readInt(src, off) != MAGIC) return null;
+		int pos = off + 4;
+		int descriptor = src[pos++] & 0xff;
+		int fcsFlag = descriptor >>> 6;
+		boolean singleSegment = (descriptor & 0x20) != 0;
+		if ((descriptor & 0x08) != 0) {
+			throw new IOException("corrupted zstd data: reserved bit set in frame header");
+		}
+		if (!singleSegment) pos++; // window descriptor
+		int dictIdSize = (descriptor & 3) == 3 ? 4 : (descriptor & 3);
+		int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+		if (pos + dictIdSize + fcsSize > end) {
+			throw new IOException("corrupted zstd data: truncated frame header");
+		}
+		long dictId = 0;
+		for (int i = dictIdSize - 1; i >= 0; i--) {
+			dictId = (dictId << 8) | (src[pos + i] & 0xff);
+		}
+		if (dictId != 0) {
+			throw new IOException("zstd frames using dictionaries are not supported");
+		}
+		pos += dictIdSize;
+		long contentSize = -1;
+		if (fcsSize > 0) {
+			contentSize = 0;
+			for (int i = fcsSize - 1; i >= 0; i--) {
+				contentSize = (contentSize << 8) | (src[pos + i] & 0xff);
+			}
+			if (fcsSize == 2) contentSize += 256;
+			pos += fcsSize;
+		}
+		FrameHeader header = new FrameHeader();
+		header.headerSize = pos - off;
+		header.contentSize = contentSize;
+		header.hasChecksum = (descriptor & 0x04) != 0;
+		return header;
+	}
+
+	/**
+	 * @return end of the frame in src.
+	 */
+	private int decodeFrame(byte[] src, int off, int end) throws IOException {
+		FrameHeader header = readFrameHeader(src, off, end);
+		if (header == null) throw new IOException("not a zstd frame");
+		Arrays.fill(tables, null);
+		huffmanValid = false;
+		rep1 = 1;
+		rep2 = 4;
+		rep3 = 8;
+
+		int pos = off + header.headerSize;
+		boolean last;
+		do {
+			if (pos + 3 > end) throw new IOException("corrupted zstd data: truncated block header");
+			int blockHeader = (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8 | (src[pos + 2] & 0xff) << 16;
+			pos += 3;
+			last = (blockHeader & 1) != 0;
+			int type = (blockHeader >>> 1) & 3;
+			int size = blockHeader >>> 3;
+			switch (type) {
+			case 0: // raw
+				if (pos + size > end) throw new IOException("corrupted zstd data: truncated block");
+				ensureOutput(size);
+				System.arraycopy(src, pos, out, outPos, size);
+				outPos += size;
+				pos += size;
+				break;
+			case 1: // RLE
+				if (pos >= end) throw new IOException("corrupted zstd data: truncated block");
+				ensureOutput(size);
+				Arrays.fill(out, outPos, outPos + size, src[pos]);
+				outPos += size;
+				pos++;
+				break;
+			case 2: // compressed
+				if (size > MAX_BLOCK_SIZE || pos + size > end) {
+					throw new IOException("corrupted zstd data: invalid block size");
+				}
+				decodeBlock(src, pos, pos + size);
+				pos += size;
+				break;
+			default:
+				throw new IOException("corrupted zstd data: reserved block type");
+			}
+		} while (!last);
+
+		if (header.hasChecksum) pos += 4;
+		if (header.contentSize >= 0 && header.contentSize != outPos - outStart) {
+			throw new IOException("corrupted zstd data: content size mismatch");
+		}
+		return pos;
+	}
+
+	private void decodeBlock(byte[] src, int start, int end) throws IOException {
+		int pos = decodeLiterals(src, start, end);
+		decodeSequences(src, pos, end);
+	}
+
+	private int decodeLiterals(byte[] src, int pos, int end) throws IOException {
+		int b0 = src[pos] & 0xff;
+		int type = b0 & 3;
+		int sizeFormat = (b0 >>> 2) & 3;
+		if (type < 2) {
+			// raw or RLE literals
+			int size;
+			switch (sizeFormat) {
+			case 1:
+				size = (b0 >>> 4) + ((src[pos + 1] & 0xff) << 4);
+				pos += 2;
+				break;
+			case 3:
+				size = (b0 >>> 4) + ((src[pos + 1] & 0xff) << 4) + ((src[pos + 2] & 0xff) << 12);
+				pos += 3;
+				break;
+			default:
+				size = b0 >>> 3;
+				pos += 1;
+			}
+			if (size > MAX_BLOCK_SIZE) throw new IOException("corrupted zstd data: literals too large");
+			if (type == 0) {
+				if (pos + size > end) throw new IOException("corrupted zstd data: truncated literals");
+				System.arraycopy(src, pos, literals, 0, size);
+				pos += size;
+			} else {
+				Arrays.fill(literals, 0, size, src[pos]);
+				pos += 1;
+			}
+			literalsLength = size;
+			return pos;
+		}
+
+		// Huffman coded literals
+		int regenerated;
+		int compressed;
+		int streams = sizeFormat == 0 ? 1 : 4;
+		switch (sizeFormat) {
+		case 2: {
+			int h = readInt(src, pos);
+			regenerated = (h >>> 4) & 0x3fff;
+			compressed = (h >>> 18) & 0x3fff;
+			pos += 4;
+			break;
+		}
+		case 3: {
+			long h = (readInt(src, pos) & 0xffffffffL) | (long)(src[pos + 4] & 0xff) << 32;
+			regenerated = (int) (h >>> 4) & 0x3ffff;
+			compressed = (int) (h >>> 22) & 0x3ffff;
+			pos += 5;
+			break;
+		}
+		default: {
+			int h = (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8 | (src[pos + 2] & 0xff) << 16;
+			regenerated = (h >>> 4) & 0x3ff;
+			compressed = (h >>> 14) & 0x3ff;
+			pos += 3;
+		}
+		}
+		if (regenerated > MAX_BLOCK_SIZE) throw new IOException("corrupted zstd data: literals too large");
+		int literalsEnd = pos + compressed;
+		if (literalsEnd > end) throw new IOException("corrupted zstd data: truncated literals");
+
+		if (type == 2) {
+			pos += huffman.read(src, pos, literalsEnd);
+			huffmanValid = true;
+		} else if (!huffmanValid) {
+			throw new IOException("corrupted zstd data: missing Huffman table for treeless literals");
+		}
+
+		if (streams == 1) {
+			huffman.decodeStream(src, pos, literalsEnd, literals, 0, regenerated);
+		} else {
+			if (pos + 6 > literalsEnd) throw new IOException("corrupted zstd data: truncated jump table");
+			int size1 = readShort(src, pos);
+			int size2 = readShort(src, pos + 2);
+			int size3 = readShort(src, pos + 4);
+			pos += 6;
+			int size4 = literalsEnd - pos - size1 - size2 - size3;
+			int segment = (regenerated + 3) / 4;
+			int lastSegment = regenerated - 3 * segment;
+			if (size4 < 1 || lastSegment < 0) throw new IOException("corrupted zstd data: invalid jump table");
+			huffman.decodeStream(src, pos, pos + size1, literals, 0, segment);
+			pos += size1;
+			huffman.decodeStream(src, pos, pos + size2, literals, segment, segment);
+			pos += size2;
+			huffman.decodeStream(src, pos, pos + size3, literals, 2 * segment, segment);
+			pos += size3;
+			huffman.decodeStream(src, pos, literalsEnd, literals, 3 * segment, lastSegment);
+		}
+		literalsLength = regenerated;
+		return literalsEnd;
+	}
+
+	private void decodeSequences(byte[] src, int pos, int end) throws IOException {
+		if (pos >= end) throw new IOException("corrupted zstd data: missing sequences section");
+		int b0 = src[pos++] & 0xff;
+		int count;
+		if (b0 < 128) {
+			count = b0;
+		} else if (b0 < 255) {
+			count = ((b0 - 128) << 8) + (src[pos++] & 0xff);
+		} else {
+			count = (src[pos] & 0xff) + ((src[pos + 1] & 0xff) << 8) + 0x7F00;
+			pos += 2;
+		}
+
+		if (count == 0) {
+			copyLiterals(0, literalsLength);
+			return;
+		}
+
+		int modes = src[pos++] & 0xff;
+		if ((modes & 3) != 0) throw new IOException("corrupted zstd data: reserved bits in sequences header");
+		pos = readTable(LL, (modes >>> 6) & 3, src, pos, end);
+		pos = readTable(OF, (modes >>> 4) & 3, src, pos, end);
+		pos = readTable(ML, (modes >>> 2) & 3, src, pos, end);
+
+		final FseTable ll = tables[LL];
+		final FseTable of = tables[OF];
+		final FseTable ml = tables[ML];
+		BackwardBitReader in = new BackwardBitReader(src, pos, end);
+		int llState = (int) in.read(ll.accuracyLog);
+		int ofState = (int) in.read(of.accuracyLog);
+		int mlState = (int) in.read(ml.accuracyLog);
+
+		int literalsPos = 0;
+		for (int i = 0; i < count; i++) {
+			int ofCode = of.symbol[ofState];
+			int llCode = ll.symbol[llState];
+			int mlCode = ml.symbol[mlState];
+			if (ofCode > MAX_SYMBOL[OF]) throw new IOException("corrupted zstd data: offset code out of range");
+
+			long offsetValue = (1L << ofCode) + in.read(ofCode);
+			int matchLength = ML_BASELINE[mlCode] + (int) in.read(ML_BITS[mlCode]);
+			int literalLength = LL_BASELINE[llCode] + (int) in.read(LL_BITS[llCode]);
+
+			int offset;
+			if (offsetValue > 3) {
+				offset = (int) (offsetValue - 3);
+				rep3 = rep2;
+				rep2 = rep1;
+				rep1 = offset;
+			} else {
+				int repeat = (int) offsetValue;
+				if (literalLength == 0) repeat++;
+				switch (repeat) {
+				case 1:
+					offset = rep1;
+					break;
+				case 2:
+					offset = rep2;
+					rep2 = rep1;
+					rep1 = offset;
+					break;
+				case 3:
+					offset = rep3;
+					rep3 = rep2;
+					rep2 = rep1;
+					rep1 = offset;
+					break;
+				default:
+					offset = rep1 - 1;
+					rep3 = rep2;
+					rep2 = rep1;
+					rep1 = offset;
+				}
+			}
+
+			if (literalsPos + literalLength > literalsLength) {
+				throw new IOException("corrupted zstd data: literal length exceeds literals");
+			}
+			copyLiterals(literalsPos, literalLength);
+			literalsPos += literalLength;
+			copyMatch(offset, matchLength);
+
+			if (i + 1 < count) {
+				llState = ll.baseline[llState] + (int) in.read(ll.nbBits[llState]);
+				mlState = ml.baseline[mlState] + (int) in.read(ml.nbBits[mlState]);
+				ofState = of.baseline[ofState] + (int) in.read(of.nbBits[ofState]);
+			}
+		}
+		if (!in.finished()) {
+			throw new IOException("corrupted zstd data: sequences bitstream size mismatch");
+		}
+		copyLiterals(literalsPos, literalsLength - literalsPos);
+	}
+
+	/**
+	 * Selects the decoding table of the given kind (LL, OF or ML) 
+	 * for the sequences of the current block.
+	 * 
+	 * @return position after the table description
+	 */
+	private int readTable(int kind, int mode, byte[] src, int pos, int end) throws IOException {
+		switch (mode) {
+		case 0:
+			tables[kind] = PREDEFINED[kind];
+			break;
+		case 1:
+			if (pos >= end) throw new IOException("corrupted zstd data: truncated sequences header");
+			int symbol = src[pos++] & 0xff;
+			if (symbol > MAX_SYMBOL[kind]) throw new IOException("corrupted zstd data: RLE symbol out of range");
+			own[kind].initRle(symbol);
+			tables[kind] = own[kind];
+			break;
+		case 2:
+			pos += own[kind].read(src, pos, end, MAX_SYMBOL[kind], MAX_LOG[kind]);
+			tables[kind] = own[kind];
+			break;
+		default:
+			if (tables[kind] == null) throw new IOException("corrupted zstd data: missing table for repeat mode");
+		}
+		return pos;
+	}
+
+	private void copyLiterals(int from, int length) throws IOException {
+		ensureOutput(length);
+		System.arraycopy(literals, from, out, outPos, length);
+		outPos += length;
+	}
+
+	private void copyMatch(int offset, int length) throws IOException {
+		if (offset <= 0 || offset > outPos - outStart) {
+			throw new IOException("corrupted zstd data: invalid match offset");
+		}
+		ensureOutput(length);
+		int from = outPos - offset;
+		if (offset >= length) {
+			System.arraycopy(out, from, out, outPos, length);
+			outPos += length;
+		} else {
+			// overlapping copy repeats the last 'offset' bytes
+			for (int i = 0; i < length; i++) {
+				out[outPos++] = out[from++];
+			}
+		}
+	}
+
+	private void ensureOutput(int length) throws IOException {
+		if (outPos + length <= outEnd) return;
+		if (!growable) throw new IOException("corrupted zstd data: content exceeds expected size");
+		int capacity = Math.max(out.length + (out.length >>> 1), outPos + length);
+		out = Arrays.copyOf(out, capacity);
+		outEnd = capacity;
+	}
+
+	private static int readShort(byte[] src, int pos) {
+		return (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8;
+	}
+
+	static int readInt(byte[] src, int pos) {
+		return (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8 | (src[pos + 2] & 0xff) << 16 | (src[pos + 3] & 0xff) << 24;
+	}
+}
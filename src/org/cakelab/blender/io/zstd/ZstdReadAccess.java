@@ -0,0 +1,206 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.cakelab.blender.io.Encoding;
+import org.cakelab.blender.io.util.CDataReadWriteAccess;
+
+/**
+ * Read only random access to the decompressed content of a
+ * {@link ZstdSeekableFile}.
+ * <p>
+ * Data is read from the frame containing the current position.
+ * Frames are decompressed on demand. Skipping data or changing
+ * the offset does not decompress anything.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class ZstdReadAccess extends CDataReadWriteAccess {
+
+	private ZstdSeekableFile file;
+	private final ByteOrder byteOrder;
+	private long position;
+
+	/* frame containing the last read position */
+	private ByteBuffer frame;
+	private long frameStart;
+	private long frameEnd;
+
+	private final byte[] scratch = new byte[8];
+	private final ByteBuffer scratchBuffer;
+	private int index;
+
+	public ZstdReadAccess(ZstdSeekableFile file, Encoding encoding) {
+		super(encoding.getAddressWidth());
+		this.file = file;
+		this.byteOrder = encoding.getByteOrder();
+		this.scratchBuffer = ByteBuffer.wrap(scratch).order(byteOrder);
+	}
+
+	/**
+	 * Provides a buffer containing the next 'size' bytes at {@link #index}
+	 * and advances the position.
+	 */
+	private ByteBuffer fetch(int size) throws IOException {
+		if (frame == null || position < frameStart || position + size > frameEnd) {
+			if (position + size > file.size()) throw new EOFException();
+			int i = file.frameIndex(position);
+			frame = ByteBuffer.wrap(file.getFrame(i)).order(byteOrder);
+			frameStart = file.getFrameStart(i);
+			frameEnd = frameStart + frame.capacity();
+			if (position + size > frameEnd) {
+				// crosses frame boundary
+				file.read(position, scratch, 0, size);
+				position += size;
+				index = 0;
+				return scratchBuffer;
+			}
+		}
+		index = (int) (position - frameStart);
+		position += size;
+		return frame;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		ByteBuffer b = fetch(1);
+		return b.get(index);
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		ByteBuffer b = fetch(2);
+		return b.getShort(index);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		ByteBuffer b = fetch(4);
+		return b.getInt(index);
+	}
+
+	@Override
+	public long readInt64() throws IOException {
+		ByteBuffer b = fetch(8);
+		return b.getLong(index);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		ByteBuffer b = fetch(4);
+		return b.getFloat(index);
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		ByteBuffer b = fetch(8);
+		return b.getDouble(index);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if (frame != null && position >= frameStart && position + len <= frameEnd) {
+			System.arraycopy(frame.array(), (int) (position - frameStart), b, off, len);
+		} else {
+			file.read(position, b, off, len);
+		}
+		position += len;
+	}
+
+	@Override
+	public void writeByte(int value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeInt64(long value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeFully(byte[] b, int off, int len) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void padding(int alignment, boolean extend) throws IOException {
+		if (extend) throw new UnsupportedOperationException();
+		padding(alignment);
+	}
+
+	@Override
+	public void padding(int alignment) throws IOException {
+		long misalignment = position % alignment;
+		if (misalignment > 0) {
+			long correction = alignment - misalignment;
+			if (position + correction <= file.size()) {
+				position += correction;
+			} else {
+				throw new IOException("padding beyond file boundary without write permission.");
+			}
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, file.size() - position);
+	}
+
+	@Override
+	public void offset(long offset) throws IOException {
+		position = offset;
+	}
+
+	@Override
+	public long offset() throws IOException {
+		return position;
+	}
+
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	/**
+	 * Closes the underlying {@link ZstdSeekableFile}.
+	 */
+	@Override
+	public void close() throws IOException {
+		frame = null;
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Provides random access to the decompressed content of a
+ * Zstandard compressed file.
+ * <p>
+ * Blender (3.0 and later) writes compressed files as a sequence of
+ * independent frames followed by a seek table in a skippable frame
+ * (see the zstd "seekable format"). The seek table gives the
+ * compressed and decompressed size of each frame, which allows to
+ * decompress only those frames, which contain requested data.
+ * Files without a seek table are indexed by scanning the frame
+ * headers.
+ * </p>
+ * <p>
+ * Decompressed frames are kept in a cache with limited capacity
+ * (least recently used frames are dropped). Multiple frames are
+ * decompressed in parallel on a {@link ForkJoinPool}.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class ZstdSeekableFile implements Closeable {
+	/** Magic number at the end of the seek table. */
+	public static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+	/** Magic number of the skippable frame containing the seek table. */
+	public static final int SEEK_TABLE_MAGIC = 0x184D2A5E;
+
+	/** Default number of decompressed frames kept in cache. */
+	public static final int DEFAULT_CACHE_SIZE = 64;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	/** offsets of frames in the file (frameCount + 1 entries) */
+	private long[] compressedOffsets;
+	/** offsets of frames in the decompressed content (frameCount + 1 entries) */
+	private long[] decompressedOffsets;
+	private int frameCount;
+
+	private final ForkJoinPool pool;
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+	private final LinkedHashMap<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+			return size() > cacheSize;
+		}
+	};
+
+	/** decoders for reuse by worker threads */
+	private final ThreadLocal<ZstdFrameDecoder> decoders = new ThreadLocal<ZstdFrameDecoder>() {
+		@Override
+		protected ZstdFrameDecoder initialValue() {
+			return new ZstdFrameDecoder();
+		}
+	};
+
+	public ZstdSeekableFile(File file) throws IOException {
+		this(file, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param file Compressed file.
+	 * @param pool Pool used to decompress frames in parallel.
+	 */
+	public ZstdSeekableFile(File file, ForkJoinPool pool) throws IOException {
+		this.pool = pool;
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		try {
+			if (!readSeekTable()) {
+				scanFrames();
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the seek table at the end of the file.
+	 *
+	 * @return false, if the file has no (valid) seek table.
+	 */
+	private boolean readSeekTable() throws IOException {
+		long fileSize = channel.size();
+		if (fileSize < 17) return false;
+		ByteBuffer footer = read(fileSize - 9, 9);
+		long count = footer.getInt(0) & 0xffffffffL;
+		int descriptor = footer.get(4) & 0xff;
+		if (footer.getInt(5) != SEEKABLE_MAGIC || (descriptor & 0x7c) != 0) return false;
+
+		int entrySize = (descriptor & 0x80) != 0 ? 12 : 8;
+		long tableSize = count * entrySize + 9;
+		long tableStart = fileSize - tableSize - 8;
+		if (tableStart < count * 8 || tableSize > Integer.MAX_VALUE) return false;
+		ByteBuffer table = read(tableStart, (int) (tableSize - 9 + 8));
+		if (table.getInt(0) != SEEK_TABLE_MAGIC || (table.getInt(4) & 0xffffffffL) != tableSize) return false;
+
+		frameCount = (int) count;
+		compressedOffsets = new long[frameCount + 1];
+		decompressedOffsets = new long[frameCount + 1];
+		for (int i = 0; i < frameCount; i++) {
+			int entry = 8 + i * entrySize;
+			int decompressedSize = table.getInt(entry + 4);
+			if (decompressedSize < 0) throw new IOException("zstd frames larger than 2GB are not supported");
+			compressedOffsets[i + 1] = compressedOffsets[i] + (table.getInt(entry) & 0xffffffffL);
+			decompressedOffsets[i + 1] = decompressedOffsets[i] + decompressedSize;
+		}
+		return compressedOffsets[frameCount] == tableStart;
+	}
+
+	/**
+	 * Builds the frame index by walking through all frame and block headers.
+	 */
+	private void scanFrames() throws IOException {
+		long fileSize = channel.size();
+		ArrayList<long[]> frames = new ArrayList<long[]>();
+		long position = 0;
+		long decompressed = 0;
+		byte[] header = new byte[18];
+		while (position < fileSize) {
+			int available = (int) Math.min(header.length, fileSize - position);
+			readFully(position, header, 0, available);
+			if (available < 8) throw new EOFException("truncated zstd frame");
+			int magic = ZstdFrameDecoder.readInt(header, 0);
+			if ((magic & ZstdFrameDecoder.SKIPPABLE_MAGIC_MASK) == ZstdFrameDecoder.SKIPPABLE_MAGIC) {
+				position += 8 + (ZstdFrameDecoder.readInt(header, 4) & 0xffffffffL);
+				continue;
+			}
+			ZstdFrameDecoder.FrameHeader frame = ZstdFrameDecoder.readFrameHeader(header, 0, available);
+			if (frame == null) throw new IOException("not a zstd compressed file");
+
+			long end = position + frame.headerSize;
+			byte[] blockHeader = new byte[3];
+			boolean last;
+			do {
+				readFully(end, blockHeader, 0, 3);
+				int h = (blockHeader[0] & 0xff) | (blockHeader[1] & 0xff) << 8 | (blockHeader[2] & 0xff) << 16;
+				last = (h & 1) != 0;
+				end += 3 + (((h >>> 1) & 3) == 1 ? 1 : h >>> 3);
+			} while (!last);
+			if (frame.hasChecksum) end += 4;
+
+			long contentSize = frame.contentSize;
+			if (contentSize < 0) {
+				// need to decompress the frame to find out
+				byte[] data = decompress(position, (int) (end - position), -1);
+				contentSize = data.length;
+				putCache(frames.size(), data);
+			}
+			if (contentSize > Integer.MAX_VALUE) throw new IOException("zstd frames larger than 2GB are not supported");
+			frames.add(new long[] {position, decompressed});
+			decompressed += contentSize;
+			position = end;
+		}
+		frameCount = frames.size();
+		compressedOffsets = new long[frameCount + 1];
+		decompressedOffsets = new long[frameCount + 1];
+		for (int i = 0; i < frameCount; i++) {
+			compressedOffsets[i] = frames.get(i)[0];
+			decompressedOffsets[i] = frames.get(i)[1];
+		}
+		compressedOffsets[frameCount] = position;
+		decompressedOffsets[frameCount] = decompressed;
+	}
+
+	/**
+	 * @return size of the decompressed content.
+	 */
+	public long size() {
+		return decompressedOffsets[frameCount];
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Sets the maximum number of decompressed frames kept in memory.
+	 */
+	public void setCacheSize(int frames) {
+		synchronized (cache) {
+			cacheSize = frames;
+			while (cache.size() > cacheSize) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Decompresses all frames in parallel and keeps them in memory
+	 * (cache size is adjusted accordingly).
+	 */
+	public void decompressAll() throws IOException {
+		setCacheSize(Math.max(cacheSize, frameCount));
+		frames(0, frameCount - 1);
+	}
+
+	/**
+	 * Decompresses the whole content into the given file.
+	 * Frames are decompressed and written in parallel.
+	 */
+	public void decompressTo(File target) throws IOException {
+		final RandomAccessFile out = new RandomAccessFile(target, "rw");
+		try {
+			out.setLength(size());
+			final FileChannel outChannel = out.getChannel();
+			invoke(0, frameCount - 1, new FrameAction() {
+				@Override
+				void run(int frame) throws IOException {
+					// bypasses the cache, since frames are not needed anymore
+					ByteBuffer data = ByteBuffer.wrap(decompress(frame));
+					long position = decompressedOffsets[frame];
+					while (data.hasRemaining()) {
+						position += outChannel.write(data, position);
+					}
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads decompressed content.
+	 *
+	 * @param position Position in the decompressed content.
+	 */
+	public void read(long position, byte[] b, int off, int len) throws IOException {
+		if (len == 0) return;
+		if (position < 0 || position + len > size()) throw new EOFException("read beyond end of decompressed content");
+		int first = frameIndex(position);
+		int last = frameIndex(position + len - 1);
+		byte[][] frames = frames(first, last);
+		for (int i = first; i <= last; i++) {
+			byte[] frame = frames[i - first];
+			int start = (int) (position - decompressedOffsets[i]);
+			int n = Math.min(len, frame.length - start);
+			System.arraycopy(frame, start, b, off, n);
+			off += n;
+			len -= n;
+			position += n;
+		}
+	}
+
+	/**
+	 * @return index of the frame containing the given position of the decompressed content.
+	 */
+	public int frameIndex(long position) {
+		int i = Arrays.binarySearch(decompressedOffsets, 0, frameCount + 1, position);
+		if (i < 0) {
+			i = -i - 2;
+		} else {
+			// skip empty frames
+			while (i < frameCount - 1 && decompressedOffsets[i + 1] == position) i++;
+		}
+		return Math.min(i, frameCount - 1);
+	}
+
+	/**
+	 * Provides decompressed data of the given range of frames. Missing
+	 * frames are decompressed in parallel.
+	 */
+	private byte[][] frames(int first, int last) throws IOException {
+		final byte[][] frames = new byte[last - first + 1][];
+		final ArrayList<Integer> missing = new ArrayList<Integer>();
+		synchronized (cache) {
+			for (int i = first; i <= last; i++) {
+				frames[i - first] = cache.get(i);
+				if (frames[i - first] == null) missing.add(i);
+			}
+		}
+		if (missing.size() == 1) {
+			int i = missing.get(0);
+			frames[i - first] = frame(i);
+		} else if (missing.size() > 1) {
+			final int offset = first;
+			invoke(0, missing.size() - 1, new FrameAction() {
+				@Override
+				void run(int index) throws IOException {
+					int i = missing.get(index);
+					frames[i - offset] = frame(i);
+				}
+			});
+		}
+		return frames;
+	}
+
+	/**
+	 * Provides the decompressed data of one frame.
+	 */
+	public byte[] getFrame(int i) throws IOException {
+		return frame(i);
+	}
+
+	/**
+	 * @return position of the frame in the decompressed content.
+	 */
+	public long getFrameStart(int i) {
+		return decompressedOffsets[i];
+	}
+
+	private byte[] frame(int i) throws IOException {
+		byte[] data;
+		synchronized (cache) {
+			data = cache.get(i);
+		}
+		if (data == null) {
+			data = decompress(i);
+			putCache(i, data);
+		}
+		return data;
+	}
+
+	private byte[] decompress(int i) throws IOException {
+		return decompress(compressedOffsets[i], (int) (compressedOffsets[i + 1] - compressedOffsets[i]),
+				(int) (decompressedOffsets[i + 1] - decompressedOffsets[i]));
+	}
+
+	private void putCache(int i, byte[] data) {
+		synchronized (cache) {
+			cache.put(i, data);
+		}
+	}
+
+	private byte[] decompress(long position, int size, int contentSize) throws IOException {
+		byte[] compressed = new byte[size];
+		readFully(position, compressed, 0, size);
+		return decoders.get().decompress(compressed, 0, size, contentSize);
+	}
+
+	private ByteBuffer read(long position, int size) throws IOException {
+		byte[] data = new byte[size];
+		readFully(position, data, 0, size);
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void readFully(long position, byte[] b, int off, int len) throws IOException {
+		FileChannel channel = this.channel;
+		if (channel == null) throw new IOException("file closed");
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) throw new EOFException();
+			position += n;
+		}
+	}
+
+	private abstract static class FrameAction {
+		abstract void run(int index) throws IOException;
+	}
+
+	/**
+	 * Runs the given action for all indices in [first, last] in parallel.
+	 */
+	private void invoke(int first, int last, FrameAction action) throws IOException {
+		if (last < first) return;
+		try {
+			pool.invoke(new FrameTask(first, last, action));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static class FrameTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int first;
+		private final int last;
+		private final FrameAction action;
+
+		FrameTask(int first, int last, FrameAction action) {
+			this.first = first;
+			this.last = last;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (first == last) {
+				try {
+					action.run(first);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				int middle = (first + last) >>> 1;
+				invokeAll(new FrameTask(first, middle, action), new FrameTask(middle + 1, last, action));
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel = null;
+		synchronized (cache) {
+			cache.clear();
+		}
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+}
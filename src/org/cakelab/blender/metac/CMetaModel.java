@@ -29,6 +29,12 @@ import org.cakelab.blender.metac.CType.CKind;
  * for char*[]. 
  * </p>
  * 
+ * <p>
+ * Meta models are shared between files (see DNACache). Lists 
+ * returned by the model and its structs are copies. The types 
+ * must not be modified.
+ * </p>
+ * 
  * @see CType
  * @see CStruct
  * @see CField
@@ -276,8 +282,11 @@ public class CMetaModel {
 	}
 
 
+	/**
+	 * @return copy of the list of all structs, indexed by their sdna index.
+	 */
 	public ArrayList<CStruct> getStructs() {
-		return structs;
+		return new ArrayList<CStruct>(structs);
 	}
 
 
@@ -21,12 +21,15 @@ public class CStruct extends CType {
 		this.sdnaIndex = bstruct.getIndex();
 	}
 
-	public void addField(CField cfield) {
+	void addField(CField cfield) {
 		fields.add(cfield);
 	}
 
+	/**
+	 * @return copy of the list of fields.
+	 */
 	public ArrayList<CField> getFields() {
-		return fields;
+		return new ArrayList<CField>(fields);
 	}
 
 	public int getSdnaIndex() {
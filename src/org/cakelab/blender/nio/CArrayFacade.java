@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.nio.ReadOnlyBufferException;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 import java.util.Iterator;
 
 import org.cakelab.blender.io.*;
@@ -112,6 +111,8 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 	 * exactly the size of one step from one element to the next.
 	 */
 	protected long componentSize;
+	/** Interned runtime type information of this array. */
+	CTypeDescriptor.ArrayType arrayType;
 
 	/**
 	 * Copy constructor.
@@ -123,6 +124,7 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 		this.targetTypeList = other.targetTypeList;
 		this.dimensions = other.dimensions;
 		this.componentSize = other.componentSize;
+		this.arrayType = other.arrayType;
 	}
 	
 	/**
@@ -141,10 +143,20 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 	 * @param __blockTable Block table of the associated blender file.
 	 */
 	public CArrayFacade(long baseAddress, Class<?>[] targetTypeList, int[] dimensions, Block block, BlockTable __blockTable) {
-		super(baseAddress, Arrays.copyOfRange(targetTypeList, dimensions.length-1, targetTypeList.length), block, __blockTable);
-		this.targetTypeList = targetTypeList;
+		this(baseAddress, CTypeDescriptor.ArrayType.of(targetTypeList, dimensions), dimensions, block, __blockTable);
+	}
+
+	/**
+	 * Constructor for arrays with a known type descriptor.
+	 * 
+	 * @param dimensions Length of each dimension. Has to match the inner dimensions of the arrayType.
+	 */
+	CArrayFacade(long baseAddress, CTypeDescriptor.ArrayType arrayType, int[] dimensions, Block block, BlockTable __blockTable) {
+		super(baseAddress, arrayType.elementaryType, block, __blockTable);
+		this.arrayType = arrayType;
+		this.targetTypeList = arrayType.types;
 		this.dimensions = dimensions;
-		this.componentSize = calcComponentSize(targetTypeList[dimensions.length-1]);
+		this.componentSize = targetSize * arrayType.innerLength;
 	}
 	
 	/**
@@ -189,17 +201,17 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 			assert(targetTypeList[0].equals(CArrayFacade.class));
 			return (T) new CArrayFacade<T>(
 					address,
-					Arrays.copyOfRange(targetTypeList, 1, targetTypeList.length), 
-					Arrays.copyOfRange(dimensions, 1, dimensions.length), 
+					arrayType.getComponentType(), 
+					arrayType.innerDimensions, 
 					__io__block,
 					__io__blockTable);
-		} else if (targetTypeList[0].equals(CPointer.class)) {
+		} else if (targetKind == CTypeKind.POINTER) {
 			// array of pointers
 			long pointerAddress = __io__block.readLong(address);
-			Class<?>[] type = Arrays.copyOfRange(targetTypeList, 1, targetTypeList.length);
-			Block block = __io__blockTable.getBlock(pointerAddress, type);
+			CTypeDescriptor type = targetType.getTarget();
+			Block block = __io__blockTable.getBlock(pointerAddress, type.types);
 			return (T) new CPointer(pointerAddress, type, block, __io__blockTable);
-		} else if (isPrimitive(targetTypeList[0])) {
+		} else if (CTypeKind.isScalar(targetKind)) {
 			return getScalar(address);
 		} else {
 			return getCFacade(address);
@@ -248,7 +260,7 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 	 * is null terminated.
 	 */
 	public String asString() throws IOException {
-		if ((targetTypeList[0].equals(byte.class) || targetTypeList[0].equals(Byte.class)) && dimensions.length == 1) {
+		if (targetKind == CTypeKind.BYTE && dimensions.length == 1) {
 			byte[] bytes = toByteArray();
 			int len = 0;
 			for (; len < bytes.length && bytes[len] != 0; len++);
@@ -290,7 +302,7 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 	 */
 	@SuppressWarnings("unchecked")
 	public void fromString(String str, Charset charset, boolean addNullTermination) throws IOException {
-		if ((targetTypeList[0].equals(byte.class) || targetTypeList[0].equals(Byte.class)) && dimensions.length == 1) {
+		if (targetKind == CTypeKind.BYTE && dimensions.length == 1) {
 			byte[] bytes = str.getBytes(charset);
 			super.fromArray(bytes, 0, bytes.length);
 			if (addNullTermination) set(bytes.length, (T)Byte.valueOf((byte) 0));
@@ -389,20 +401,44 @@ public class CArrayFacade<T> extends CPointer<T> implements Iterable<T>{
 	
 
 	/**
-	 * Calculates the number of elements contained in the array over all dimensions (in case of multi-dimensional arrays).
-	 * @param elementaryType
+	 * Returns a facade on the elements of this array, which provides
+	 * access to them without boxing. Multi-dimensional arrays are 
+	 * flattened, i.e. the returned facade covers the elements of all
+	 * dimensions. The elementary type of this array has to be float.
 	 */
-	private long calcComponentSize(Class<?> elementaryType) {
-		long size = __io__sizeof(elementaryType);
-		if (dimensions.length > 1) {
-			// array of arrays
-			long length = dimensions[1];
-			for (int i = 2; i < dimensions.length; i++) {
-				length *= dimensions[i];
-			}
-			size = size * length;
+	public CFloatArrayFacade toCFloatArrayFacade() {
+		return toCFloatArrayFacade(elementaryLength());
+	}
+
+	/**
+	 * Returns a facade on the elements of this array, which provides
+	 * access to them without boxing. Multi-dimensional arrays are 
+	 * flattened, i.e. the returned facade covers the elements of all
+	 * dimensions. The elementary type of this array has to be int.
+	 */
+	public CIntArrayFacade toCIntArrayFacade() {
+		return toCIntArrayFacade(elementaryLength());
+	}
+
+	/**
+	 * Returns a facade on the elements of this array, which provides
+	 * access to them without boxing. Multi-dimensional arrays are 
+	 * flattened, i.e. the returned facade covers the elements of all
+	 * dimensions. The elementary type of this array has to be short.
+	 */
+	public CShortArrayFacade toCShortArrayFacade() {
+		return toCShortArrayFacade(elementaryLength());
+	}
+
+	/**
+	 * @return number of elements of the elementary type over all dimensions.
+	 */
+	private int elementaryLength() {
+		int length = dimensions[0];
+		for (int i = 1; i < dimensions.length; i++) {
+			length *= dimensions[i];
 		}
-		return size;
+		return length;
 	}
 
 	/** 
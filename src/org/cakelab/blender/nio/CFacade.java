@@ -2,7 +2,6 @@ package org.cakelab.blender.nio;
 
 
 import java.io.IOException;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteOrder;
@@ -105,6 +104,41 @@ public abstract class CFacade {
 		this.__io__block = other.__io__block;
 		this.__io__blockTable = other.__io__blockTable;
 		this.__io__arch_index = other.__io__arch_index;
+		this.__io__pointersize = other.__io__pointersize;
+	}
+
+	/**
+	 * Moves this facade to another instance of the same type. 
+	 * This allows to visit many instances of a struct with just 
+	 * one facade (see also {@link StructCursor}).
+	 * <p>
+	 * The block of the facade is looked up in the block table only 
+	 * if the address lies outside of the current block.
+	 * </p>
+	 * <p>
+	 * <b>Attention:</b> Facades are usually considered to stay at their 
+	 * address. Rebind only facades, which are not referenced elsewhere. 
+	 * Pointers are supposed to be immutable, use {@link CPointerMutable} 
+	 * instead.
+	 * </p>
+	 * @param address Start address of the instance.
+	 */
+	public void __io__rebind(long address) {
+		if (__io__block == null || !__io__block.contains(address)) {
+			__io__block = __io__blockTable.getBlock(address, getClass());
+		}
+		__io__address = address;
+	}
+
+	/**
+	 * Moves this facade to another instance of the same type in the 
+	 * given block (see {@link #__io__rebind(long)}).
+	 * @param address Start address of the instance.
+	 * @param block The block which contains the address.
+	 */
+	public void __io__rebind(long address, Block block) {
+		__io__address = address;
+		__io__block = block;
 	}
 
 
@@ -130,34 +164,43 @@ public abstract class CFacade {
 	 * @return sizeof(ctype)
 	 */
 	public static long __io__sizeof(Class<?> ctype, int addressWidth) {
-		if (ctype.equals(CPointer.class)) {
+		return __io__sizeof(CTypeKind.of(ctype), ctype, addressWidth);
+	}
+
+	/**
+	 * Same as {@link #__io__sizeof(Class, int)} for a type which kind 
+	 * was already determined.
+	 */
+	static long __io__sizeof(int kind, Class<?> ctype, int addressWidth) {
+		switch (kind) {
+		case CTypeKind.POINTER:
 			return addressWidth;
-		} else if (ctype.equals(CArrayFacade.class)) {
+		case CTypeKind.ARRAY:
 			throw new IllegalArgumentException("no generic runtime type information for array types available");
-		} else if (__io__subclassof(ctype, CFacade.class)){
+		case CTypeKind.STRUCT:
 			CMetaData typeInfo = ctype.getAnnotation(CMetaData.class);
 			return addressWidth == 8 ? typeInfo.size64() : typeInfo.size32();
-		} else if (ctype.equals(byte.class) || ctype.equals(Byte.class)) {
+		case CTypeKind.BYTE:
 			return 1;
-		} else if (ctype.equals(short.class) || ctype.equals(Short.class)) {
+		case CTypeKind.SHORT:
 			return 2;
-		} else if (ctype.equals(int.class) || ctype.equals(Integer.class)) {
+		case CTypeKind.INT:
 			return 4;
-		} else if (ctype.equals(long.class) || ctype.equals(Long.class)) {
+		case CTypeKind.LONG:
 			return addressWidth;
-		} else if (ctype.equals(int64.class)) {
+		case CTypeKind.INT64:
 			return 8;
-		} else if (ctype.equals(float.class) || ctype.equals(Float.class)) {
+		case CTypeKind.FLOAT:
 			return 4;
-		} else if (ctype.equals(double.class) || ctype.equals(Double.class)) {
+		case CTypeKind.DOUBLE:
 			return 8;
-		} else if (ctype.equals(Object.class)) {
+		case CTypeKind.VOID:
 			/* 
 			 * special case: this type of pointer cannot support pointer 
 			 * arithmetics, same way as in C.
 			 */
 			return 0;
-		} else {
+		default:
 			throw new IllegalArgumentException("missing size information for type '" + ctype.getSimpleName() + "'");
 		}
 	}
@@ -234,17 +277,29 @@ public abstract class CFacade {
 	 * @throws InvocationTargetException
 	 * @throws NoSuchMethodException
 	 * @throws SecurityException
+	 * @see #__io__getFactory(Class)
 	 */
 	public static CFacade __io__newInstance(Class<? extends CFacade> type, long address,
 			Block block, BlockTable blockTable) throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		Constructor<?> constructor = type.getDeclaredConstructor(long.class, Block.class, BlockTable.class);
-		return (CFacade) constructor.newInstance(address, block, blockTable);
+		return __io__getFactory(type).newInstance(address, block, blockTable);
 	}
 
-	static CFacade __io__newInstance(Constructor<?> constructor, Class<? extends CFacade> type, long address,
-			Block block, BlockTable blockTable) throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		return (CFacade) constructor.newInstance(address, block, blockTable);
+	/**
+	 * Returns the factory which instantiates facades of the given type.
+	 * The factory is created once per class and cached.
+	 * @throws IllegalArgumentException if the type has no constructor (long, Block, BlockTable).
+	 */
+	public static FacadeFactory __io__getFactory(Class<?> type) {
+		return FACTORIES.get(type);
 	}
+	
+	/** Cache of facade factories. */
+	private static final ClassValue<FacadeFactory> FACTORIES = new ClassValue<FacadeFactory>() {
+		@Override
+		protected FacadeFactory computeValue(Class<?> type) {
+			return FacadeFactories.create(type);
+		}
+	};
 
 	
 	
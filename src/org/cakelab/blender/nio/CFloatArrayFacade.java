@@ -0,0 +1,101 @@
+package org.cakelab.blender.nio;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Facade for one-dimensional arrays of <code>float</code>, which
+ * provides access to its elements without boxing.
+ * <p>
+ * The facade is a {@link CArrayFacade}&lt;Float&gt; and can be used
+ * as such. Use {@link #getFloat(int)}, {@link #setFloat(int, float)},
+ * {@link #doubleIterator()} or {@link #doubleStream()} to access
+ * elements as primitive values. Instances are obtained from a
+ * pointer or array of matching type via
+ * {@link CPointer#toCFloatArrayFacade(int)} or
+ * {@link CArrayFacade#toCFloatArrayFacade()}.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class CFloatArrayFacade extends CPrimitiveArrayFacade<Float> {
+
+	private static final Class<?>[] TYPE = new Class<?>[]{Float.class};
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other
+	 */
+	public CFloatArrayFacade(CFloatArrayFacade other) {
+		super(other);
+	}
+
+	/**
+	 * Attaches the facade to existing data in a block of a blender file.
+	 *
+	 * @param baseAddress virtual start address of the array (file specific).
+	 * @param length number of elements of the array.
+	 * @param block Block, which contains the array.
+	 * @param __blockTable Block table of the associated blender file.
+	 */
+	public CFloatArrayFacade(long baseAddress, int length, Block block, BlockTable __blockTable) {
+		super(baseAddress, TYPE, length, block, __blockTable);
+	}
+
+	/**
+	 * @param index of the element.
+	 * @return array[index]
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public float getFloat(int index) throws IOException {
+		return __io__block.readFloat(getElementAddress(index));
+	}
+
+	/**
+	 * Sets the element at the given index.
+	 * I.e. <code>array[index] = value;</code>
+	 * @param index of the element.
+	 * @param value new value of the element.
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public void setFloat(int index, float value) throws IOException {
+		__io__block.writeFloat(getElementAddress(index), value);
+	}
+
+	/**
+	 * Iterator over the elements of this array, which delivers
+	 * them as primitive values (widened to double).
+	 * Does not support {@link PrimitiveIterator.OfDouble#remove()}.
+	 */
+	public PrimitiveIterator.OfDouble doubleIterator() {
+		return new FloatIterator();
+	}
+
+	/**
+	 * @return Sequential stream of the elements of this array (widened to double).
+	 */
+	public DoubleStream doubleStream() {
+		return StreamSupport.doubleStream(Spliterators.spliterator(doubleIterator(), length(), CHARACTERISTICS), false);
+	}
+
+	private class FloatIterator extends ElementIterator implements PrimitiveIterator.OfDouble {
+		@Override
+		public double nextDouble() {
+			try {
+				return getFloat(nextIndex());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package org.cakelab.blender.nio;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Facade for one-dimensional arrays of <code>int</code>, which
+ * provides access to its elements without boxing.
+ * <p>
+ * The facade is a {@link CArrayFacade}&lt;Integer&gt; and can be used
+ * as such. Use {@link #getInt(int)}, {@link #setInt(int, int)},
+ * {@link #intIterator()} or {@link #intStream()} to access
+ * elements as primitive values. Instances are obtained from a
+ * pointer or array of matching type via
+ * {@link CPointer#toCIntArrayFacade(int)} or
+ * {@link CArrayFacade#toCIntArrayFacade()}.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class CIntArrayFacade extends CPrimitiveArrayFacade<Integer> {
+
+	private static final Class<?>[] TYPE = new Class<?>[]{Integer.class};
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other
+	 */
+	public CIntArrayFacade(CIntArrayFacade other) {
+		super(other);
+	}
+
+	/**
+	 * Attaches the facade to existing data in a block of a blender file.
+	 *
+	 * @param baseAddress virtual start address of the array (file specific).
+	 * @param length number of elements of the array.
+	 * @param block Block, which contains the array.
+	 * @param __blockTable Block table of the associated blender file.
+	 */
+	public CIntArrayFacade(long baseAddress, int length, Block block, BlockTable __blockTable) {
+		super(baseAddress, TYPE, length, block, __blockTable);
+	}
+
+	/**
+	 * @param index of the element.
+	 * @return array[index]
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public int getInt(int index) throws IOException {
+		return __io__block.readInt(getElementAddress(index));
+	}
+
+	/**
+	 * Sets the element at the given index.
+	 * I.e. <code>array[index] = value;</code>
+	 * @param index of the element.
+	 * @param value new value of the element.
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public void setInt(int index, int value) throws IOException {
+		__io__block.writeInt(getElementAddress(index), value);
+	}
+
+	/**
+	 * Iterator over the elements of this array, which delivers
+	 * them as primitive values.
+	 * Does not support {@link PrimitiveIterator.OfInt#remove()}.
+	 */
+	public PrimitiveIterator.OfInt intIterator() {
+		return new IntIterator();
+	}
+
+	/**
+	 * @return Sequential stream of the elements of this array.
+	 */
+	public IntStream intStream() {
+		return StreamSupport.intStream(Spliterators.spliterator(intIterator(), length(), CHARACTERISTICS), false);
+	}
+
+	private class IntIterator extends ElementIterator implements PrimitiveIterator.OfInt {
+		@Override
+		public int nextInt() {
+			try {
+				return getInt(nextIndex());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package org.cakelab.blender.nio;
 import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.Arrays;
 
 import org.cakelab.blender.io.block.Block;
 import org.cakelab.blender.io.block.BlockTable;
@@ -200,11 +197,14 @@ public class CPointer<T> extends CFacade {
 	 * Type of the target the pointer is able to address.
 	 */
 	protected Class<?>[] targetTypeList;
+	/**
+	 * Kind of the target type (see {@link CTypeKind}), resolved once 
+	 * on construction to dispatch element access.
+	 */
+	protected int targetKind;
 	protected long targetSize;
-	
-	/** In case this pointer references instances of structs, we cache
-	 * a reference on the constructor to instantiate instances. */
-	private Constructor<T> constructor;
+	/** Interned runtime type information of the target type. */
+	CTypeDescriptor targetType;
 	
 	/**
 	 * Copy constructor which allows assigning another address.
@@ -217,8 +217,9 @@ public class CPointer<T> extends CFacade {
 	CPointer(CPointer<T> other, long targetAddress) {
 		super(other, targetAddress);
 		this.targetTypeList = other.targetTypeList;
+		this.targetKind = other.targetKind;
 		this.targetSize = other.targetSize;
-		this.constructor = other.constructor;
+		this.targetType = other.targetType;
 	}
 
 	/**
@@ -239,11 +240,19 @@ public class CPointer<T> extends CFacade {
 	 * @param block Block, which contains the targetAddress.
 	 * @param memory Associated block table, which contains memory for the targetAddress.
 	 */
-	@SuppressWarnings("unchecked")
 	public CPointer(long targetAddress, Class<?>[] targetTypes, Block block, BlockTable memory) {
+		this(targetAddress, CTypeDescriptor.of(targetTypes), block, memory);
+	}
+
+	/**
+	 * Constructor for pointers with a known type descriptor.
+	 */
+	CPointer(long targetAddress, CTypeDescriptor targetType, Block block, BlockTable memory) {
 		super(targetAddress, block, memory);
-		this.targetTypeList = (Class<T>[]) targetTypes;
-		this.targetSize = __io__sizeof(targetTypes[0]);
+		this.targetType = targetType;
+		this.targetTypeList = targetType.types;
+		this.targetKind = targetType.kind;
+		this.targetSize = targetType.sizeof(__io__pointersize);
 	}
 	
 	/**
@@ -271,9 +280,9 @@ public class CPointer<T> extends CFacade {
 	
 	protected T __get(long address) throws IOException {
 		if (targetSize == 0) throw new ClassCastException("Target type is unspecified (i.e. void*). Use cast() to specify its type first.");
-		if (isPrimitive(targetTypeList[0])) {
+		if (CTypeKind.isScalar(targetKind)) {
 			return getScalar(address);
-		} else if (targetTypeList[0].equals(CArrayFacade.class)){
+		} else if (targetKind == CTypeKind.ARRAY){
 			throw new ClassCastException("Impossible type declaration containing a pointer on an array (Cannot be declared in C).");
 		} else {
 			return (T) getCFacade(address);
@@ -305,9 +314,9 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	protected void __set(long address, T value) throws IOException {
-		if (isPrimitive(targetTypeList[0])) {
+		if (CTypeKind.isScalar(targetKind)) {
 			setScalar(address, value);
-		} else if (targetTypeList[0].equals(CPointer.class)) {
+		} else if (targetKind == CTypeKind.POINTER) {
 			CPointer<?> p = (CPointer<?>) value;
 			long referenced_address = (p == null) ? 0 : p.__io__address;
 			__io__block.writeLong(address, referenced_address);
@@ -456,6 +465,36 @@ public class CPointer<T> extends CFacade {
 	public CArrayFacade<T> toCArrayFacade(int len) {
 		return new CArrayFacade<T>(__io__address, targetTypeList, new int[]{len}, __io__block, __io__blockTable);
 	}
+
+	/**
+	 * Converts the data referenced by the pointer into an array facade
+	 * of the given length, which provides access to its elements 
+	 * without boxing. The pointer has to be of type float.
+	 */
+	public CFloatArrayFacade toCFloatArrayFacade(int len) {
+		if (targetKind != CTypeKind.FLOAT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to float. You have to cast the pointer first.");
+		return new CFloatArrayFacade(__io__address, len, __io__block, __io__blockTable);
+	}
+
+	/**
+	 * Converts the data referenced by the pointer into an array facade
+	 * of the given length, which provides access to its elements 
+	 * without boxing. The pointer has to be of type int.
+	 */
+	public CIntArrayFacade toCIntArrayFacade(int len) {
+		if (targetKind != CTypeKind.INT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to int. You have to cast the pointer first.");
+		return new CIntArrayFacade(__io__address, len, __io__block, __io__blockTable);
+	}
+
+	/**
+	 * Converts the data referenced by the pointer into an array facade
+	 * of the given length, which provides access to its elements 
+	 * without boxing. The pointer has to be of type short.
+	 */
+	public CShortArrayFacade toCShortArrayFacade(int len) {
+		if (targetKind != CTypeKind.SHORT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to short. You have to cast the pointer first.");
+		return new CShortArrayFacade(__io__address, len, __io__block, __io__blockTable);
+	}
 	
 	/**
 	 * Copies 'len' bytes from the memory referenced by this pointer 
@@ -469,7 +508,7 @@ public class CPointer<T> extends CFacade {
 	 */
 	public byte[] toArray(byte[] data, int off, int len)
 			throws IOException {
-		if (!targetTypeList[0].equals(Byte.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.BYTE) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -484,7 +523,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(byte[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Byte.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.BYTE) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 
@@ -524,7 +563,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public short[] toArray(short[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Short.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.SHORT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -539,7 +578,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(short[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Short.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.SHORT) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 	
@@ -579,7 +618,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public int[] toArray(int[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Integer.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.INT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -607,7 +646,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(int[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Integer.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.INT) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 	
@@ -634,7 +673,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public long[] toArray(long[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Long.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.LONG) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -662,7 +701,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(long[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Long.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.LONG) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 	
@@ -689,7 +728,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public long[] toArrayInt64(long[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(int64.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.INT64) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFullyInt64(__io__address, data, off, len);
 		return data;
 	}
@@ -717,7 +756,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromInt64Array(long[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(int64.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.INT64) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFullyInt64(__io__address, data, off, len);
 	}
 	
@@ -745,7 +784,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public float[] toArray(float[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Float.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.FLOAT) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -773,7 +812,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(float[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Float.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.FLOAT) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 	
@@ -801,7 +840,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public double[] toArray(double[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Double.class)) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.DOUBLE) throw new ClassCastException("cannot cast " + targetTypeList[0].getSimpleName() + " to " + data.getClass().getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.readFully(__io__address, data, off, len);
 		return data;
 	}
@@ -829,7 +868,7 @@ public class CPointer<T> extends CFacade {
 	 * @throws IOException
 	 */
 	public void fromArray(double[] data, int off, int len) throws IOException {
-		if (!targetTypeList[0].equals(Double.class)) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		if (targetKind != CTypeKind.DOUBLE) throw new ClassCastException("cannot cast " + data.getClass().getSimpleName() + " to " + targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
 		__io__block.writeFully(__io__address, data, off, len);
 	}
 	
@@ -918,16 +957,7 @@ public class CPointer<T> extends CFacade {
 	 * @return True if its a primitive type.
 	 */
 	protected boolean isPrimitive(Class<?> type) {
-		
-		return type.isPrimitive() 
-				|| type.equals(int64.class)
-				|| type.equals(Byte.class)
-				|| type.equals(Short.class)
-				|| type.equals(Integer.class)
-				|| type.equals(Long.class)
-				|| type.equals(Float.class)
-				|| type.equals(Double.class)
-				;
+		return CTypeKind.isScalar(CTypeKind.of(type));
 	}
 
 
@@ -951,22 +981,18 @@ public class CPointer<T> extends CFacade {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	protected T getCFacade(long targetAddress) throws IOException {
 		try {
-			if (targetTypeList[0].equals(CPointer.class)) {
+			if (targetKind == CTypeKind.POINTER) {
 				// pointer on pointer
 				long address = __io__block.readLong(targetAddress);
-				Class<?>[] type = Arrays.copyOfRange(targetTypeList, 1, targetTypeList.length);
-				Block block = __io__blockTable.getBlock(address, type);
+				CTypeDescriptor type = targetType.getTarget();
+				Block block = __io__blockTable.getBlock(address, type.types);
 				return (T) new CPointer(address, type, block, __io__blockTable);
 			} else {
 				if (isNull()) return null;
 				// pointer on struct
-				if (constructor == null) {
-					constructor = (Constructor<T>) targetTypeList[0].getDeclaredConstructor(long.class, Block.class, BlockTable.class);
-				}
-				return (T) CFacade.__io__newInstance(constructor, (Class<? extends CFacade>) targetTypeList[0], targetAddress, __io__block, __io__blockTable);
+				return (T) targetType.getFactory().newInstance(targetAddress, __io__block, __io__blockTable);
 			}
-		} catch (InstantiationException | IllegalAccessException
-				| IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+		} catch (IllegalArgumentException e) {
 			throw new IOException(e);
 		}
 	}
@@ -983,50 +1009,52 @@ public class CPointer<T> extends CFacade {
 	 */
 	@SuppressWarnings("unchecked")
 	protected T getScalar(long address) throws IOException {
-		Object result = null;
-		
-		Class<?> type = targetTypeList[0];
-		
-		if (type.equals(Byte.class) || type.equals(byte.class)) {
-			result = __io__block.readByte(address);
-		} else if (type.equals(Short.class) || type.equals(short.class)) {
-			result = __io__block.readShort(address);
-		} else if (type.equals(Integer.class) || type.equals(int.class)) {
-			result = __io__block.readInt(address);
-		} else if (type.equals(Long.class) || type.equals(long.class)) {
-			result = __io__block.readLong(address);
-		} else if (type.equals(int64.class)) {
-			result = __io__block.readInt64(address);
-		} else if (type.equals(Float.class) || type.equals(float.class)) {
-			result = __io__block.readFloat(address);
-		} else if (type.equals(Double.class) || type.equals(double.class)) {
-			result = __io__block.readDouble(address);
-		} else {
-			throw new ClassCastException("unrecognized scalar type: " + type.getName());
+		switch (targetKind) {
+		case CTypeKind.BYTE:
+			return (T)(Byte)__io__block.readByte(address);
+		case CTypeKind.SHORT:
+			return (T)(Short)__io__block.readShort(address);
+		case CTypeKind.INT:
+			return (T)(Integer)__io__block.readInt(address);
+		case CTypeKind.LONG:
+			return (T)(Long)__io__block.readLong(address);
+		case CTypeKind.INT64:
+			return (T)(Long)__io__block.readInt64(address);
+		case CTypeKind.FLOAT:
+			return (T)(Float)__io__block.readFloat(address);
+		case CTypeKind.DOUBLE:
+			return (T)(Double)__io__block.readDouble(address);
+		default:
+			throw new ClassCastException("unrecognized scalar type: " + targetTypeList[0].getName());
 		}
-		return (T)result;
 	}
 
 	
 	protected void setScalar(long address, T elem) throws IOException {
-		Class<?> type = targetTypeList[0];
-		
-		if (type.equals(Byte.class)) {
+		switch (targetKind) {
+		case CTypeKind.BYTE:
 			__io__block.writeByte(address, (Byte) elem);
-		} else if (type.equals(Short.class)) {
+			break;
+		case CTypeKind.SHORT:
 			__io__block.writeShort(address, (Short) elem);
-		} else if (type.equals(Integer.class)) {
+			break;
+		case CTypeKind.INT:
 			__io__block.writeInt(address, (Integer) elem);
-		} else if (type.equals(Long.class)) {
+			break;
+		case CTypeKind.LONG:
 			__io__block.writeLong(address, (Long) elem);
-		} else if (type.equals(int64.class)) {
+			break;
+		case CTypeKind.INT64:
 			__io__block.writeInt64(address, (Long) elem);
-		} else if (type.equals(Float.class)) {
+			break;
+		case CTypeKind.FLOAT:
 			__io__block.writeFloat(address, (Float) elem);
-		} else if (type.equals(Double.class)) {
+			break;
+		case CTypeKind.DOUBLE:
 			__io__block.writeDouble(address, (Double) elem);
-		} else {
-			throw new ClassCastException("unrecognized scalar type: " + type.getName());
+			break;
+		default:
+			throw new ClassCastException("unrecognized scalar type: " + targetTypeList[0].getName());
 		}
 	}
 
@@ -0,0 +1,63 @@
+package org.cakelab.blender.nio;
+
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Common base of the facades for one-dimensional arrays of primitive
+ * types ({@link CFloatArrayFacade}, {@link CIntArrayFacade} and
+ * {@link CShortArrayFacade}).
+ * <p>
+ * Accesses to elements through the primitive accessors of the
+ * subclasses are checked against the length of the array.
+ * </p>
+ *
+ * @author homac
+ *
+ * @param <T> Boxed type of the elements.
+ */
+abstract class CPrimitiveArrayFacade<T> extends CArrayFacade<T> {
+
+	/** characteristics of spliterators over the elements */
+	static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+
+	CPrimitiveArrayFacade(CPrimitiveArrayFacade<T> other) {
+		super(other);
+	}
+
+	CPrimitiveArrayFacade(long baseAddress, Class<?>[] type, int length, Block block, BlockTable __blockTable) {
+		super(baseAddress, type, new int[]{length}, block, __blockTable);
+	}
+
+	/**
+	 * @return address of the element at the given index.
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	long getElementAddress(int index) {
+		if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("index " + index + " out of bounds [0," + length() + ")");
+		return getAddress(index);
+	}
+
+	/**
+	 * Base of the primitive iterators over the elements of the array.
+	 * Does not support remove().
+	 */
+	abstract class ElementIterator {
+		private int current = 0;
+
+		public boolean hasNext() {
+			return current < length();
+		}
+
+		/**
+		 * @return index of the next element.
+		 */
+		int nextIndex() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return current++;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package org.cakelab.blender.nio;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Facade for one-dimensional arrays of <code>short</code>, which
+ * provides access to its elements without boxing.
+ * <p>
+ * The facade is a {@link CArrayFacade}&lt;Short&gt; and can be used
+ * as such. Use {@link #getShort(int)}, {@link #setShort(int, short)},
+ * {@link #intIterator()} or {@link #intStream()} to access
+ * elements as primitive values. Instances are obtained from a
+ * pointer or array of matching type via
+ * {@link CPointer#toCShortArrayFacade(int)} or
+ * {@link CArrayFacade#toCShortArrayFacade()}.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+public class CShortArrayFacade extends CPrimitiveArrayFacade<Short> {
+
+	private static final Class<?>[] TYPE = new Class<?>[]{Short.class};
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other
+	 */
+	public CShortArrayFacade(CShortArrayFacade other) {
+		super(other);
+	}
+
+	/**
+	 * Attaches the facade to existing data in a block of a blender file.
+	 *
+	 * @param baseAddress virtual start address of the array (file specific).
+	 * @param length number of elements of the array.
+	 * @param block Block, which contains the array.
+	 * @param __blockTable Block table of the associated blender file.
+	 */
+	public CShortArrayFacade(long baseAddress, int length, Block block, BlockTable __blockTable) {
+		super(baseAddress, TYPE, length, block, __blockTable);
+	}
+
+	/**
+	 * @param index of the element.
+	 * @return array[index]
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public short getShort(int index) throws IOException {
+		return __io__block.readShort(getElementAddress(index));
+	}
+
+	/**
+	 * Sets the element at the given index.
+	 * I.e. <code>array[index] = value;</code>
+	 * @param index of the element.
+	 * @param value new value of the element.
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if index is not in [0, length()).
+	 */
+	public void setShort(int index, short value) throws IOException {
+		__io__block.writeShort(getElementAddress(index), value);
+	}
+
+	/**
+	 * Iterator over the elements of this array, which delivers
+	 * them as primitive values (widened to int).
+	 * Does not support {@link PrimitiveIterator.OfInt#remove()}.
+	 */
+	public PrimitiveIterator.OfInt intIterator() {
+		return new ShortIterator();
+	}
+
+	/**
+	 * @return Sequential stream of the elements of this array (widened to int).
+	 */
+	public IntStream intStream() {
+		return StreamSupport.intStream(Spliterators.spliterator(intIterator(), length(), CHARACTERISTICS), false);
+	}
+
+	private class ShortIterator extends ElementIterator implements PrimitiveIterator.OfInt {
+		@Override
+		public int nextInt() {
+			try {
+				return getShort(nextIndex());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package org.cakelab.blender.nio;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable runtime type information of the target type of pointers
+ * (see {@link CPointer}) and the component type of arrays (see
+ * {@link ArrayType}).
+ * <p>
+ * Descriptors are interned: there is exactly one descriptor per type
+ * list. Each descriptor resolves its kind and size once and refers to
+ * the descriptors of its sub-types, which are created on first request.
+ * Thus, creating a facade on a referenced pointer or array element
+ * just follows a reference instead of copying type lists.
+ * </p>
+ * <p>
+ * Descriptors are cached per elementary type, which is the last entry
+ * of the type list (e.g. the struct class in a pointer to a pointer of
+ * a struct). The cache is attached to that class through a
+ * {@link ClassValue}. Thus, the cache does not keep facade classes
+ * (and their class loaders) alive, once they are not used anymore.
+ * </p>
+ * <p>
+ * Type lists and dimensions held by descriptors are shared and must
+ * not be modified.
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class CTypeDescriptor {
+	private static final int[] NO_DIMENSIONS = new int[0];
+
+	/** caches of descriptors per elementary type */
+	private static final ClassValue<Cache> caches = new ClassValue<Cache>() {
+		@Override
+		protected Cache computeValue(Class<?> type) {
+			return new Cache();
+		}
+	};
+
+	/** type list, where types[0] is the described type (see {@link CPointer}) */
+	final Class<?>[] types;
+	/** kind of types[0] (see {@link CTypeKind}) */
+	final int kind;
+	/** size for 32 and 64 bit addresses or -1 if unknown */
+	private final long size32;
+	private final long size64;
+
+	/** descriptor of the target type, if this is a pointer */
+	private volatile CTypeDescriptor target;
+	/** factory of facades, if this is a struct */
+	private volatile FacadeFactory factory;
+
+	private CTypeDescriptor(Class<?>[] types) {
+		this.types = types;
+		this.kind = CTypeKind.of(types[0]);
+		if (kind == CTypeKind.ARRAY || kind == CTypeKind.UNKNOWN) {
+			// reported on access to the size
+			size32 = size64 = -1;
+		} else {
+			size32 = CFacade.__io__sizeof(kind, types[0], 4);
+			size64 = CFacade.__io__sizeof(kind, types[0], 8);
+		}
+	}
+
+	/**
+	 * @return interned descriptor of the given type list.
+	 */
+	static CTypeDescriptor of(Class<?>[] types) {
+		return of(types, 0);
+	}
+
+	/**
+	 * @return interned descriptor of the given type list, starting at the given offset.
+	 */
+	private static CTypeDescriptor of(Class<?>[] types, int offset) {
+		ConcurrentHashMap<Key, CTypeDescriptor> descriptors = cacheOf(types).descriptors;
+		Key key = new Key(types, offset, NO_DIMENSIONS, 0);
+		CTypeDescriptor descriptor = descriptors.get(key);
+		if (descriptor == null) {
+			Class<?>[] copy = Arrays.copyOfRange(types, offset, types.length);
+			descriptor = new CTypeDescriptor(copy);
+			CTypeDescriptor existing = descriptors.putIfAbsent(new Key(copy, 0, NO_DIMENSIONS, 0), descriptor);
+			if (existing != null) descriptor = existing;
+		}
+		return descriptor;
+	}
+
+	/**
+	 * @return cache responsible for the given type list.
+	 */
+	private static Cache cacheOf(Class<?>[] types) {
+		return caches.get(types[types.length - 1]);
+	}
+
+	/**
+	 * @return size of the described type for the given address width.
+	 */
+	long sizeof(int addressWidth) {
+		if (size32 < 0) {
+			// throws the appropriate exception
+			return CFacade.__io__sizeof(kind, types[0], addressWidth);
+		}
+		return addressWidth == 8 ? size64 : size32;
+	}
+
+	/**
+	 * @return descriptor of the type, a pointer of this type points to.
+	 */
+	CTypeDescriptor getTarget() {
+		CTypeDescriptor t = target;
+		if (t == null) {
+			t = of(types, 1);
+			target = t;
+		}
+		return t;
+	}
+
+	/**
+	 * @return factory of facades of the described struct.
+	 */
+	FacadeFactory getFactory() {
+		FacadeFactory f = factory;
+		if (f == null) {
+			f = CFacade.__io__getFactory(types[0]);
+			factory = f;
+		}
+		return f;
+	}
+
+	/**
+	 * Immutable runtime type information of arrays.
+	 * <p>
+	 * An array type is determined by its type list and the length of
+	 * all but its first dimension. The length of the first dimension
+	 * (i.e. the length of the array) has no influence on the type of
+	 * its elements and is not part of the descriptor.
+	 * </p>
+	 */
+	static final class ArrayType {
+		/** type list of the array (see {@link CArrayFacade}) */
+		final Class<?>[] types;
+		/** all dimensions of the array except the first one */
+		final int[] innerDimensions;
+		/** number of elementary elements in one element of the array */
+		final long innerLength;
+		/** descriptor of the elementary type */
+		final CTypeDescriptor elementaryType;
+		/** descriptor of the elements, if they are arrays */
+		private volatile ArrayType componentType;
+
+		private ArrayType(Class<?>[] types, int[] innerDimensions) {
+			this.types = types;
+			this.innerDimensions = innerDimensions;
+			long length = 1;
+			for (int i = 0; i < innerDimensions.length; i++) {
+				length *= innerDimensions[i];
+			}
+			this.innerLength = length;
+			this.elementaryType = CTypeDescriptor.of(types, innerDimensions.length);
+		}
+
+		/**
+		 * @return interned descriptor of an array with the given types and dimensions.
+		 */
+		static ArrayType of(Class<?>[] types, int[] dimensions) {
+			return of(types, 0, dimensions, 1);
+		}
+
+		private static ArrayType of(Class<?>[] types, int offset, int[] dimensions, int dimensionsOffset) {
+			ConcurrentHashMap<Key, ArrayType> arrayDescriptors = cacheOf(types).arrayDescriptors;
+			Key key = new Key(types, offset, dimensions, dimensionsOffset);
+			ArrayType descriptor = arrayDescriptors.get(key);
+			if (descriptor == null) {
+				Class<?>[] typesCopy = Arrays.copyOfRange(types, offset, types.length);
+				int[] dimensionsCopy = Arrays.copyOfRange(dimensions, dimensionsOffset, dimensions.length);
+				descriptor = new ArrayType(typesCopy, dimensionsCopy);
+				ArrayType existing = arrayDescriptors.putIfAbsent(new Key(typesCopy, 0, dimensionsCopy, 0), descriptor);
+				if (existing != null) descriptor = existing;
+			}
+			return descriptor;
+		}
+
+		/**
+		 * @return descriptor of the elements, which are arrays with
+		 * dimensions {@link #innerDimensions}.
+		 */
+		ArrayType getComponentType() {
+			ArrayType t = componentType;
+			if (t == null) {
+				t = of(types, 1, innerDimensions, 1);
+				componentType = t;
+			}
+			return t;
+		}
+	}
+
+	/** Interned descriptors of type lists with the same elementary type. */
+	private static final class Cache {
+		final ConcurrentHashMap<Key, CTypeDescriptor> descriptors = new ConcurrentHashMap<Key, CTypeDescriptor>();
+		final ConcurrentHashMap<Key, ArrayType> arrayDescriptors = new ConcurrentHashMap<Key, ArrayType>();
+	}
+
+	/** Key for lookups on sections of type lists and dimensions without copying them. */
+	private static final class Key {
+		final Class<?>[] types;
+		final int offset;
+		final int[] dimensions;
+		final int dimensionsOffset;
+		final int hash;
+
+		Key(Class<?>[] types, int offset, int[] dimensions, int dimensionsOffset) {
+			this.types = types;
+			this.offset = offset;
+			this.dimensions = dimensions;
+			this.dimensionsOffset = dimensionsOffset;
+			int h = 1;
+			for (int i = offset; i < types.length; i++) h = 31 * h + types[i].hashCode();
+			for (int i = dimensionsOffset; i < dimensions.length; i++) h = 31 * h + dimensions[i];
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			if (hash != other.hash
+					|| types.length - offset != other.types.length - other.offset
+					|| dimensions.length - dimensionsOffset != other.dimensions.length - other.dimensionsOffset) {
+				return false;
+			}
+			for (int i = offset, j = other.offset; i < types.length; i++, j++) {
+				if (types[i] != other.types[j]) return false;
+			}
+			for (int i = dimensionsOffset, j = other.dimensionsOffset; i < dimensions.length; i++, j++) {
+				if (dimensions[i] != other.dimensions[j]) return false;
+			}
+			return true;
+		}
+	}
+}
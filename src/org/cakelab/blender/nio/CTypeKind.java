@@ -0,0 +1,83 @@
+package org.cakelab.blender.nio;
+
+/**
+ * Compact codes for the kinds of types supported by the type
+ * mapping of Java Blend. Pointers and arrays resolve their target
+ * type to a kind once on construction, so element access can
+ * dispatch on an int instead of comparing classes.
+ * <p>
+ * Boxed and primitive Java types map to the same kind
+ * (e.g. <code>Float</code> and <code>float</code>).
+ * </p>
+ *
+ * @author homac
+ *
+ */
+final class CTypeKind {
+	/** Type not supported by the type mapping. */
+	static final int UNKNOWN = -1;
+	/** Unspecified target type of a <code>void*</code> (i.e. <code>Object</code>). */
+	static final int VOID = 0;
+	static final int BYTE = 1;
+	static final int SHORT = 2;
+	static final int INT = 3;
+	/** C type long, which has the size of a pointer. */
+	static final int LONG = 4;
+	static final int INT64 = 5;
+	static final int FLOAT = 6;
+	static final int DOUBLE = 7;
+	static final int POINTER = 8;
+	static final int STRUCT = 9;
+	static final int ARRAY = 10;
+
+	private static final ClassValue<Integer> KINDS = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			return resolve(type);
+		}
+	};
+
+	private CTypeKind() {}
+
+	/**
+	 * @return kind of the given type.
+	 */
+	static int of(Class<?> type) {
+		return KINDS.get(type);
+	}
+
+	/**
+	 * @return true, if the given kind is a scalar (i.e. byte to double).
+	 */
+	static boolean isScalar(int kind) {
+		return kind >= BYTE && kind <= DOUBLE;
+	}
+
+	private static int resolve(Class<?> type) {
+		if (type.equals(CPointer.class)) {
+			return POINTER;
+		} else if (type.equals(CArrayFacade.class)) {
+			return ARRAY;
+		} else if (CFacade.__io__subclassof(type, CFacade.class)) {
+			return STRUCT;
+		} else if (type.equals(byte.class) || type.equals(Byte.class)) {
+			return BYTE;
+		} else if (type.equals(short.class) || type.equals(Short.class)) {
+			return SHORT;
+		} else if (type.equals(int.class) || type.equals(Integer.class)) {
+			return INT;
+		} else if (type.equals(long.class) || type.equals(Long.class)) {
+			return LONG;
+		} else if (type.equals(int64.class)) {
+			return INT64;
+		} else if (type.equals(float.class) || type.equals(Float.class)) {
+			return FLOAT;
+		} else if (type.equals(double.class) || type.equals(Double.class)) {
+			return DOUBLE;
+		} else if (type.equals(Object.class)) {
+			return VOID;
+		} else {
+			return UNKNOWN;
+		}
+	}
+}
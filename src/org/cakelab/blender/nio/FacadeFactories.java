@@ -0,0 +1,102 @@
+package org.cakelab.blender.nio;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Creates {@link FacadeFactory} instances for facade classes.
+ * <p>
+ * Factories call the constructor 
+ * <code>(long address, Block block, BlockTable blockTable)</code> 
+ * of the facade class directly through a class generated by 
+ * {@link LambdaMetafactory}. Thus, instantiation costs about the same 
+ * as <code>new</code>. If the facade class is not accessible that way 
+ * (e.g. its constructor is not public or it was loaded by a class loader 
+ * not visible to this library), the factory falls back to a 
+ * {@link MethodHandle}.
+ * </p>
+ * 
+ * @author homac
+ *
+ */
+final class FacadeFactories {
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, long.class, Block.class, BlockTable.class);
+	private static final MethodType NEW_INSTANCE_TYPE = MethodType.methodType(CFacade.class, long.class, Block.class, BlockTable.class);
+
+	private FacadeFactories() {}
+
+	/**
+	 * Creates a factory for the given facade type.
+	 * 
+	 * @throws IllegalArgumentException if the type is abstract or has no suitable constructor.
+	 */
+	static FacadeFactory create(Class<?> type) {
+		if (Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException("facade " + type.getName() + " is abstract");
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle constructor;
+		boolean accessible;
+		try {
+			constructor = lookup.findConstructor(type, CONSTRUCTOR_TYPE);
+			accessible = true;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("facade " + type.getName() + " has no constructor (long, Block, BlockTable)", e);
+		} catch (IllegalAccessException e) {
+			try {
+				Constructor<?> c = type.getDeclaredConstructor(long.class, Block.class, BlockTable.class);
+				c.setAccessible(true);
+				constructor = lookup.unreflectConstructor(c);
+				accessible = false;
+			} catch (ReflectiveOperationException | SecurityException e2) {
+				throw new IllegalArgumentException("constructor of facade " + type.getName() + " is not accessible", e2);
+			}
+		}
+		
+		if (accessible && isVisible(type)) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(lookup, "newInstance", 
+						MethodType.methodType(FacadeFactory.class), NEW_INSTANCE_TYPE, 
+						constructor, constructor.type());
+				return (FacadeFactory) site.getTarget().invoke();
+			} catch (Throwable e) {
+				// fall back to method handle
+			}
+		}
+		
+		final MethodHandle handle = constructor.asType(NEW_INSTANCE_TYPE);
+		return new FacadeFactory() {
+			@Override
+			public CFacade newInstance(long address, Block block, BlockTable blockTable) {
+				try {
+					return (CFacade) handle.invokeExact(address, block, blockTable);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Classes generated by the lambda metafactory are defined in the 
+	 * class loader of this class and can only link against types visible 
+	 * to it.
+	 */
+	private static boolean isVisible(Class<?> type) {
+		try {
+			return Class.forName(type.getName(), false, FacadeFactories.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
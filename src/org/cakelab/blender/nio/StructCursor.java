@@ -0,0 +1,163 @@
+package org.cakelab.blender.nio;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * A cursor visits a sequence of struct instances, which are stored
+ * consecutively in memory (e.g. all instances in a block or the
+ * elements of an array), using just one facade.
+ * <p>
+ * The cursor creates a single facade and moves it from one instance
+ * to the next (see {@link CFacade#__io__rebind(long)}). Thus, visiting
+ * instances does not allocate anything per element. In return,
+ * the facade returned by {@link #next()}, {@link #moveTo(int)} and
+ * {@link #get()} is always the same instance. It is valid only
+ * until the cursor is moved again and must not be kept as reference
+ * to a particular instance. Use {@link #copy()} for that.
+ * </p>
+ * <pre>
+ * StructCursor&lt;Vert&gt; cursor = new StructCursor&lt;Vert&gt;(Vert.class, block, blockTable);
+ * while (cursor.hasNext()) {
+ *   Vert v = cursor.next();
+ *   // ..
+ * }
+ * </pre>
+ * Does not support {@link Iterator#remove()}.
+ *
+ * @author homac
+ *
+ * @param <T> Type of the struct facade.
+ */
+public class StructCursor<T extends CFacade> implements Iterator<T> {
+	private final FacadeFactory factory;
+	private final T facade;
+	private final long baseAddress;
+	private final long elementSize;
+	private final int length;
+	private int index;
+
+	/**
+	 * Creates a cursor over all struct instances in the given block.
+	 *
+	 * @param type Type of the struct facade.
+	 * @param block Block, which contains the instances.
+	 * @param blockTable Block table of the associated blender file.
+	 */
+	public StructCursor(Class<T> type, Block block, BlockTable blockTable) {
+		this(type, block.header.getAddress(),
+				CFacade.__io__sizeof(type, blockTable.getEncoding().getAddressWidth()),
+				block.header.getCount(), block, blockTable);
+	}
+
+	/**
+	 * Creates a cursor over the given number of struct instances,
+	 * which start at the address the given pointer points to.
+	 *
+	 * @param pointer Pointer on the first instance.
+	 * @param length Number of instances.
+	 * @throws ClassCastException if the pointer does not point on a struct.
+	 */
+	@SuppressWarnings("unchecked")
+	public StructCursor(CPointer<T> pointer, int length) {
+		this((Class<T>) checkStruct(pointer), pointer.__io__address, pointer.targetSize, length, pointer.__io__block, pointer.__io__blockTable);
+	}
+
+	/**
+	 * Creates a cursor over the elements of the given array of structs.
+	 *
+	 * @param array One-dimensional array of structs.
+	 * @throws ClassCastException if the array is not a one-dimensional array of structs.
+	 */
+	public StructCursor(CArrayFacade<T> array) {
+		this(checkOneDimensional(array), array.length());
+	}
+
+	@SuppressWarnings("unchecked")
+	private StructCursor(Class<T> type, long baseAddress, long elementSize, int length, Block block, BlockTable blockTable) {
+		this.factory = CFacade.__io__getFactory(type);
+		this.facade = (T) factory.newInstance(baseAddress, block, blockTable);
+		this.baseAddress = baseAddress;
+		this.elementSize = elementSize;
+		this.length = length;
+		this.index = -1;
+	}
+
+	private static Class<?> checkStruct(CPointer<?> pointer) {
+		if (pointer.targetKind != CTypeKind.STRUCT) throw new ClassCastException("cannot create a struct cursor on " + pointer.targetTypeList[0].getSimpleName() + ". You have to cast the pointer first.");
+		return pointer.targetTypeList[0];
+	}
+
+	private static <T> CArrayFacade<T> checkOneDimensional(CArrayFacade<T> array) {
+		if (array.dimensions.length != 1) throw new ClassCastException("cannot create a struct cursor on a multi-dimensional array.");
+		return array;
+	}
+
+	/**
+	 * @return Number of instances visited by the cursor.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return Index of the current instance or -1 if the cursor was not moved yet.
+	 */
+	public int index() {
+		return index;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return index + 1 < length;
+	}
+
+	/**
+	 * Moves the cursor to the next instance.
+	 * @return The facade of the cursor.
+	 */
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return moveTo(index + 1);
+	}
+
+	/**
+	 * Moves the cursor to the instance with the given index.
+	 * @param index of the instance.
+	 * @return The facade of the cursor.
+	 */
+	public T moveTo(int index) {
+		if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index + " out of bounds [0," + length + ")");
+		this.index = index;
+		facade.__io__rebind(baseAddress + index * elementSize);
+		return facade;
+	}
+
+	/**
+	 * @return The facade of the cursor, bound to the current instance.
+	 */
+	public T get() {
+		if (index < 0) throw new NoSuchElementException("cursor was not moved yet");
+		return facade;
+	}
+
+	/**
+	 * @return New facade on the current instance, which stays at that instance.
+	 */
+	@SuppressWarnings("unchecked")
+	public T copy() {
+		T current = get();
+		return (T) factory.newInstance(current.__io__address, current.__io__block, current.__io__blockTable);
+	}
+
+	/**
+	 * Moves the cursor in front of the first instance.
+	 */
+	public void reset() {
+		index = -1;
+	}
+}
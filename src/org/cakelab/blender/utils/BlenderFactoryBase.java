@@ -6,7 +6,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 
 import org.cakelab.blender.io.BlenderFile;
 import org.cakelab.blender.io.FileHeader;
@@ -123,7 +122,7 @@ public class BlenderFactoryBase {
 	 * <b>Example:</b>
 	 * <pre>
 	 * BlenderFile blend = BlenderFactory.newBlenderFile(new File("my.blend"));
-	 * Scene scene = BlenderFactory.newDNAStructBlock(BlockCodes.CODE_SCE, Scene.class, blend);
+	 * Scene scene = BlenderFactory.newDNAStructBlock(BlockCodes.ID_SCE, Scene.class, blend);
 	 * </pre>
 	 */
 	@SuppressWarnings("unchecked")
@@ -134,8 +133,8 @@ public class BlenderFactoryBase {
 			int sdnaIndex = field__dna__sdnaIndex.getInt(null);
 			Block block = blockTable.allocate(blockCode, CFacade.__io__sizeof(facetClass, blend.getEncoding().getAddressWidth()), sdnaIndex, 1);
 			blend.add(block);
-			return (T)CFacade.__io__newInstance(facetClass, block.header.getAddress(), block, blockTable);
-		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+			return (T)CFacade.__io__getFactory(facetClass).newInstance(block.header.getAddress(), block, blockTable);
+		} catch (IllegalArgumentException | IllegalAccessException | SecurityException e) {
 			throw new IOException(e);
 		} catch (NoSuchFieldException e) {
 			throw new IOException("you cannot instantiate pointers or arrays this way. Use the appropriate factory methods for the respective types instead.", e);
@@ -159,7 +158,7 @@ public class BlenderFactoryBase {
 	 * <b>Example:</b>
 	 * <pre>
 	 * BlenderFile blend = BlenderFactory.newBlenderFile(new File("my.blend"));
-	 * CArrayFacade&lt;Scene&gt; scene = BlenderFactory.newDNAStructBlock(BlockCodes.CODE_SCE, Scene.class, 2, blend);
+	 * CArrayFacade&lt;Scene&gt; scene = BlenderFactory.newDNAStructBlock(BlockCodes.ID_SCE, Scene.class, 2, blend);
 	 * </pre>
 	 */
 	public static <T extends CFacade> CArrayFacade<T> newCStructBlock(Identifier blockCode, Class<T> facetClass, int count, BlenderFile blend) throws IOException {
@@ -18,6 +18,7 @@ import org.cakelab.blender.io.util.Identifier;
 import org.cakelab.blender.metac.CField;
 import org.cakelab.blender.metac.CStruct;
 import org.cakelab.blender.nio.CFacade;
+import org.cakelab.blender.nio.FacadeFactory;
 import org.cakelab.blender.typemap.NameMapping;
 
 /**
@@ -39,13 +40,14 @@ public abstract class MainLibBase {
 		this.blenderFile = blend;
 		DNAModel model = blend.getBlenderModel();
 		blockTable = blend.getBlockTable();
-		List<Block> blocks = blend.getBlocks();
-		for (Block block : blocks) {
-			BlockHeader header = block.header;
-			if (isPossibleLibraryBlock(header.getCode())) {
-				DNAStruct struct = model.getStruct(block.header.getSdnaIndex());
-				if (isLibraryElement(struct)) {
-					addLibraryElements(block, struct);
+		for (DNAStruct struct : model.getStructs()) {
+			if (isLibraryElement(struct)) {
+				List<Block> blocks = blockTable.getBlocksBySdnaIndex(struct.getIndex());
+				for (Block block : blocks) {
+					BlockHeader header = block.header;
+					if (isPossibleLibraryBlock(header.getCode())) {
+						addLibraryElements(block, struct);
+					}
 				}
 			}
 		}
@@ -56,15 +58,16 @@ public abstract class MainLibBase {
 		short size = struct.getType().getSize();
 		try {
 			Class<? extends CFacade> clazz = (Class<? extends CFacade>) MainLibBase.class.getClassLoader().loadClass(packageName + '.' + NameMapping.mapStruct2Class(struct.getType().getName()));
+			FacadeFactory factory = CFacade.__io__getFactory(clazz);
 			int count = 0;
 			for (long address = block.header.getAddress(); count < block.header.getCount();
 					address += size) 
 			{
-				CFacade libElem = CFacade.__io__newInstance(clazz, address, block, blockTable);
+				CFacade libElem = factory.newInstance(address, block, blockTable);
 				addLibraryElement(libElem);
 				count++;
 			}
-		} catch (InstantiationException | IllegalAccessException
+		} catch (IllegalAccessException
 				| IllegalArgumentException | InvocationTargetException
 				| NoSuchMethodException | SecurityException | ClassNotFoundException e) {
 			throw new IOException(e);
@@ -98,10 +101,14 @@ public abstract class MainLibBase {
 	protected abstract CFacade getFirst(CFacade libElem) throws IOException;
 
 	private boolean isPossibleLibraryBlock(Identifier code) {
-		return !(code.equals(BlockCodes.ID_DNA1) 
-				|| code.equals(BlockCodes.ID_ENDB)
-				|| code.equals(BlockCodes.ID_TEST)
-				);
+		switch (code.intValue()) {
+		case BlockCodes.CODE_DNA1:
+		case BlockCodes.CODE_ENDB:
+		case BlockCodes.CODE_TEST:
+			return false;
+		default:
+			return true;
+		}
 	}
 
 	public static boolean isLibraryElement(CStruct struct) {
@@ -0,0 +1,75 @@
+package org.cakelab.blender.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockTable;
+import org.cakelab.blender.io.util.CBufferReadWrite;
+import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.DirectBlockStorage;
+
+/**
+ * Tests files opened with a {@link DirectBlockStorage}.
+ * Run with assertions enabled (-ea).
+ */
+public class DirectStorageTest {
+	public static void main(String[] args) throws IOException {
+		File file = TestBlendFile.write(TestBlendFile.createTempFile(".blend"));
+
+		// blocks fail on access after the file was closed
+		BlenderFile blend = new BlenderFile(file, OpenMode.READ_FULLY, new DirectBlockStorage(4096));
+		BlockTable table = blend.getBlockTable();
+		Block allocated = table.allocate(BlockCodes.ID_DATA, 100000);
+		allocated.writeInt(allocated.header.getAddress() + 400, 42);
+		assert(allocated.readInt(allocated.header.getAddress() + 400) == 42);
+		Block freed = table.allocate(BlockCodes.ID_DATA, 64);
+		table.free(freed);
+		Block verts = table.getBlock(TestBlendFile.VERTS_ADDRESS, TestBlendFile.SDNA_VERT);
+		blend.close();
+		for (Block block : new Block[]{verts, allocated, freed}) {
+			try {
+				block.readInt(block.header.getAddress());
+				assert(false) : "read released memory";
+			} catch (IOException e) {
+				// expected
+			}
+			try {
+				block.writeInt(block.header.getAddress(), 1);
+				assert(false) : "wrote released memory";
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		try {
+			table.allocate(BlockCodes.ID_DATA, 16);
+			assert(false) : "allocation in closed storage";
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		// only mapped blocks get copied into the storage before writing
+		blend = new BlenderFile(file, OpenMode.MEMORY_MAPPED, new DirectBlockStorage(4096));
+		table = blend.getBlockTable();
+		verts = table.getBlock(TestBlendFile.VERTS_ADDRESS, TestBlendFile.SDNA_VERT);
+		assert(((CBufferReadWrite) verts.data).isMapped());
+		allocated = table.allocate(BlockCodes.ID_DATA, 64);
+		allocated.writeInt(allocated.header.getAddress(), 7);
+		blend.add(allocated);
+		CDataReadWriteAccess data = allocated.data;
+		blend.write();
+		assert(allocated.data == data);
+		assert(!((CBufferReadWrite) verts.data).isMapped());
+		assert(verts.readInt(TestBlendFile.VERTS_ADDRESS + 12 * TestBlendFile.VERT_SIZE + 12) == 36);
+		blend.close();
+
+		blend = new BlenderFile(file, OpenMode.READ_FULLY, new DirectBlockStorage());
+		Block written = blend.getBlockTable().getBlock(allocated.header.getAddress(), 0);
+		assert(written != null && written.readInt(allocated.header.getAddress()) == 7);
+		blend.close();
+
+		System.out.println("ok");
+	}
+}
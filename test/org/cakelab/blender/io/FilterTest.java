@@ -0,0 +1,69 @@
+package org.cakelab.blender.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockFilter;
+import org.cakelab.blender.io.block.BlockHeader;
+import org.cakelab.blender.io.block.BlockTable;
+import org.cakelab.blender.io.block.FilteredBlockException;
+
+/**
+ * Tests opening files with a {@link BlockFilter}.
+ * Run with assertions enabled (-ea).
+ */
+public class FilterTest {
+	public static void main(String[] args) throws IOException {
+		File file = TestBlendFile.write(TestBlendFile.createTempFile(".blend"));
+		File gzip = TestBlendFile.writeGZip(TestBlendFile.createTempFile(".blend.gz"));
+		long vert = TestBlendFile.VERTS_ADDRESS + 20;
+
+		for (OpenMode mode : OpenMode.values()) {
+			BlenderFile blend = new BlenderFile(file, mode, BlockFilter.byCode(BlockCodes.ID_OB));
+			// GLOB, DNA1 and ENDB are always loaded
+			assert(blend.getBlocks().size() == TestBlendFile.LINKS + 3);
+			BlockTable table = blend.getBlockTable();
+			assert(table.getBlock(TestBlendFile.linkAddress(3), TestBlendFile.SDNA_LINK) != null);
+			try {
+				table.getBlock(vert, TestBlendFile.SDNA_VERT);
+				assert(false) : "lookup in excluded block";
+			} catch (FilteredBlockException e) {
+				assert(e.getHeader().getAddress() == TestBlendFile.VERTS_ADDRESS);
+			}
+			// boolean queries don't throw
+			assert(table.exists(vert));
+			assert(table.exists(TestBlendFile.VERTS_ADDRESS, TestBlendFile.SDNA_VERT));
+			assert(!table.exists(0x7000000L));
+			// excluded blocks can still be found in the file
+			BlockHeader header = blend.seekFirstBlock(BlockCodes.ID_DATA);
+			assert(header != null && header.getAddress() == TestBlendFile.VERTS_ADDRESS);
+			// allocations don't hit excluded blocks
+			int size = TestBlendFile.VERTS * TestBlendFile.VERT_SIZE;
+			long address = table.allocate(BlockCodes.ID_DATA, size).header.getAddress();
+			assert(address >= TestBlendFile.VERTS_ADDRESS + size || address + size <= TestBlendFile.VERTS_ADDRESS);
+			try {
+				blend.write();
+				assert(false) : "writing a filtered file";
+			} catch (IOException e) {
+				// expected
+			}
+			blend.close();
+		}
+
+		// the same filter instance serves several files
+		BlockFilter filter = BlockFilter.byStructName("Vert", "Unknown");
+		for (File f : new File[]{file, gzip, file}) {
+			BlenderFile blend = new BlenderFile(f, OpenMode.READ_FULLY, filter);
+			assert(blend.getBlocks().size() == 4);
+			Block verts = blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT);
+			assert(verts.readFloat(vert) == 1.5f);
+			assert(blend.getBlockTable().exists(TestBlendFile.linkAddress(0)));
+			blend.close();
+		}
+
+		System.out.println("ok");
+	}
+}
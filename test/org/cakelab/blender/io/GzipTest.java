@@ -0,0 +1,105 @@
+package org.cakelab.blender.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.util.ConcurrentInflaterInputStream;
+
+/**
+ * Tests {@link ConcurrentInflaterInputStream} and reading gzip
+ * compressed files.
+ * Run with assertions enabled (-ea).
+ */
+public class GzipTest {
+	public static void main(String[] args) throws IOException {
+		// content of several chunks
+		byte[] content = new byte[3 * ConcurrentInflaterInputStream.CHUNK_SIZE + 12345];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ((i * 7) ^ (i >> 10));
+		}
+		byte[] compressed = gzip(content);
+
+		InputStream in = new ConcurrentInflaterInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assert(in.read() == (content[0] & 0xff));
+		out.write(content[0]);
+		assert(in.skip(1000) == 1000);
+		out.write(content, 1, 1000);
+		byte[] b = new byte[7777];
+		for (int n = in.read(b); n >= 0; n = in.read(b)) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		assert(Arrays.equals(out.toByteArray(), content));
+
+		// errors of the decompressing thread are reported to the reader
+		in = new ConcurrentInflaterInputStream(new ByteArrayInputStream(content));
+		try {
+			in.read();
+			assert(false) : "read from uncompressed data";
+		} catch (IOException e) {
+			// expected
+		} finally {
+			in.close();
+		}
+
+		// runtime exceptions and errors don't leave the reader waiting
+		final InputStream source = new ByteArrayInputStream(compressed, 0, compressed.length / 2);
+		in = new ConcurrentInflaterInputStream(new InputStream() {
+			@Override
+			public int read() throws IOException {
+				int b = source.read();
+				if (b < 0) throw new IllegalStateException("broken input");
+				return b;
+			}
+		});
+		try {
+			while (in.read(b) >= 0);
+			assert(false) : "missed failure of the decompressing thread";
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			in.close();
+		}
+
+		// closing early stops decompression
+		in = new ConcurrentInflaterInputStream(new ByteArrayInputStream(compressed));
+		in.read();
+		in.close();
+
+		File file = TestBlendFile.writeGZip(TestBlendFile.createTempFile(".blend.gz"));
+		long vert = TestBlendFile.VERTS_ADDRESS + 123 * TestBlendFile.VERT_SIZE;
+		for (OpenMode mode : OpenMode.values()) {
+			BlenderFile blend = new BlenderFile(file, mode);
+			assert(blend.getCompression() == BlenderFile.Compression.GZIP);
+			assert(blend.getBlocks().size() == TestBlendFile.BLOCKS);
+			Block verts = blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT);
+			assert(verts.readFloat(vert + 8) == -123f);
+			assert(verts.readInt(vert + 12) == 369);
+			try {
+				blend.write();
+				assert(false) : "wrote a compressed file";
+			} catch (IOException e) {
+				// expected
+			}
+			blend.close();
+		}
+
+		System.out.println("ok");
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content);
+		gzip.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,36 @@
+package org.cakelab.blender.io;
+
+import java.io.IOException;
+
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.util.CDataReadWriteAccess;
+import org.cakelab.blender.io.util.Identifier;
+
+/**
+ * Tests interning of {@link Identifier}s.
+ * Run with assertions enabled (-ea).
+ */
+public class IdentifierTest {
+	public static void main(String[] args) throws IOException {
+		Identifier ob = new Identifier("OB");
+		assert(Identifier.valueOf(ob.intValue()) == BlockCodes.ID_OB);
+		byte[] data = {'D', 'A', 'T', 'A'};
+		Identifier read = Identifier.readFrom(CDataReadWriteAccess.create(data, 0, Encoding.LITTLE_ENDIAN_64BIT));
+		assert(read == BlockCodes.ID_DATA);
+		read = Identifier.readFrom(CDataReadWriteAccess.create(data, 0, Encoding.BIG_ENDIAN_64BIT));
+		assert(read == BlockCodes.ID_DATA);
+
+		// the number of interned codes is limited
+		for (int i = 0; i < 2 * Identifier.MAX_INTERNED; i++) {
+			int value = 0x7f000000 | i;
+			Identifier ident = Identifier.valueOf(value);
+			assert(ident.intValue() == value && ident.equals(Identifier.valueOf(value)));
+		}
+		Identifier garbage = Identifier.valueOf(0x7f000000 | 2 * Identifier.MAX_INTERNED);
+		assert(garbage != Identifier.valueOf(garbage.intValue()));
+		assert(Identifier.valueOf(0x7f000000) == Identifier.valueOf(0x7f000000));
+		assert(Identifier.valueOf(ob.intValue()) == BlockCodes.ID_OB);
+
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,65 @@
+package org.cakelab.blender.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockTable;
+import org.cakelab.blender.io.util.CLazyBufferReadWrite;
+
+/**
+ * Tests files opened in mode {@link OpenMode#LAZY}.
+ * Run with assertions enabled (-ea).
+ */
+public class LazyLoadTest {
+	public static void main(String[] args) throws IOException {
+		File file = TestBlendFile.write(TestBlendFile.createTempFile(".blend"));
+		long vert = TestBlendFile.VERTS_ADDRESS + 5 * TestBlendFile.VERT_SIZE;
+
+		BlenderFile blend = new BlenderFile(file, OpenMode.LAZY);
+		BlockTable table = blend.getBlockTable();
+		// lookups need headers only
+		Block verts = table.getBlock(vert, TestBlendFile.SDNA_VERT);
+		Block link = table.getBlock(TestBlendFile.linkAddress(1), TestBlendFile.SDNA_LINK);
+		assert(table.getBlocks(BlockCodes.ID_OB).size() == TestBlendFile.LINKS);
+		CLazyBufferReadWrite data = (CLazyBufferReadWrite) verts.data;
+		assert(!data.isLoaded());
+		assert(data.getFileOffset() == TestBlendFile.VERTS_OFFSET);
+		assert(!((CLazyBufferReadWrite) link.data).isLoaded());
+
+		// first access loads the block, and only this one
+		assert(verts.readFloat(vert + 4) == 5.5f);
+		assert(data.isLoaded());
+		assert(!((CLazyBufferReadWrite) link.data).isLoaded());
+		assert(link.readLong(TestBlendFile.linkAddress(1)) == TestBlendFile.linkAddress(2));
+
+		verts.writeInt(vert + 12, 4711);
+		blend.close();
+		// loaded data stays accessible, unloaded data isn't available anymore
+		assert(verts.readInt(vert + 12) == 4711);
+		try {
+			table.getBlock(TestBlendFile.linkAddress(7), TestBlendFile.SDNA_LINK).readLong(TestBlendFile.linkAddress(7));
+			assert(false) : "loaded from closed file";
+		} catch (IOException e) {
+			// expected
+		}
+
+		// write() loads pending blocks before it overwrites the file
+		blend = new BlenderFile(file, OpenMode.LAZY);
+		table = blend.getBlockTable();
+		verts = table.getBlock(vert, TestBlendFile.SDNA_VERT);
+		verts.writeInt(vert + 12, 4711);
+		blend.write();
+		blend.close();
+
+		blend = new BlenderFile(file, OpenMode.LAZY);
+		table = blend.getBlockTable();
+		assert(table.getBlock(vert, TestBlendFile.SDNA_VERT).readInt(vert + 12) == 4711);
+		assert(table.getBlock(TestBlendFile.linkAddress(7), TestBlendFile.SDNA_LINK).readLong(TestBlendFile.linkAddress(7) + 8) == TestBlendFile.linkAddress(6));
+		blend.close();
+
+		System.out.println("ok");
+	}
+}
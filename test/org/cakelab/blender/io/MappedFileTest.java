@@ -0,0 +1,72 @@
+package org.cakelab.blender.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.util.CBufferReadWrite;
+import org.cakelab.blender.io.util.FileMapping;
+
+/**
+ * Tests {@link FileMapping} and files opened in mode
+ * {@link OpenMode#MEMORY_MAPPED}.
+ * Run with assertions enabled (-ea).
+ */
+public class MappedFileTest {
+	public static void main(String[] args) throws IOException {
+		File file = TestBlendFile.write(TestBlendFile.createTempFile(".blend"));
+		byte[] content = Files.readAllBytes(file.toPath());
+
+		// slices within and across small regions
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileMapping mapping = new FileMapping(raf.getChannel(), ByteOrder.LITTLE_ENDIAN, 100);
+			int[][] sections = {{0, 12}, {90, 20}, {150, 1000}, {content.length - 3, 3}, {5, 0}};
+			for (int[] section : sections) {
+				ByteBuffer slice = mapping.slice(section[0], section[1]);
+				assert(slice.position() == 0 && slice.capacity() == section[1]);
+				byte[] b = new byte[section[1]];
+				slice.get(b);
+				assert(Arrays.equals(b, Arrays.copyOfRange(content, section[0], section[0] + section[1])));
+			}
+			try {
+				mapping.slice(content.length - 3, 4);
+				assert(false) : "mapped beyond end of file";
+			} catch (IOException e) {
+				// expected
+			}
+			mapping.close();
+		} finally {
+			raf.close();
+		}
+
+		BlenderFile blend = new BlenderFile(file, OpenMode.MEMORY_MAPPED);
+		assert(blend.getOpenMode() == OpenMode.MEMORY_MAPPED);
+		assert(blend.getBlocks().size() == TestBlendFile.BLOCKS);
+		long vert = TestBlendFile.VERTS_ADDRESS + 7 * TestBlendFile.VERT_SIZE;
+		Block verts = blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT);
+		assert(((CBufferReadWrite) verts.data).isMapped());
+		assert(verts.readFloat(vert + 4) == 7.5f);
+		// the mapping is private: changes don't reach the file before write()
+		verts.writeInt(vert + 12, -1);
+		assert(verts.readInt(vert + 12) == -1);
+		assert(Arrays.equals(Files.readAllBytes(file.toPath()), content));
+		blend.write();
+		blend.close();
+
+		long offset = TestBlendFile.VERTS_OFFSET + 7 * TestBlendFile.VERT_SIZE + 12;
+		content = Files.readAllBytes(file.toPath());
+		assert(ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).getInt((int) offset) == -1);
+		blend = new BlenderFile(file, OpenMode.READ_FULLY);
+		assert(blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT).readInt(vert + 12) == -1);
+		blend.close();
+
+		System.out.println("ok");
+	}
+}
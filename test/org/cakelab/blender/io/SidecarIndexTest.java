@@ -0,0 +1,130 @@
+package org.cakelab.blender.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockFilter;
+import org.cakelab.blender.io.block.BlockHeader;
+import org.cakelab.blender.io.dna.DNAModel;
+
+/**
+ * Tests creation, use and invalidation of {@link SidecarIndex}es.
+ * Run with assertions enabled (-ea).
+ */
+public class SidecarIndexTest {
+	public static void main(String[] args) throws IOException {
+		File directory = Files.createTempDirectory("sidecar").toFile();
+		File[] files = {
+			TestBlendFile.write(TestBlendFile.createTempFile(".blend")),
+			TestBlendFile.writeGZip(TestBlendFile.createTempFile(".blend.gz")),
+			TestBlendFile.writeZstd(TestBlendFile.createTempFile(".blend.zst")),
+		};
+		try {
+			System.clearProperty(SidecarIndex.PROPERTY_DIRECTORY);
+			assert(!SidecarIndex.isEnabled() && SidecarIndex.getIndexFile(files[0]) == null);
+			System.setProperty(SidecarIndex.PROPERTY_DIRECTORY, directory.getPath());
+
+			for (File file : files) {
+				File indexFile = SidecarIndex.getIndexFile(file);
+				assert(indexFile.getParentFile().equals(directory));
+				for (OpenMode mode : OpenMode.values()) {
+					indexFile.delete();
+					// regular open creates the index
+					String expected = summary(new BlenderFile(file, mode));
+					assert(indexFile.isFile() && SidecarIndex.load(file) != null);
+					// and the next open uses it
+					assert(summary(new BlenderFile(file, mode)).equals(expected)) : file + " " + mode;
+					BlenderFile blend = new BlenderFile(file, mode, BlockFilter.byCode(BlockCodes.ID_OB));
+					assert(blend.getBlocks().size() == TestBlendFile.LINKS + 3);
+					blend.close();
+				}
+			}
+
+			// outdated and corrupted indices are replaced
+			File file = files[0];
+			File indexFile = SidecarIndex.getIndexFile(file);
+			file.setLastModified(file.lastModified() + 2000);
+			assert(SidecarIndex.load(file) == null);
+			new BlenderFile(file).close();
+			assert(SidecarIndex.load(file) != null);
+
+			long lastModified = file.lastModified();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(TestBlendFile.VERTS_OFFSET + 12);
+				raf.write(0x7f);
+			} finally {
+				raf.close();
+			}
+			file.setLastModified(lastModified);
+			assert(SidecarIndex.load(file) == null) : "content change not detected";
+
+			RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+			try {
+				index.setLength(index.length() / 2);
+			} finally {
+				index.close();
+			}
+			assert(SidecarIndex.load(file) == null);
+			BlenderFile blend = new BlenderFile(file);
+			long vert = TestBlendFile.VERTS_ADDRESS;
+			assert(blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT).readInt(vert + 12) == 0x7f);
+			blend.close();
+			assert(SidecarIndex.load(file) != null);
+
+			// changes of the file while it gets opened are not indexed
+			indexFile.delete();
+			final File changing = file;
+			blend = new BlenderFile(file, OpenMode.READ_FULLY, new BlockFilter() {
+				boolean changed;
+				@Override
+				public boolean accept(BlockHeader header, DNAModel model) {
+					if (!changed) changed = changing.setLastModified(changing.lastModified() + 2000);
+					return true;
+				}
+			});
+			blend.close();
+			assert(!indexFile.exists() && SidecarIndex.load(file) == null) : "indexed under the key of the changed file";
+			new BlenderFile(file).close();
+			assert(SidecarIndex.load(file) != null);
+
+			// an empty directory puts the index next to the file
+			System.setProperty(SidecarIndex.PROPERTY_DIRECTORY, "");
+			indexFile = SidecarIndex.getIndexFile(file);
+			assert(indexFile.equals(new File(file.getAbsolutePath() + SidecarIndex.SUFFIX)));
+			new BlenderFile(file).close();
+			assert(indexFile.isFile());
+			indexFile.delete();
+		} finally {
+			System.clearProperty(SidecarIndex.PROPERTY_DIRECTORY);
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+
+		System.out.println("ok");
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @return summary of block headers, some data and the struct DNA.
+	 */
+	private static String summary(BlenderFile blend) throws IOException {
+		StringBuilder s = new StringBuilder();
+		for (Block block : blend.getBlocks()) {
+			s.append(block.header).append('\n');
+		}
+		long vert = TestBlendFile.VERTS_ADDRESS + 500 * TestBlendFile.VERT_SIZE;
+		s.append(blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT).readInt(vert + 12)).append('\n');
+		s.append(blend.getStructDNA());
+		blend.close();
+		return s.toString();
+	}
+}
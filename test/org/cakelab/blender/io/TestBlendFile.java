@@ -0,0 +1,258 @@
+package org.cakelab.blender.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a small synthetic .blend file (little endian, 64 bit,
+ * version 300) for tests, which don't have a real file at hand.
+ * <p>
+ * The file contains:
+ * <ul>
+ * <li>a GLOB block (struct FileGlobal)</li>
+ * <li>a DATA block at {@link #VERTS_ADDRESS} with {@link #VERTS}
+ * structs Vert {float co[3]; int val;}, where vert i has
+ * co = {i, i + 0.5, -i} and val = 3 * i</li>
+ * <li>{@link #LINKS} OB blocks with one struct Link {*next; *prev;}
+ * each, which form a doubly linked list</li>
+ * <li>a DATA block of struct TreeStoreElem, which overlaps the vert
+ * block, as found in files of older blender versions (offheap)</li>
+ * <li>DNA1 and ENDB</li>
+ * </ul>
+ *
+ * @author homac
+ *
+ */
+public class TestBlendFile {
+	public static final long VERTS_ADDRESS = 0x2000000L;
+	public static final int VERTS = 1000;
+	public static final int VERT_SIZE = 16;
+	/** offset of the vert data in the file (behind the file header, TEST, GLOB and the DATA block header) */
+	public static final long VERTS_OFFSET = 12 + (24 + 64) + (24 + 8) + 24;
+	public static final long LINKS_ADDRESS = VERTS_ADDRESS + VERTS * VERT_SIZE + 64;
+	public static final int LINK_SIZE = 16;
+	public static final int LINKS = 50;
+	public static final long TREESTORE_ADDRESS = VERTS_ADDRESS + 16;
+	/** number of blocks including ENDB */
+	public static final int BLOCKS = 2 + 1 + LINKS + 1 + 2;
+
+	/** decompressed size of frames written by {@link #writeZstd(File)} */
+	public static final int ZSTD_FRAME_SIZE = 4096;
+
+	/** sdna indices */
+	public static final int SDNA_LINK = 0;
+	public static final int SDNA_VERT = 1;
+	public static final int SDNA_TREESTOREELEM = 2;
+	public static final int SDNA_FILEGLOBAL = 3;
+
+	private static final String[] NAMES = {"subversion", "minversion", "minsubversion", "*next", "*prev", "co[3]", "val", "pad"};
+	private static final String[] TYPES = {"char", "short", "int", "float", "FileGlobal", "TreeStoreElem", "Link", "Vert"};
+	private static final short[] LENGTHS = {1, 2, 4, 4, 6, 4, 16, 16};
+	/** struct type followed by pairs of field type and field name */
+	private static final short[][] STRUCTS = {
+		{6, 6, 3, 6, 4},
+		{7, 3, 5, 2, 6},
+		{5, 1, 6, 1, 7},
+		{4, 1, 0, 1, 1, 1, 2},
+	};
+
+	/**
+	 * @return content of the file.
+	 */
+	public static byte[] create() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] header = "BLENDER-v300".getBytes(StandardCharsets.US_ASCII);
+		out.write(header, 0, header.length);
+
+		block(out, "TEST", new byte[64], 0x1000000L, 0, 1);
+		ByteBuffer glob = buffer(8);
+		glob.putShort((short) 5).putShort((short) 290).putShort((short) 3);
+		block(out, "GLOB", glob.array(), 0x1100000L, SDNA_FILEGLOBAL, 1);
+
+		ByteBuffer verts = buffer(VERTS * VERT_SIZE);
+		for (int i = 0; i < VERTS; i++) {
+			verts.putFloat(i).putFloat(i + 0.5f).putFloat(-i).putInt(3 * i);
+		}
+		block(out, "DATA", verts.array(), VERTS_ADDRESS, SDNA_VERT, VERTS);
+
+		for (int i = 0; i < LINKS; i++) {
+			ByteBuffer link = buffer(LINK_SIZE);
+			link.putLong(i + 1 < LINKS ? linkAddress(i + 1) : 0);
+			link.putLong(i > 0 ? linkAddress(i - 1) : 0);
+			block(out, "OB\0\0", link.array(), linkAddress(i), SDNA_LINK, 1);
+		}
+
+		ByteBuffer treestore = buffer(16);
+		for (int i = 0; i < 4; i++) {
+			treestore.putShort((short) 1).putShort((short) 2);
+		}
+		block(out, "DATA", treestore.array(), TREESTORE_ADDRESS, SDNA_TREESTOREELEM, 4);
+
+		block(out, "DNA1", sdna(), 0x9000000L, 0, 1);
+		block(out, "ENDB", new byte[0], 0, 0, 0);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return address of the link with the given index.
+	 */
+	public static long linkAddress(int i) {
+		return LINKS_ADDRESS + i * 64;
+	}
+
+	/**
+	 * Writes the file uncompressed.
+	 */
+	public static File write(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(create());
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Writes the file gzip compressed.
+	 */
+	public static File writeGZip(File file) throws IOException {
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try {
+			out.write(create());
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Writes the file zstd compressed in the seekable format. Frames
+	 * contain {@link #ZSTD_FRAME_SIZE} bytes each, stored in raw blocks
+	 * (i.e. not actually compressed).
+	 */
+	public static File writeZstd(File file) throws IOException {
+		byte[] content = create();
+		int count = (content.length + ZSTD_FRAME_SIZE - 1) / ZSTD_FRAME_SIZE;
+		byte[][] frames = new byte[count][];
+		int[] contentSizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			int off = i * ZSTD_FRAME_SIZE;
+			contentSizes[i] = Math.min(ZSTD_FRAME_SIZE, content.length - off);
+			ByteBuffer frame = buffer(4 + 1 + 4 + 3 + contentSizes[i]);
+			// single segment, 4 byte content size
+			frame.putInt(0xFD2FB528).put((byte) 0xA0).putInt(contentSizes[i]);
+			// last raw block
+			int blockHeader = 1 | contentSizes[i] << 3;
+			frame.put((byte) blockHeader).put((byte) (blockHeader >> 8)).put((byte) (blockHeader >> 16));
+			frame.put(content, off, contentSizes[i]);
+			frames[i] = frame.array();
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(zstdSeekable(frames, contentSizes));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * @param frames zstd frames
+	 * @param contentSizes decompressed size of each frame
+	 * @return the frames followed by a seek table (zstd seekable format).
+	 */
+	public static byte[] zstdSeekable(byte[][] frames, int[] contentSizes) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] frame : frames) {
+			out.write(frame, 0, frame.length);
+		}
+		ByteBuffer table = buffer(8 + frames.length * 8 + 9);
+		table.putInt(0x184D2A5E).putInt(frames.length * 8 + 9);
+		for (int i = 0; i < frames.length; i++) {
+			table.putInt(frames[i].length).putInt(contentSizes[i]);
+		}
+		table.putInt(frames.length).put((byte) 0).putInt(0x8F92EAB1);
+		out.write(table.array(), 0, table.capacity());
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return new temporary file, which gets deleted on exit.
+	 */
+	public static File createTempFile(String suffix) throws IOException {
+		File file = File.createTempFile("test", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static ByteBuffer buffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void block(ByteArrayOutputStream out, String code, byte[] data, long address, int sdnaIndex, int count) {
+		ByteBuffer header = buffer(24);
+		header.put(code.getBytes(StandardCharsets.US_ASCII));
+		header.putInt(data.length).putLong(address).putInt(sdnaIndex).putInt(count);
+		out.write(header.array(), 0, 24);
+		out.write(data, 0, data.length);
+	}
+
+	private static byte[] sdna() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ascii(out, "SDNA");
+		ascii(out, "NAME");
+		integer(out, NAMES.length);
+		for (String name : NAMES) {
+			ascii(out, name);
+			out.write(0);
+		}
+		pad4(out);
+		ascii(out, "TYPE");
+		integer(out, TYPES.length);
+		for (String type : TYPES) {
+			ascii(out, type);
+			out.write(0);
+		}
+		pad4(out);
+		ascii(out, "TLEN");
+		for (short length : LENGTHS) {
+			shortInteger(out, length);
+		}
+		pad4(out);
+		ascii(out, "STRC");
+		integer(out, STRUCTS.length);
+		for (short[] struct : STRUCTS) {
+			shortInteger(out, struct[0]);
+			shortInteger(out, (struct.length - 1) / 2);
+			for (int i = 1; i < struct.length; i++) {
+				shortInteger(out, struct[i]);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static void ascii(ByteArrayOutputStream out, String s) {
+		byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+		out.write(b, 0, b.length);
+	}
+
+	private static void integer(ByteArrayOutputStream out, int value) {
+		out.write(buffer(4).putInt(value).array(), 0, 4);
+	}
+
+	private static void shortInteger(ByteArrayOutputStream out, int value) {
+		out.write(buffer(2).putShort((short) value).array(), 0, 2);
+	}
+
+	private static void pad4(ByteArrayOutputStream out) {
+		while (out.size() % 4 != 0) out.write(0);
+	}
+}
@@ -1,5 +1,12 @@
 package org.cakelab.blender.io.alloc;
 
+import java.util.Arrays;
+
+import org.cakelab.blender.io.Encoding;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockHeader;
+import org.cakelab.blender.io.block.BlockTable;
 import org.cakelab.blender.io.block.alloc.Allocator;
 import org.cakelab.blender.nio.UnsignedLong;
 
@@ -12,5 +19,94 @@ public class Test {
 		assert(UnsignedLong.lt(a1, a2));
 		assert(UnsignedLong.minus(a2, a1) == 1024);
 		
+		// allocating after freeing: best fit reuses the gap
+		long a3 = allocator.alloc(1024);
+		long a4 = allocator.alloc(1024);
+		allocator.free(a2, 4096);
+		assert(allocator.alloc(512) == a2);
+		assert(allocator.alloc(3584) == a2 + 512);
+
+		// adjacent frees merge into one free chunk
+		allocator.free(a3, 1024);
+		allocator.free(a1, 1024);
+		allocator.free(a2, 4096);
+		// a1 .. a3 + 1024 is free now, a4 still allocated
+		assert(allocator.alloc(1024 + 4096 + 1024) == a1);
+		allocator.free(a1 + 1024, 4096);
+		assert(allocator.alloc(4096) == a1 + 1024);
+
+		// freeing what is not allocated
+		long end = allocator.alloc(16);
+		allocator.free(end, 16);
+		try {
+			allocator.free(end, 16);
+			assert(false) : "double free";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			allocator.free(a4, 2048);
+			assert(false) : "free beyond allocated region";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// declaring overlapping regions
+		long base = 0x10000L;
+		allocator = new Allocator(base, 0x100000L);
+		allocator.declareAllocated(base + 0x1000, 0x100);
+		allocator.declareAllocated(base + 0x1100, 0x100);
+		try {
+			allocator.declareAllocated(base + 0x1180, 0x100);
+			assert(false) : "overlapping declaration";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			allocator.declareAllocated(base + 0xf80, 0x100);
+			assert(false) : "overlapping declaration";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			allocator.declareAllocated(base + 0x100000, 0x10);
+			assert(false) : "declaration outside of the heap";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// adjacent declarations merged into one allocated region
+		allocator.free(base + 0x10f0, 0x20);
+		assert(allocator.alloc(0x20) == base + 0x10f0);
+
+		// bulk declaration
+		allocator = new Allocator(base, 0x100000L);
+		allocator.declareAllocated(new long[]{base + 0x100, base + 0x200}, new long[]{0x100, 0x100}, 2);
+		assert(allocator.alloc(0x100) == base);
+		try {
+			allocator.declareAllocated(new long[]{base + 0x400, base + 0x480}, new long[]{0x100, 0x100}, 2);
+			assert(false) : "overlapping bulk declaration";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			allocator.declareAllocated(new long[]{base + 0x300}, new long[]{0x10}, 1);
+			assert(false) : "bulk declaration not in ascending order";
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// empty blocks sharing their address with the next block
+		// don't own memory of that block
+		Block c = new Block(new BlockHeader(BlockCodes.ID_DATA, 0x1000, 0x1000L), null);
+		Block empty = new Block(new BlockHeader(BlockCodes.ID_DATA, 0, 0x2000L), null);
+		Block b = new Block(new BlockHeader(BlockCodes.ID_DATA, 0x10, 0x2000L), null);
+		BlockTable table = new BlockTable(Encoding.LITTLE_ENDIAN_64BIT, Arrays.asList(c, empty, b), null);
+		long a = table.allocate(BlockCodes.ID_DATA, 16).header.getAddress();
+		assert(a >= 0x2010L);
+		table.free(empty);
+		a = table.allocate(BlockCodes.ID_DATA, 1).header.getAddress();
+		assert(a >= 0x2010L) : "allocated inside a live block";
+
+		System.out.println("ok");
 	}
 }
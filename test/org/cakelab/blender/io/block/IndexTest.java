@@ -0,0 +1,55 @@
+package org.cakelab.blender.io.block;
+
+import java.util.List;
+
+import org.cakelab.blender.io.Encoding;
+
+/**
+ * Tests the indices of the block table by block code and sdna index.
+ * Run with assertions enabled (-ea).
+ */
+public class IndexTest {
+	public static void main(String[] args) {
+		BlockTable table = new BlockTable(Encoding.LITTLE_ENDIAN_64BIT);
+
+		// allocate first, then assign the sdna index (as the factories do)
+		Block a = table.allocate(BlockCodes.ID_DATA, 64);
+		Block b = table.allocate(BlockCodes.ID_SCE, 128);
+		assert(table.getBlocksBySdnaIndex(0).size() == 2);
+		a.header.setSdnaIndex(42);
+
+		List<Block> found = table.getBlocksBySdnaIndex(42);
+		assert(found.size() == 1 && found.get(0) == a);
+		found = table.getBlocksBySdnaIndex(0);
+		assert(found.size() == 1 && found.get(0) == b);
+		assert(table.getBlocks(BlockCodes.ID_DATA).get(0) == a);
+
+		// indices exist now, change it again
+		a.header.setSdnaIndex(7);
+		assert(table.getBlocksBySdnaIndex(42).isEmpty());
+		assert(table.getBlocksBySdnaIndex(7).get(0) == a);
+
+		table.free(a);
+		assert(table.getBlocksBySdnaIndex(7).isEmpty());
+		assert(table.getBlocks(BlockCodes.ID_DATA).isEmpty());
+		assert(table.getBlock(a.header.getAddress()) == null);
+		// freed blocks are not listed anymore
+		a.header.setSdnaIndex(42);
+		assert(table.getBlocksBySdnaIndex(42).isEmpty());
+
+		// same during a bulk edit
+		table.beginBulkEdit();
+		Block c = table.allocate(BlockCodes.ID_DATA, 32);
+		c.header.setSdnaIndex(3);
+		table.free(b);
+		b.header.setSdnaIndex(5);
+		table.endBulkEdit();
+		found = table.getBlocksBySdnaIndex(3);
+		assert(found.size() == 1 && found.get(0) == c);
+		assert(table.getBlocksBySdnaIndex(0).isEmpty());
+		assert(table.getBlocksBySdnaIndex(5).isEmpty());
+		assert(table.getBlocks(BlockCodes.ID_SCE).isEmpty());
+
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,211 @@
+package org.cakelab.blender.io.zstd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.cakelab.blender.io.BlenderFile;
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.TestBlendFile;
+import org.cakelab.blender.io.block.Block;
+
+/**
+ * Tests the zstd decoder with frames produced by the reference
+ * implementation (libzstd) and random access across frame boundaries.
+ * Run with assertions enabled (-ea).
+ */
+public class ZstdTest {
+
+	/* Frames compressed with libzstd (ZSTD_compress) from the content
+	 * produced by the methods of the same name below. */
+
+	/** level 1, incompressible: one raw block */
+	private static final String RAW = "KLUv/WAsAGEJAMZ+gWtL++L7VPa933wc4YcBvzHeVnIPR2dmh1mqiDxZ6lYTe9KFodg8VFUvN65lW9oC"
+			+ "eZjM4xp2jl/ZmY8fPzbuQ3hNDfq+ptrkho7cKW1O/1bhcCD7j7FYBZDFCdxTzao7SJlS01KdBp/qtcIG"
+			+ "E5hJsgEerDKIMZxSRpVxNo9X9jkdFvqIdPWYfBdcQbttcY4PcFnHARsvMz2RwB2lDQ2rM41+Xo8+5mh0"
+			+ "pjqxw5MRqGTH28rgYOHzvwkAZ6LjJaAhMYfVYsWoT34uCWuUn7BtqZ5aC0ZwgLbPRwympSrYrPug67d5"
+			+ "JHIjkkiAxaanhbfXjJDkq2NEUmbjnDMl+V6qunNgXUtxfr6pjFcZccPKXuUqM6yIUWahe3VnZJpp729W"
+			+ "QqAdUcUC97uSRQ==";
+	/** level 3, 200000 zero bytes: a compressed block with predefined
+	 * FSE tables and raw literals, followed by an RLE block */
+	private static final String RLE = "KLUv/aBADQMAVAAAEAAAAQD7/znAAgNqCAA=";
+	/** level 19, words: Huffman compressed literals, FSE compressed
+	 * tables for literal lengths, offsets and match lengths */
+	private static final String TEXT = "KLUv/WBzFh0eAMKFEBCwHQOwHTCphcwgo0qSKqPA9uu6vl/7/jKs9ZXCmkwBflV+V8f7gO6vSYSjwZKo"
+			+ "Cq6AGZwLwJWsJgFk7xrBR49gAYHqqKFLCln2OyEIAUJxnOSaehE0CI8QwrQiLihQMuwGeFXhEw6oFlFy"
+			+ "MJoEwYgY5Dsu0loo4aabIwZPYhd4YipTd6o73CInDVbJt8dg62ldSB0a3o5G5fulhwDo3UHXwUQqEPr6"
+			+ "WUSkIDIJ9kD+9DyVxo1tvCMxbhkypPYFV5X/RDmULM0i/3dSKXFFPqlB6twQRHAn/mB2EMci4jv5BV3l"
+			+ "TZTiyGGq2ZsreLjcWcc3dWpYcYNEb1EilkHuLjdgPun/fB3EI0NBQiGUPPNVTQmfa+avPqsnvLybMyr+"
+			+ "cZ28jWuWQOMIFZ7jhMblU2AmAh1t7iihcrQDnxv96/xL5hnSiLmAZ8qsUgW4U9ZFyRVh8qkiPuTrTcl/"
+			+ "9LjElZcf0gLXVpXLQGZrKiIV4UU5RfD7S361zT8UNxxGtYbd/hl+mKCA6D5vvtvARYsFQ1CTbqccQWx/"
+			+ "CVmUV+2Hy7t4bMVGPMKNIdfU5dIeZCYaGPkl6cGHs/0tqaE2RgBmgs5kjBMxHG/Ls7ZXB99PdElU+s/C"
+			+ "pltPPtis4bbIPU7OHhZTwMlHxJWLhgs73Grjro29IHJ+UulhP5Y5qJeabGemBwKzJ36M/qyZ7E4XmOw6"
+			+ "+8iAEu9WgxJUise+dWlKcf1KoUzio7lSoC0xMmcHkk3YuuaVKLG2pgPlAlKAgYkOinHBgTAKirp4BInc"
+			+ "GnQOLPAFvHAN8oEXQsvUe8yCkhDIt9hj5wkwjG6D7/fU3NPtkZGeHflCyrjgNgwQPE8wgKamcyJsrU6P"
+			+ "LuQqBuxiI/J62ejWQBJ+tDUY35AbHZEfmwVE0jIycvDDcLvmKKZhgr5B+scqW5LMKRcke2gj3A7XBm8r"
+			+ "0KXGXsnduEoWVhw9ubSBy1fqBntOCLGqEhdxMBrNmInvlP+0t9t+HcWQSfTOrEWSP3zHOeyQoXi+KPFg"
+			+ "btHCkfrwGCLNOmui+4im0HSvcjfFBislNFH1vNaWqMHtCw88FUoB327XeLyq1VINFQuC3T8IZmSNWoAg"
+			+ "BZQsPdL4akujLDyrw9fV3scAJY2ny/9HaK82gd2IL66wOvw6BWPkRbgKlQmopO/ZeVWCAH8EUv9wsF+0"
+			+ "XmiST9RGGsHYnEiDtIIwwQgDZM1ZM/7IoQMCrChN0GCwIpQjgIHQsdU8pM/qidaRQ9+1V/Dc78N/ISzy"
+			+ "M015918jFZFTOSOoAg==";
+	/** level 3, records differing in one byte: repeat offsets */
+	private static final String RECORDS = "KLUv/WDIGPUGAPJNLR8gM8gD////////AJLtER1aRVtEWo6vsptACEAIQGgCKLFEUty3lj40ZZbQldQz"
+			+ "yOG7sZa0qheV4oGNvdj587r9824sDN+vCrXY8BGS43s3nXGmwYaXk07zeSot2ssp6Ty9rcgk0JOksKWy"
+			+ "Pz6kuNLpdH7tr8zWz9CMnxF2Z6lv3DOLniHNsYwn+0lufrhu/4NN5yogGBAIAPjw6ODY0MjAuLCIFRQT"
+			+ "EhEQDw4NDAsKCQgHBgGAv6gR4O//G+A3AxL4RxD4V5/XMSQHzrLgZGQk08iHp8pYIYBUBQ==";
+
+	private static final String[] WORDS = {"the", "file", "block", "struct", "pointer", "blender", "array", "frame", "offset", "table", "mesh", "vertex", "object", "scene"};
+
+	public static void main(String[] args) throws IOException {
+		byte[][] frames = {decode(RAW), decode(RLE), decode(TEXT), decode(RECORDS)};
+		byte[][] contents = {raw(), rle(), text(), records()};
+		int[] contentSizes = new int[frames.length];
+
+		// single frames
+		ZstdFrameDecoder decoder = new ZstdFrameDecoder();
+		for (int i = 0; i < frames.length; i++) {
+			byte[] frame = frames[i];
+			ZstdFrameDecoder.FrameHeader header = ZstdFrameDecoder.readFrameHeader(frame, 0, frame.length);
+			assert(header != null && header.contentSize == contents[i].length);
+			contentSizes[i] = contents[i].length;
+			assert(Arrays.equals(decoder.decompress(frame, 0, frame.length, contentSizes[i]), contents[i])) : "frame " + i;
+			// decoder state is reset per frame, and unknown content size grows the buffer
+			assert(Arrays.equals(decoder.decompress(frame, 0, frame.length, -1), contents[i])) : "frame " + i;
+		}
+		assert(ZstdFrameDecoder.readFrameHeader(contents[0], 0, contents[0].length) == null);
+
+		byte[] content = concat(contents);
+		byte[] seekable = TestBlendFile.zstdSeekable(frames, contentSizes);
+		// with seek table
+		checkSeekable(write(seekable), frames.length, content);
+		// without seek table, frames get indexed by scanning their headers
+		checkSeekable(write(Arrays.copyOf(seekable, seekable.length - (8 + frames.length * 8 + 9))), frames.length, content);
+
+		// compressed blend file
+		File file = TestBlendFile.writeZstd(TestBlendFile.createTempFile(".blend.zst"));
+		long vert = TestBlendFile.VERTS_ADDRESS + 999 * TestBlendFile.VERT_SIZE;
+		for (OpenMode mode : OpenMode.values()) {
+			BlenderFile blend = new BlenderFile(file, mode);
+			assert(blend.getCompression() == BlenderFile.Compression.ZSTD);
+			assert(blend.getBlocks().size() == TestBlendFile.BLOCKS);
+			// the vert block spans several frames
+			Block verts = blend.getBlockTable().getBlock(vert, TestBlendFile.SDNA_VERT);
+			assert(verts.readFloat(vert + 4) == 999.5f);
+			assert(verts.readInt(vert + 12) == 2997);
+			blend.close();
+		}
+
+		System.out.println("ok");
+	}
+
+	private static void checkSeekable(File file, int frameCount, byte[] content) throws IOException {
+		ZstdSeekableFile zstd = new ZstdSeekableFile(file);
+		try {
+			assert(zstd.getFrameCount() == frameCount);
+			assert(zstd.size() == content.length);
+			// frames get decompressed again after they have been dropped
+			zstd.setCacheSize(1);
+			int[][] ranges = {
+				{0, 300},
+				// end of the raw frame into the RLE frame
+				{290, 20},
+				// across the whole RLE frame
+				{299, 200000 + 2},
+				{200300 + 5000, 2000},
+				{content.length - 7000, 7000},
+			};
+			for (int[] range : ranges) {
+				byte[] b = new byte[range[1]];
+				zstd.read(range[0], b, 0, b.length);
+				assert(Arrays.equals(b, Arrays.copyOfRange(content, range[0], range[0] + range[1])));
+			}
+			try {
+				zstd.read(content.length - 1, new byte[2], 0, 2);
+				assert(false) : "read beyond end";
+			} catch (IOException e) {
+				// expected
+			}
+			File target = TestBlendFile.createTempFile(".bin");
+			zstd.decompressTo(target);
+			assert(Arrays.equals(Files.readAllBytes(target.toPath()), content));
+		} finally {
+			zstd.close();
+		}
+	}
+
+	private static byte[] decode(String base64) {
+		return Base64.getDecoder().decode(base64);
+	}
+
+	private static File write(byte[] data) throws IOException {
+		File file = TestBlendFile.createTempFile(".zst");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] concat(byte[][] arrays) {
+		int length = 0;
+		for (byte[] a : arrays) length += a.length;
+		byte[] result = new byte[length];
+		int off = 0;
+		for (byte[] a : arrays) {
+			System.arraycopy(a, 0, result, off, a.length);
+			off += a.length;
+		}
+		return result;
+	}
+
+	/** pseudo random numbers in [0, 32768) */
+	private static class Random {
+		private long x;
+
+		Random(long seed) {
+			x = seed;
+		}
+
+		int next() {
+			x = (x * 1103515245L + 12345L) & 0x7fffffffL;
+			return (int) (x >> 16);
+		}
+	}
+
+	private static byte[] raw() {
+		Random random = new Random(1);
+		byte[] b = new byte[300];
+		for (int i = 0; i < b.length; i++) b[i] = (byte) random.next();
+		return b;
+	}
+
+	private static byte[] rle() {
+		return new byte[200000];
+	}
+
+	private static byte[] text() {
+		Random random = new Random(2);
+		StringBuilder s = new StringBuilder();
+		while (s.length() < 6000) {
+			if (s.length() > 0) s.append(' ');
+			s.append(WORDS[random.next() % WORDS.length]);
+		}
+		return s.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] records() {
+		Random random = new Random(3);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			s.append("abcdefghijklmnop").append((char) ('A' + random.next() % 26)).append("qrstuvwxyz012345");
+		}
+		return s.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+}
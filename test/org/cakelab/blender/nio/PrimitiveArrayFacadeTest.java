@@ -0,0 +1,73 @@
+package org.cakelab.blender.nio;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+
+import org.cakelab.blender.io.Encoding;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockCodes;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Tests {@link CFloatArrayFacade}, {@link CIntArrayFacade} and
+ * {@link CShortArrayFacade}.
+ * Run with assertions enabled (-ea).
+ */
+public class PrimitiveArrayFacadeTest {
+	public static void main(String[] args) throws IOException {
+		BlockTable table = new BlockTable(Encoding.LITTLE_ENDIAN_64BIT);
+		int n = 10;
+		// one more element than the facades cover, to catch overruns
+		Block block = table.allocate(BlockCodes.ID_DATA, 4 * (n + 1));
+		long address = block.header.getAddress();
+
+		CFloatArrayFacade floats = new CFloatArrayFacade(address, n, block, table);
+		for (int i = 0; i < n; i++) {
+			floats.setFloat(i, i + 0.5f);
+		}
+		assert(floats.getFloat(3) == 3.5f);
+		assert(floats.get(3) == 3.5f);
+		assert(floats.doubleStream().sum() == n * (n - 1) / 2 + n * 0.5);
+		checkBounds(floats, n);
+
+		CIntArrayFacade ints = new CIntArrayFacade(address, n, block, table);
+		for (int i = 0; i < n; i++) {
+			ints.setInt(i, -i);
+		}
+		assert(ints.getInt(9) == -9);
+		PrimitiveIterator.OfInt it = ints.intIterator();
+		for (int i = 0; i < n; i++) {
+			assert(it.hasNext() && it.nextInt() == -i);
+		}
+		assert(!it.hasNext());
+		assert(ints.intStream().count() == n);
+		checkBounds(ints, n);
+
+		CShortArrayFacade shorts = new CShortArrayFacade(address, 2 * n, block, table);
+		for (int i = 0; i < 2 * n; i++) {
+			shorts.setShort(i, (short) (i - n));
+		}
+		assert(shorts.getShort(0) == -n);
+		assert(shorts.intStream().min().getAsInt() == -n);
+		assert(shorts.intStream().max().getAsInt() == n - 1);
+		checkBounds(shorts, 2 * n);
+
+		// the element behind the arrays was never touched
+		assert(block.readInt(address + 4 * n) == 0);
+
+		System.out.println("ok");
+	}
+
+	private static void checkBounds(CPrimitiveArrayFacade<?> array, int length) throws IOException {
+		for (int index : new int[]{-1, length}) {
+			try {
+				if (array instanceof CFloatArrayFacade) ((CFloatArrayFacade) array).setFloat(index, 1f);
+				else if (array instanceof CIntArrayFacade) ((CIntArrayFacade) array).getInt(index);
+				else ((CShortArrayFacade) array).getShort(index);
+				assert(false) : "index " + index + " accepted";
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+		}
+	}
+}
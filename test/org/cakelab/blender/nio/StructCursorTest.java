@@ -0,0 +1,105 @@
+package org.cakelab.blender.nio;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cakelab.blender.io.BlenderFile;
+import org.cakelab.blender.io.BlenderFile.OpenMode;
+import org.cakelab.blender.io.TestBlendFile;
+import org.cakelab.blender.io.block.Block;
+import org.cakelab.blender.io.block.BlockTable;
+
+/**
+ * Tests {@link StructCursor} and {@link CFacade#__io__rebind(long)}
+ * on the structs of a {@link TestBlendFile}.
+ * Run with assertions enabled (-ea).
+ */
+public class StructCursorTest {
+
+	/** struct Vert {float co[3]; int val;} */
+	@CMetaData(size32=16, size64=16)
+	public static class Vert extends CFacade {
+		public static final int __DNA__SDNA_INDEX = TestBlendFile.SDNA_VERT;
+
+		public Vert(long __address, Block __block, BlockTable __blockTable) {
+			super(__address, __block, __blockTable);
+		}
+
+		public CFloatArrayFacade getCo() {
+			return new CFloatArrayFacade(__io__address, 3, __io__block, __io__blockTable);
+		}
+
+		public int getVal() throws IOException {
+			return __io__block.readInt(__io__address + 12);
+		}
+	}
+
+	/** struct Link {Link *next; Link *prev;} */
+	@CMetaData(size32=8, size64=16)
+	public static class Link extends CFacade {
+		public static final int __DNA__SDNA_INDEX = TestBlendFile.SDNA_LINK;
+
+		public Link(long __address, Block __block, BlockTable __blockTable) {
+			super(__address, __block, __blockTable);
+		}
+
+		public long getNext() throws IOException {
+			return __io__block.readLong(__io__address);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		File file = TestBlendFile.write(TestBlendFile.createTempFile(".blend"));
+		for (OpenMode mode : OpenMode.values()) {
+			BlenderFile blend = new BlenderFile(file, mode);
+			BlockTable table = blend.getBlockTable();
+			Block block = table.getBlock(TestBlendFile.VERTS_ADDRESS, TestBlendFile.SDNA_VERT);
+
+			// all instances in a block
+			StructCursor<Vert> cursor = new StructCursor<Vert>(Vert.class, block, table);
+			assert(cursor.length() == TestBlendFile.VERTS && cursor.index() == -1);
+			Vert first = null;
+			long sum = 0;
+			while (cursor.hasNext()) {
+				Vert v = cursor.next();
+				if (first == null) first = v;
+				// always the same facade
+				assert(v == first);
+				sum += v.getVal();
+			}
+			assert(sum == 3L * TestBlendFile.VERTS * (TestBlendFile.VERTS - 1) / 2);
+			assert(cursor.get().getCo().getFloat(1) == 999.5f);
+
+			// copies stay where they are
+			Vert copy = cursor.copy();
+			cursor.moveTo(10);
+			assert(copy != cursor.get() && copy.getVal() == 3 * 999);
+			assert(cursor.get().getVal() == 30 && cursor.index() == 10);
+			try {
+				cursor.moveTo(TestBlendFile.VERTS);
+				assert(false) : "moved beyond the last instance";
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+
+			// targets of a pointer and elements of an array
+			CPointer<Vert> pointer = new CPointer<Vert>(TestBlendFile.VERTS_ADDRESS + 2 * TestBlendFile.VERT_SIZE, new Class<?>[]{Vert.class}, block, table);
+			cursor = new StructCursor<Vert>(pointer, 5);
+			assert(cursor.moveTo(4).getVal() == 3 * 6);
+			cursor = new StructCursor<Vert>(pointer.toCArrayFacade(7));
+			assert(cursor.length() == 7 && cursor.moveTo(6).getCo().getFloat(2) == -8f);
+
+			// rebinding follows the list across blocks
+			Link link = new Link(TestBlendFile.linkAddress(0), table.getBlock(TestBlendFile.linkAddress(0), TestBlendFile.SDNA_LINK), table);
+			int count = 1;
+			for (long next = link.getNext(); next != 0; next = link.getNext()) {
+				link.__io__rebind(next);
+				assert(link.__io__address == TestBlendFile.linkAddress(count));
+				count++;
+			}
+			assert(count == TestBlendFile.LINKS);
+			blend.close();
+		}
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,48 @@
+package org.cakelab.blender.nio;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Tests interning of {@link CTypeDescriptor}s and that the caches
+ * don't keep classes of other class loaders alive.
+ * Run with assertions enabled (-ea).
+ */
+public class TypeDescriptorTest {
+
+	/** type loaded by a separate class loader */
+	public static class Element {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Class<?>[] pointer = new Class<?>[]{CPointer.class, CPointer.class, Float.class};
+		CTypeDescriptor descriptor = CTypeDescriptor.of(pointer);
+		assert(descriptor == CTypeDescriptor.of(pointer.clone()));
+		assert(descriptor.getTarget().getTarget() == CTypeDescriptor.of(new Class<?>[]{Float.class}));
+		CTypeDescriptor.ArrayType array = CTypeDescriptor.ArrayType.of(new Class<?>[]{CArrayFacade.class, Float.class}, new int[]{4, 3});
+		assert(array == CTypeDescriptor.ArrayType.of(new Class<?>[]{CArrayFacade.class, Float.class}, new int[]{2, 3}));
+		assert(array.innerLength == 3 && array.elementaryType.kind == CTypeKind.FLOAT);
+
+		WeakReference<ClassLoader> loader = describeForeignType();
+		for (int i = 0; i < 100 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assert(loader.get() == null) : "class loader still reachable";
+
+		System.out.println("ok");
+	}
+
+	private static WeakReference<ClassLoader> describeForeignType() throws Exception {
+		URL location = Element.class.getProtectionDomain().getCodeSource().getLocation();
+		URLClassLoader loader = new URLClassLoader(new URL[]{location}, null);
+		Class<?> element = loader.loadClass(Element.class.getName());
+		assert(element != Element.class);
+		CTypeDescriptor descriptor = CTypeDescriptor.of(new Class<?>[]{CPointer.class, element});
+		assert(descriptor.getTarget().types[0] == element);
+		CTypeDescriptor.ArrayType.of(new Class<?>[]{CArrayFacade.class, CArrayFacade.class, element}, new int[]{2, 2});
+		loader.close();
+		return new WeakReference<ClassLoader>(loader);
+	}
+}